@@ -0,0 +1,212 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * JMH benchmarks of the workloads defined by {@code GraphBenchmark}: one benchmark method per group of
+ * workloads, with the curve family, variant, number of curves or panel as parameter. Every parameter
+ * combination runs in its own forks.
+ * <p>
+ * Build with {@code mvn -Pjmh package} and run with {@code java -jar target/benchmarks.jar -prof gc},
+ * optionally with a regular expression selecting benchmarks and, for example, {@code -p family=sin}.
+ * <p>
+ * The workloads live in the default package of the application, which classes in a named package, as
+ * JMH requires, cannot refer to. Each state therefore looks up the workload of the running benchmark by
+ * name once, reflectively, during setup; the measured call is an ordinary interface call.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+public class GraphBenchmarks {
+    /**
+     * The workload names of the benchmark methods, followed by the parameter of the benchmark, if any.
+     */
+    private static final Map<String, String> WORKLOADS = new HashMap<>();
+
+    static {
+        WORKLOADS.put("sample", "sample.");
+        WORKLOADS.put("draw", "draw.");
+        WORKLOADS.put("drawRaster", "draw.raster.");
+        WORKLOADS.put("kernels", "kernels.");
+        WORKLOADS.put("kernelsScalar", "kernels.scalar.");
+        WORKLOADS.put("analysis", "analysis.");
+        WORKLOADS.put("analysisAreas", "analysis.areas.sin.cos");
+        WORKLOADS.put("expression", "expression.");
+        WORKLOADS.put("intersections", "intersections.");
+        WORKLOADS.put("paintCold", "paint.cold.");
+        WORKLOADS.put("paintCached", "paint.cached.");
+        WORKLOADS.put("paintColdRaster", "paint.cold.raster.1920x1080");
+        WORKLOADS.put("streamAppend", "stream.append4096");
+        WORKLOADS.put("streamSample", "stream.sample");
+    }
+
+    /**
+     * Sets up the workload of the running benchmark.
+     *
+     * @param params the running benchmark
+     * @param parameter the parameter of the benchmark, or an empty string
+     */
+    private static Supplier<Object> workload(BenchmarkParams params, String parameter) {
+        String benchmark = params.getBenchmark();
+        String name = WORKLOADS.get(benchmark.substring(benchmark.lastIndexOf('.') + 1)) + parameter;
+        try {
+            Method method = Class.forName("GraphBenchmark").getMethod("workload", String.class);
+            @SuppressWarnings("unchecked")
+            Supplier<Object> workload = (Supplier<Object>) method.invoke(null, name);
+            return workload;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot set up workload " + name, e);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Single {
+        Supplier<Object> workload;
+
+        @Setup
+        public void setUp(BenchmarkParams params) {
+            workload = workload(params, "");
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Family {
+        @Param({"sin", "cos", "tan", "ctan", "parabola", "hyperbola", "exp", "log"})
+        public String family;
+
+        Supplier<Object> workload;
+
+        @Setup
+        public void setUp(BenchmarkParams params) {
+            workload = workload(params, family);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Variant {
+        @Param({"compiled", "interpreted", "builtin"})
+        public String variant;
+
+        Supplier<Object> workload;
+
+        @Setup
+        public void setUp(BenchmarkParams params) {
+            workload = workload(params, variant);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Curves {
+        @Param({"2", "3", "4", "5", "6", "7", "8", "9", "10", "100", "500"})
+        public String curves;
+
+        Supplier<Object> workload;
+
+        @Setup
+        public void setUp(BenchmarkParams params) {
+            workload = workload(params, curves);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Panel {
+        @Param({"800x600", "1920x1080", "3840x2160", "curves500"})
+        public String panel;
+
+        Supplier<Object> workload;
+
+        @Setup
+        public void setUp(BenchmarkParams params) {
+            workload = workload(params, panel);
+        }
+    }
+
+    @Benchmark
+    public Object sample(Family state) {
+        return state.workload.get();
+    }
+
+    @Benchmark
+    public Object draw(Family state) {
+        return state.workload.get();
+    }
+
+    @Benchmark
+    public Object drawRaster(Family state) {
+        return state.workload.get();
+    }
+
+    @Benchmark
+    public Object kernels(Family state) {
+        return state.workload.get();
+    }
+
+    @Benchmark
+    public Object kernelsScalar(Family state) {
+        return state.workload.get();
+    }
+
+    @Benchmark
+    public Object analysis(Family state) {
+        return state.workload.get();
+    }
+
+    @Benchmark
+    public Object analysisAreas(Single state) {
+        return state.workload.get();
+    }
+
+    @Benchmark
+    public Object expression(Variant state) {
+        return state.workload.get();
+    }
+
+    @Benchmark
+    public Object intersections(Curves state) {
+        return state.workload.get();
+    }
+
+    @Benchmark
+    public Object paintCold(Panel state) {
+        return state.workload.get();
+    }
+
+    @Benchmark
+    public Object paintCached(Panel state) {
+        return state.workload.get();
+    }
+
+    @Benchmark
+    public Object paintColdRaster(Single state) {
+        return state.workload.get();
+    }
+
+    @Benchmark
+    public Object streamAppend(Single state) {
+        return state.workload.get();
+    }
+
+    @Benchmark
+    public Object streamSample(Single state) {
+        return state.workload.get();
+    }
+}
@@ -0,0 +1,354 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Curve kernels that evaluate as many x values at once as the preferred vector shape holds.
+ * <p>
+ * This class needs the incubating {@code jdk.incubator.vector} module, so it lives apart from
+ * {@code src} and is compiled and run with it:
+ * <pre>
+ * javac --add-modules jdk.incubator.vector -d out src/*.java src-vector/*.java
+ * java --add-modules jdk.incubator.vector -cp out Main
+ * </pre>
+ * {@link CurveKernels} loads it by name, so the rest of the program builds and runs without it.
+ * <p>
+ * Sines and cosines reduce their argument by multiples of pi/2, split into three parts of 33 bits
+ * and a tail so that the products stay exact, and evaluate the minimax polynomials of fdlibm on
+ * [-pi/4, pi/4]. Exponentials reduce by multiples of ln 2 and evaluate the rational approximation
+ * of fdlibm, logarithms split off the exponent and evaluate the series of fdlibm in
+ * s = f / (2 + f). Lanes outside the ranges the reductions are exact for, and lanes that overflow,
+ * underflow or are not finite, are computed again by the scalar function of the curve.
+ * The polynomials are evaluated with fused multiply-adds, which assumes a processor that has them.
+ */
+public final class VectorCurveKernels extends CurveKernels {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+    private static final double[] IOTA = new double[LANES];
+
+    /**
+     * Adding and subtracting this rounds doubles below 2^51 in magnitude to integers.
+     */
+    private static final double ROUNDING = 0x1.8p52;
+    private static final DoubleVector ROUNDING_VECTOR = constant(ROUNDING);
+    private static final DoubleVector ONE = constant(1);
+    private static final DoubleVector TWO = constant(2);
+
+    private static final DoubleVector TWO_OVER_PI = constant(0x1.45f306dc9c883p-1);
+    private static final DoubleVector PIO2_1 = constant(1.57079632673412561417e+00);
+    private static final DoubleVector PIO2_2 = constant(6.07710050630396597660e-11);
+    private static final DoubleVector PIO2_3 = constant(2.02226624871116645580e-21);
+    private static final DoubleVector PIO2_3T = constant(8.47842766036889956997e-32);
+    /**
+     * Largest argument of sines and cosines whose multiples of pi/2 are below 2^20, which keeps
+     * the products with the parts of pi/2 exact.
+     */
+    private static final double TRIG_LIMIT = 0x1p20;
+
+    private static final DoubleVector S1 = constant(-1.66666666666666324348e-01);
+    private static final DoubleVector S2 = constant(8.33333333332248946124e-03);
+    private static final DoubleVector S3 = constant(-1.98412698298579493134e-04);
+    private static final DoubleVector S4 = constant(2.75573137070700676789e-06);
+    private static final DoubleVector S5 = constant(-2.50507602534068634195e-08);
+    private static final DoubleVector S6 = constant(1.58969099521155010221e-10);
+    private static final DoubleVector C1 = constant(4.16666666666666019037e-02);
+    private static final DoubleVector C2 = constant(-1.38888888888741095749e-03);
+    private static final DoubleVector C3 = constant(2.48015872894767294178e-05);
+    private static final DoubleVector C4 = constant(-2.75573143513906633035e-07);
+    private static final DoubleVector C5 = constant(2.08757232129817482790e-09);
+    private static final DoubleVector C6 = constant(-1.13596475577881948265e-11);
+
+    private static final DoubleVector LOG2_E = constant(1.44269504088896338700e+00);
+    private static final DoubleVector LN2_HI = constant(6.93147180369123816490e-01);
+    private static final DoubleVector LN2_LO = constant(1.90821492927058770002e-10);
+    /**
+     * Range of exponents whose powers of two are normal doubles, so that scaling is exact.
+     */
+    private static final double EXP_MIN = -708;
+    private static final double EXP_MAX = 709;
+    private static final DoubleVector P1 = constant(1.66666666666666019037e-01);
+    private static final DoubleVector P2 = constant(-2.77777777770155933842e-03);
+    private static final DoubleVector P3 = constant(6.61375632143793436117e-05);
+    private static final DoubleVector P4 = constant(-1.65339022054652515390e-06);
+    private static final DoubleVector P5 = constant(4.13813679705723846039e-08);
+
+    private static final DoubleVector SQRT2 = constant(1.41421356237309514547e+00);
+    private static final DoubleVector LG1 = constant(6.666666666666735130e-01);
+    private static final DoubleVector LG2 = constant(3.999999999940941908e-01);
+    private static final DoubleVector LG3 = constant(2.857142874366239149e-01);
+    private static final DoubleVector LG4 = constant(2.222219843214978396e-01);
+    private static final DoubleVector LG5 = constant(1.818357216161805012e-01);
+    private static final DoubleVector LG6 = constant(1.531383769920937332e-01);
+    private static final DoubleVector LG7 = constant(1.479819860511658591e-01);
+
+    static {
+        for (int i = 0; i < LANES; i++) {
+            IOTA[i] = i;
+        }
+    }
+
+    /**
+     * Returns a vector with a constant in every lane. The kernels take their constants as vectors,
+     * as broadcasting scalars in the loops grows them past the size up to which the compiler
+     * inlines the vector operations, and vectors it does not inline are allocated on the heap.
+     */
+    private static DoubleVector constant(double value) {
+        return DoubleVector.broadcast(SPECIES, value);
+    }
+
+    @Override
+    public String getName() {
+        return "vector, " + LANES + " lanes";
+    }
+
+    @Override
+    public void evaluate(CurveFamily family, double a, double b, double c,
+                         double startX, double stepX, double[] out, int count) {
+        // Every family has a loop of its own, so that the compiler inlines the whole kernel into it
+        // and keeps the vectors in registers rather than boxing them between calls.
+        int done;
+        switch (family) {
+            case SIN:
+            case COS:
+                done = sinCos(family == CurveFamily.COS, a, b, c, startX, stepX, out, count);
+                break;
+            case TAN:
+                done = tan(false, a, b, c, startX, stepX, out, count);
+                break;
+            case CTAN:
+                done = tan(true, a, b, c, startX, stepX, out, count);
+                break;
+            case PARABOLA:
+                done = parabola(a, b, c, startX, stepX, out, count);
+                break;
+            case HYPERBOLA:
+                done = hyperbola(a, b, startX, stepX, out, count);
+                break;
+            case EXP:
+                done = exp(a, b, startX, stepX, out, count);
+                break;
+            case LOG:
+                done = log(a, b, startX, stepX, out, count);
+                break;
+            default:
+                throw new IllegalArgumentException("No kernel for " + family);
+        }
+        CurveFunction function = family.create(a, b, c);
+        for (int i = done; i < count; i++) {
+            out[i] = function.apply(startX + i * stepX);
+        }
+    }
+
+    private static int sinCos(boolean cosine, double a, double b, double c,
+                              double startX, double stepX, double[] out, int count) {
+        int bound = SPECIES.loopBound(count);
+        for (int i = 0; i < bound; i += LANES) {
+            DoubleVector t = x(i, startX, stepX).mul(c);
+            sinCos(t, cosine).mul(b).add(a).intoArray(out, i);
+            VectorMask<Double> scalar = t.abs().compare(VectorOperators.LE, TRIG_LIMIT).not();
+            if (scalar.anyTrue()) {
+                recompute(cosine ? CurveFamily.COS : CurveFamily.SIN, a, b, c, startX, stepX, out, i);
+            }
+        }
+        return bound;
+    }
+
+    private static int tan(boolean cotangent, double a, double b, double c,
+                           double startX, double stepX, double[] out, int count) {
+        int bound = SPECIES.loopBound(count);
+        for (int i = 0; i < bound; i += LANES) {
+            DoubleVector t = x(i, startX, stepX).mul(c);
+            DoubleVector tan = tan(t);
+            DoubleVector y = cotangent ? DoubleVector.broadcast(SPECIES, b).div(tan).add(a) : tan.mul(b).add(a);
+            y.intoArray(out, i);
+            VectorMask<Double> scalar = t.abs().compare(VectorOperators.LE, TRIG_LIMIT).not();
+            if (scalar.anyTrue()) {
+                recompute(cotangent ? CurveFamily.CTAN : CurveFamily.TAN, a, b, c, startX, stepX, out, i);
+            }
+        }
+        return bound;
+    }
+
+    private static int parabola(double a, double b, double c, double startX, double stepX, double[] out, int count) {
+        int bound = SPECIES.loopBound(count);
+        for (int i = 0; i < bound; i += LANES) {
+            DoubleVector x = x(i, startX, stepX);
+            x.mul(a).mul(x).add(x.mul(b)).add(c).intoArray(out, i);
+        }
+        return bound;
+    }
+
+    private static int hyperbola(double a, double b, double startX, double stepX, double[] out, int count) {
+        int bound = SPECIES.loopBound(count);
+        for (int i = 0; i < bound; i += LANES) {
+            DoubleVector.broadcast(SPECIES, a).div(x(i, startX, stepX).mul(b)).intoArray(out, i);
+        }
+        return bound;
+    }
+
+    private static int exp(double a, double b, double startX, double stepX, double[] out, int count) {
+        int bound = SPECIES.loopBound(count);
+        for (int i = 0; i < bound; i += LANES) {
+            DoubleVector t = x(i, startX, stepX).mul(b);
+            exp(t).mul(a).intoArray(out, i);
+            VectorMask<Double> scalar = t.compare(VectorOperators.GE, EXP_MIN)
+                    .and(t.compare(VectorOperators.LE, EXP_MAX)).not();
+            if (scalar.anyTrue()) {
+                recompute(CurveFamily.EXP, a, b, 1, startX, stepX, out, i);
+            }
+        }
+        return bound;
+    }
+
+    private static int log(double a, double b, double startX, double stepX, double[] out, int count) {
+        int bound = SPECIES.loopBound(count);
+        for (int i = 0; i < bound; i += LANES) {
+            DoubleVector t = x(i, startX, stepX).mul(b);
+            log(t).mul(a).intoArray(out, i);
+            VectorMask<Double> scalar = t.compare(VectorOperators.GE, Double.MIN_NORMAL)
+                    .and(t.compare(VectorOperators.LE, Double.MAX_VALUE)).not();
+            if (scalar.anyTrue()) {
+                recompute(CurveFamily.LOG, a, b, 1, startX, stepX, out, i);
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * Returns the x values of the lanes starting at index i, computed with the same operations as
+     * startX + i * stepX, as the lane indices are exact.
+     */
+    private static DoubleVector x(int i, double startX, double stepX) {
+        return DoubleVector.fromArray(SPECIES, IOTA, 0).add(i).mul(stepX).add(startX);
+    }
+
+    /**
+     * Computes the lanes starting at index i again with the scalar function of the curve, when some
+     * of them are outside the range of the vector kernel.
+     */
+    private static void recompute(CurveFamily family, double a, double b, double c,
+                                  double startX, double stepX, double[] out, int i) {
+        CurveFunction function = family.create(a, b, c);
+        for (int lane = 0; lane < LANES; lane++) {
+            out[i + lane] = function.apply(startX + (i + lane) * stepX);
+        }
+    }
+
+    /**
+     * Returns the sines or cosines of arguments up to {@link #TRIG_LIMIT} in magnitude.
+     */
+    private static DoubleVector sinCos(DoubleVector x, boolean cosine) {
+        DoubleVector rounded = x.fma(TWO_OVER_PI, ROUNDING_VECTOR);
+        DoubleVector n = rounded.sub(ROUNDING_VECTOR);
+        DoubleVector r = reduce(x, n);
+        DoubleVector z = r.mul(r);
+        // The low bits of the rounded value hold n in two's complement. cos(x) = sin(x + pi/2),
+        // so cosines take the polynomials and signs of the next quadrant.
+        LongVector quadrant = rounded.reinterpretAsLongs().add(cosine ? 1 : 0);
+        DoubleVector y = sinPolynomial(r, z).blend(cosPolynomial(z), isOdd(quadrant));
+        return y.reinterpretAsLongs().lanewise(VectorOperators.XOR, quadrant.and(2).lanewise(VectorOperators.LSHL, 62))
+                .reinterpretAsDoubles();
+    }
+
+    /**
+     * Returns the tangents of arguments up to {@link #TRIG_LIMIT} in magnitude.
+     */
+    private static DoubleVector tan(DoubleVector x) {
+        DoubleVector rounded = x.fma(TWO_OVER_PI, ROUNDING_VECTOR);
+        DoubleVector n = rounded.sub(ROUNDING_VECTOR);
+        DoubleVector r = reduce(x, n);
+        DoubleVector z = r.mul(r);
+        VectorMask<Double> odd = isOdd(rounded.reinterpretAsLongs());
+        DoubleVector sin = sinPolynomial(r, z);
+        DoubleVector cos = cosPolynomial(z);
+        // tan(r + pi/2) = -cos(r) / sin(r).
+        return sin.blend(cos.neg(), odd).div(cos.blend(sin, odd));
+    }
+
+    /**
+     * Returns the lanes whose lowest bit is set, as a mask on doubles. Vector masks are compared
+     * on doubles rather than cast from longs, which the compiler does not turn into vector code
+     * on every platform.
+     */
+    private static VectorMask<Double> isOdd(LongVector bits) {
+        return bits.and(1).reinterpretAsDoubles().compare(VectorOperators.GT, 0.0);
+    }
+
+    /**
+     * Returns x - n * pi/2 for integers n below 2^20 in magnitude. The error of the first subtraction
+     * of a small part is carried over, so the result is correct to about half a unit in the last place.
+     */
+    private static DoubleVector reduce(DoubleVector x, DoubleVector n) {
+        DoubleVector r1 = x.sub(n.mul(PIO2_1));
+        DoubleVector w = n.mul(PIO2_2);
+        DoubleVector r = r1.sub(w);
+        DoubleVector error = r1.sub(r).sub(w);
+        return r.add(error.sub(n.mul(PIO2_3)).sub(n.mul(PIO2_3T)));
+    }
+
+    /**
+     * Returns sin(r) for |r| <= pi/4, given z = r^2.
+     */
+    private static DoubleVector sinPolynomial(DoubleVector r, DoubleVector z) {
+        DoubleVector p = z.fma(S6, S5).fma(z, S4).fma(z, S3).fma(z, S2).fma(z, S1);
+        return r.mul(z).fma(p, r);
+    }
+
+    /**
+     * Returns cos(r) for |r| <= pi/4, given z = r^2. The rounding error of 1 - z/2 is added back.
+     */
+    private static DoubleVector cosPolynomial(DoubleVector z) {
+        DoubleVector p = z.fma(C6, C5).fma(z, C4).fma(z, C3).fma(z, C2).fma(z, C1);
+        DoubleVector half = z.mul(0.5);
+        DoubleVector w = ONE.sub(half);
+        DoubleVector error = ONE.sub(w).sub(half);
+        return z.mul(z).fma(p, error).add(w);
+    }
+
+    /**
+     * Returns e^x for x in [{@link #EXP_MIN}, {@link #EXP_MAX}].
+     */
+    private static DoubleVector exp(DoubleVector x) {
+        DoubleVector rounded = x.fma(LOG2_E, ROUNDING_VECTOR);
+        DoubleVector k = rounded.sub(ROUNDING_VECTOR);
+        DoubleVector hi = x.sub(k.mul(LN2_HI));
+        DoubleVector lo = k.mul(LN2_LO);
+        DoubleVector r = hi.sub(lo);
+        DoubleVector t = r.mul(r);
+        DoubleVector c = r.sub(t.mul(t.fma(P5, P4).fma(t, P3).fma(t, P2).fma(t, P1)));
+        // e^r = 1 + r + r c / (2 - c), with r = hi - lo kept apart for accuracy.
+        DoubleVector p = ONE.sub(lo.sub(r.mul(c).div(TWO.sub(c))).sub(hi));
+        // The low bits of the rounded value hold k, so shifting k + 1023 into the exponent gives 2^k.
+        DoubleVector scale = rounded.reinterpretAsLongs().add(1023).lanewise(VectorOperators.LSHL, 52).reinterpretAsDoubles();
+        return p.mul(scale);
+    }
+
+    /**
+     * Returns ln(x) for normal positive x.
+     */
+    private static DoubleVector log(DoubleVector x) {
+        LongVector bits = x.reinterpretAsLongs();
+        // The biased exponent placed in the low bits of ROUNDING gives it as a double.
+        DoubleVector k = bits.lanewise(VectorOperators.LSHR, 52).or(Double.doubleToRawLongBits(ROUNDING))
+                .reinterpretAsDoubles().sub(ROUNDING + 1023);
+        DoubleVector m = bits.and(0x000fffffffffffffL).or(0x3ff0000000000000L).reinterpretAsDoubles();
+        // Take the mantissa from [sqrt(2)/2, sqrt(2)) rather than [1, 2), so that f stays small.
+        VectorMask<Double> high = m.compare(VectorOperators.GT, SQRT2);
+        m = m.blend(m.mul(0.5), high);
+        k = k.blend(k.add(ONE), high);
+
+        DoubleVector f = m.sub(ONE);
+        DoubleVector s = f.div(f.add(TWO));
+        DoubleVector z = s.mul(s);
+        DoubleVector w = z.mul(z);
+        DoubleVector t1 = w.fma(LG6, LG4).fma(w, LG2).mul(w);
+        DoubleVector t2 = w.fma(LG7, LG5).fma(w, LG3).fma(w, LG1).mul(z);
+        DoubleVector polynomial = t1.add(t2);
+        DoubleVector halfSquare = f.mul(f).mul(0.5);
+        // ln(x) = k ln 2 + f - f^2/2 + s (f^2/2 + R), with ln 2 split so that k ln 2 is exact.
+        DoubleVector sum = s.mul(halfSquare.add(polynomial)).add(k.mul(LN2_LO));
+        return k.mul(LN2_HI).sub(halfSquare.sub(sum).sub(f));
+    }
+}
@@ -0,0 +1,246 @@
+import java.util.stream.IntStream;
+
+/**
+ * Samples a curve over the visible x range of a viewport.
+ * The range is walked in blocks of a few pixels. Every block is split into single pixels,
+ * so that a curve that oscillates within a block is found, and a pixel is subdivided further
+ * only where the curve bends away from a straight line, jumps, or leaves its domain. Blocks
+ * whose samples all lie on a straight line are then drawn as that line, so smooth curves need
+ * few vertices and far fewer evaluations than uniform sampling.
+ */
+public final class AdaptiveSampler {
+    /**
+     * Width in pixels of the blocks the visible range is split into before refinement.
+     */
+    public static final int BLOCK = 4;
+
+    /**
+     * Width in pixels of the ranges that are sampled as separate tasks in parallel mode.
+     */
+    public static final int CHUNK = 64 * BLOCK;
+
+    /**
+     * Maximum distance in pixels between the curve and the drawn line.
+     */
+    private static final double TOLERANCE = 0.5;
+
+    /**
+     * Subdivision depth down to which blocks are always split, 1 pixel.
+     */
+    private static final int MIN_DEPTH = 2;
+
+    /**
+     * Subdivision depth up to which bends are refined, 1/8 of a pixel.
+     */
+    private static final int BEND_DEPTH = 5;
+
+    /**
+     * Subdivision depth up to which jumps and domain edges are located, 1/4096 of a pixel.
+     */
+    private static final int MAX_DEPTH = 14;
+
+    private AdaptiveSampler() {
+    }
+
+    /**
+     * Samples a function over the whole width of the viewport.
+     *
+     * @param function the function to sample
+     * @param viewport the viewport to sample for
+     * @return the sampled curve
+     */
+    public static SampledCurve sample(CurveFunction function, Viewport viewport) {
+        SampledCurve curve = new SampledCurve(viewport.getWidth());
+        sampleStart(function, viewport, 0, curve);
+        sampleRange(function, viewport, 0, viewport.getWidth(), curve);
+        return curve;
+    }
+
+    /**
+     * Samples a function over the whole width of the viewport, splitting the
+     * range into chunks that are sampled on the common ForkJoin pool.
+     * The result is identical to {@link #sample(CurveFunction, Viewport)}.
+     *
+     * @param function the function to sample, which must be safe to call from several threads
+     * @param viewport the viewport to sample for
+     * @return the sampled curve
+     */
+    public static SampledCurve sampleParallel(CurveFunction function, Viewport viewport) {
+        int width = viewport.getWidth();
+        int chunks = (width + CHUNK - 1) / CHUNK;
+        if (chunks <= 1) {
+            return sample(function, viewport);
+        }
+
+        SampledCurve[] parts = new SampledCurve[chunks];
+        IntStream.range(0, chunks).parallel().forEach(i -> {
+            SampledCurve part = new SampledCurve(CHUNK);
+            sampleRange(function, viewport, i * CHUNK, Math.min(width, (i + 1) * CHUNK), part);
+            parts[i] = part;
+        });
+
+        SampledCurve curve = new SampledCurve(width);
+        sampleStart(function, viewport, 0, curve);
+        for (SampledCurve part : parts) {
+            curve.addAll(part);
+        }
+        return curve;
+    }
+
+    /**
+     * Samples a function cheaply at a fixed step of a few pixels without refinement,
+     * for previews while a parameter is being dragged. Steps that cross the whole
+     * drawing area or leave the domain become breaks.
+     *
+     * @param function the function to sample
+     * @param viewport the viewport to sample for
+     * @param step the distance between samples in pixels
+     * @return the sampled curve
+     */
+    public static SampledCurve samplePreview(CurveFunction function, Viewport viewport, int step) {
+        int width = viewport.getWidth();
+        SampledCurve curve = new SampledCurve(width / step + 2);
+        double previous = Double.NaN;
+        int evaluations = 0;
+        for (int column = 0; column < width + step; column += step) {
+            double x = viewport.toWorldX(Math.min(column, width));
+            double y = function.apply(x);
+            evaluations++;
+            if (isJump(viewport, previous, y)) {
+                curve.addBreak(x);
+            }
+            curve.add(x, y);
+            previous = y;
+        }
+        curve.countEvaluations(evaluations);
+        return curve;
+    }
+
+    /**
+     * Samples the first point of a range of pixel columns.
+     *
+     * @param function the function to sample
+     * @param viewport the viewport to sample for
+     * @param fromColumn the first pixel column
+     * @param out the curve to append the sample to
+     */
+    public static void sampleStart(CurveFunction function, Viewport viewport, int fromColumn, SampledCurve out) {
+        double x = viewport.toWorldX(fromColumn);
+        out.add(x, function.apply(x));
+        out.countEvaluations(1);
+    }
+
+    /**
+     * Samples the pixel columns in (fromColumn, toColumn], leaving out the first point.
+     * Ranges that start on a multiple of {@link #BLOCK} produce exactly the samples
+     * that a single call over their union would produce.
+     *
+     * @param function the function to sample
+     * @param viewport the viewport to sample for
+     * @param fromColumn the first pixel column
+     * @param toColumn the last pixel column
+     * @param out the curve to append the samples to
+     */
+    public static void sampleRange(CurveFunction function, Viewport viewport, int fromColumn, int toColumn, SampledCurve out) {
+        double xa = viewport.toWorldX(fromColumn);
+        double ya = function.apply(xa);
+        int evaluations = 1;
+        for (int column = fromColumn; column < toColumn; column += BLOCK) {
+            double xb = viewport.toWorldX(Math.min(column + BLOCK, toColumn));
+            double yb = function.apply(xb);
+            int start = out.size();
+            evaluations += 1 + refine(function, viewport, xa, ya, xb, yb, 0, out);
+            if (isStraight(viewport, out, start, xa, ya, xb, yb)) {
+                out.truncate(start);
+                out.add(xb, yb);
+            }
+            xa = xb;
+            ya = yb;
+        }
+        out.countEvaluations(evaluations);
+    }
+
+    private static int refine(CurveFunction function, Viewport viewport, double xa, double ya, double xb, double yb, int depth, SampledCurve out) {
+        int evaluations = 0;
+        if (depth < MAX_DEPTH) {
+            double xm = 0.5 * (xa + xb);
+            double ym = function.apply(xm);
+            evaluations++;
+            if (needsSplit(viewport, ya, ym, yb, depth)) {
+                evaluations += refine(function, viewport, xa, ya, xm, ym, depth + 1, out);
+                evaluations += refine(function, viewport, xm, ym, xb, yb, depth + 1, out);
+                return evaluations;
+            }
+        } else if (isJump(viewport, ya, yb)) {
+            out.addBreak(xb);
+        }
+        out.add(xb, yb);
+        return evaluations;
+    }
+
+    private static boolean needsSplit(Viewport viewport, double ya, double ym, double yb, int depth) {
+        boolean finiteA = Double.isFinite(ya);
+        boolean finiteM = Double.isFinite(ym);
+        boolean finiteB = Double.isFinite(yb);
+        if (!finiteA || !finiteM || !finiteB) {
+            return finiteA || finiteM || finiteB;
+        }
+
+        double sa = viewport.toScreenY(ya);
+        double sm = viewport.toScreenY(ym);
+        double sb = viewport.toScreenY(yb);
+        int height = viewport.getHeight();
+        if (isOffscreen(sa, sm, height) && isOffscreen(sm, sb, height)) {
+            return false;
+        }
+        if (depth < MIN_DEPTH || Math.abs(sa - sb) > height) {
+            return true;
+        }
+        return depth < BEND_DEPTH && Math.abs(sm - 0.5 * (sa + sb)) > TOLERANCE;
+    }
+
+    /**
+     * Tells whether the samples of a block, from the given index on, all lie within the tolerance
+     * of the line between the ends of the block, so that the line can be drawn instead.
+     */
+    private static boolean isStraight(Viewport viewport, SampledCurve curve, int start, double xa, double ya, double xb, double yb) {
+        if (!Double.isFinite(ya) || !Double.isFinite(yb)) {
+            return false;
+        }
+        double sa = viewport.toScreenY(ya);
+        double slope = (viewport.toScreenY(yb) - sa) / (xb - xa);
+        int height = viewport.getHeight();
+        for (int i = start; i < curve.size() - 1; i++) {
+            if (curve.isBreak(i)) {
+                return false;
+            }
+            double s = viewport.toScreenY(curve.getY(i));
+            double line = sa + slope * (curve.getX(i) - xa);
+            if (Math.abs(s - line) > TOLERANCE && !isOffscreen(s, line, height)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether a segment that could not be split further still crosses the
+     * drawing area in a single step, which means it spans a pole.
+     */
+    private static boolean isJump(Viewport viewport, double ya, double yb) {
+        if (!Double.isFinite(ya) || !Double.isFinite(yb)) {
+            return false;
+        }
+        double sa = viewport.toScreenY(ya);
+        double sb = viewport.toScreenY(yb);
+        int height = viewport.getHeight();
+        return Math.abs(sa - sb) > height && !isOffscreen(sa, sb, height);
+    }
+
+    /**
+     * Tells whether both screen y values lie beyond the same edge of the drawing area.
+     */
+    private static boolean isOffscreen(double sa, double sb, int height) {
+        return (sa < 0 && sb < 0) || (sa > height && sb > height);
+    }
+}
@@ -0,0 +1,204 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Least recently used cache of curve analyses, computed on a background thread.
+ * <p>
+ * Entries are keyed by curve id and curve parameters only, as {@link CurveAnalyzer} covers a
+ * fixed x range whatever the viewport, so panning, zooming and hovering never analyze a curve
+ * again. A lookup that misses returns null and queues the analysis; once it is done, the
+ * listener is called, typically to request a repaint that picks it up.
+ * <p>
+ * Analyses are computed one at a time, newest request first. Dragging a slider requests the
+ * analysis of many parameter sets in a row, so requests beyond a small number still waiting are
+ * dropped, oldest first, and requested again by the next paint if they are still wanted.
+ */
+public final class AnalysisCache {
+    private static final int MAX_WAITING = 16;
+
+    private final CurveAnalyzer analyzer;
+    private final Map<Key, CurveAnalysis> entries;
+    private final Map<Key, Supplier<CurveAnalysis>> waiting = new LinkedHashMap<>();
+    private final ExecutorService executor;
+    private final Runnable onAnalyzed;
+    private final int capacity;
+    private Key running;
+    private long hits;
+    private long misses;
+    private long analyses;
+
+    /**
+     * Creates a cache with its own analysis thread.
+     *
+     * @param analyzer the analyzer to compute entries with
+     * @param capacity the maximum number of analyses to keep
+     * @param onAnalyzed called on the analysis thread after an analysis was added
+     */
+    public AnalysisCache(CurveAnalyzer analyzer, int capacity, Runnable onAnalyzed) {
+        this.analyzer = analyzer;
+        this.capacity = capacity;
+        this.onAnalyzed = onAnalyzed;
+        this.entries = new LinkedHashMap<Key, CurveAnalysis>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CurveAnalysis> eldest) {
+                return size() > AnalysisCache.this.capacity;
+            }
+        };
+        this.executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "curve-analysis");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    public CurveAnalyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    /**
+     * Returns the roots, extrema and inflection points of a curve, or null if they are not computed yet.
+     *
+     * @param id the id of the curve
+     * @param params the parameters the function was built from
+     * @param function the curve, evaluated on the analysis thread on a miss
+     * @return the analysis, or null while it is computed
+     */
+    public CurveAnalysis get(String id, double[] params, CurveFunction function) {
+        return get(new Key(new String[] {id}, params), () -> analyzer.analyze(function));
+    }
+
+    /**
+     * Returns the areas between two curves, or null if they are not computed yet.
+     *
+     * @param firstId the id of the first curve
+     * @param firstParams the parameters of the first curve
+     * @param first the first curve
+     * @param secondId the id of the second curve
+     * @param secondParams the parameters of the second curve
+     * @param second the second curve
+     * @return the areas, or null while they are computed
+     */
+    public CurveAnalysis getAreas(String firstId, double[] firstParams, CurveFunction first,
+                                  String secondId, double[] secondParams, CurveFunction second) {
+        double[] params = Arrays.copyOf(firstParams, firstParams.length + secondParams.length);
+        System.arraycopy(secondParams, 0, params, firstParams.length, secondParams.length);
+        return get(new Key(new String[] {firstId, secondId}, params), () -> analyzer.areasBetween(first, second));
+    }
+
+    private synchronized CurveAnalysis get(Key key, Supplier<CurveAnalysis> analysis) {
+        CurveAnalysis cached = entries.get(key);
+        if (cached != null) {
+            hits++;
+            return cached;
+        }
+        if (key.equals(running)) {
+            return null;
+        }
+        // Re-inserting moves the request to the end, where the analysis thread takes the newest from.
+        boolean added = waiting.remove(key) == null;
+        waiting.put(key, analysis);
+        if (added) {
+            misses++;
+            if (waiting.size() > MAX_WAITING) {
+                Iterator<Key> oldest = waiting.keySet().iterator();
+                oldest.next();
+                oldest.remove();
+            }
+            executor.execute(this::analyzeNewest);
+        }
+        return null;
+    }
+
+    /**
+     * Computes the newest waiting analysis. Runs on the analysis thread, once per request added,
+     * so the runs for requests that were dropped find nothing to do.
+     */
+    private void analyzeNewest() {
+        Key key = null;
+        Supplier<CurveAnalysis> analysis = null;
+        synchronized (this) {
+            for (Map.Entry<Key, Supplier<CurveAnalysis>> entry : waiting.entrySet()) {
+                key = entry.getKey();
+                analysis = entry.getValue();
+            }
+            if (key == null) {
+                return;
+            }
+            waiting.remove(key);
+            running = key;
+        }
+        CurveAnalysis result = null;
+        try {
+            result = analysis.get();
+        } finally {
+            synchronized (this) {
+                running = null;
+                if (result != null) {
+                    entries.put(key, result);
+                    analyses++;
+                }
+            }
+        }
+        onAnalyzed.run();
+    }
+
+    /**
+     * Drops all analyses and the requests still waiting.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        waiting.clear();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of analyses computed.
+     */
+    public synchronized long getAnalyses() {
+        return analyses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AnalysisCache[hits=" + hits + ", misses=" + misses + ", analyses=" + analyses + "]";
+    }
+
+    private static final class Key {
+        private final String[] ids;
+        private final double[] params;
+        private final int hash;
+
+        Key(String[] ids, double[] params) {
+            this.ids = ids;
+            this.params = params.clone();
+            this.hash = 31 * Arrays.hashCode(ids) + Arrays.hashCode(params);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return Arrays.equals(ids, other.ids) && Arrays.equals(params, other.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
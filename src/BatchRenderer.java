@@ -0,0 +1,87 @@
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Command line entry point that renders a batch of plot specs to PNG files without a display.
+ * <p>
+ * Usage: {@code java -Djava.awt.headless=true BatchRenderer <batch file> [threads]}
+ * <p>
+ * The batch file holds one {@link PlotSpec} per line, each with an {@code out=} file.
+ * Files ending in {@code .svg}, {@code .svgz} or {@code .pdf} are exported as vector documents
+ * by {@link VectorExporter}, all others are rendered to PNG.
+ * Empty lines and lines starting with {@code #} are skipped.
+ */
+public class BatchRenderer {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 1) {
+            System.err.println("Usage: java BatchRenderer <batch file> [threads]");
+            System.exit(2);
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        List<PlotSpec> specs = new ArrayList<>();
+        List<String> lines = Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                PlotSpec spec = PlotSpec.parse(line);
+                if (spec.getOutput() == null) {
+                    throw new IllegalArgumentException("Missing out=<file>");
+                }
+                specs.add(spec);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Line " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+
+        HeadlessRenderer renderer = new HeadlessRenderer();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (PlotSpec spec : specs) {
+            futures.add(executor.submit(() -> {
+                File file = new File(spec.getOutput());
+                File parent = file.getAbsoluteFile().getParentFile();
+                if (parent != null) {
+                    parent.mkdirs();
+                }
+                String name = file.getName().toLowerCase(Locale.ROOT);
+                if (name.endsWith(".svg") || name.endsWith(".svgz") || name.endsWith(".pdf")) {
+                    VectorExporter.export(spec, file, VectorExporter.DEFAULT_TOLERANCE);
+                } else {
+                    ImageIO.write(renderer.render(spec), "png", file);
+                }
+                return null;
+            }));
+        }
+
+        int rendered = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+                rendered++;
+            } catch (java.util.concurrent.ExecutionException e) {
+                System.err.println(specs.get(i).getOutput() + ": " + e.getCause());
+            }
+        }
+        executor.shutdown();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Rendered %d of %d images in %.2f s (%.1f images/s) on %d threads%n",
+                rendered, specs.size(), seconds, rendered / seconds, threads);
+    }
+}
@@ -0,0 +1,189 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Points of interest of a curve, or of a pair of curves, found by {@link CurveAnalyzer}:
+ * roots, local extrema and inflection points, and the areas enclosed between consecutive
+ * intersections of two curves. Each marker keeps the world position it is drawn at and,
+ * for areas, the interval and the value of the integral. Markers are stored in primitive arrays.
+ * <p>
+ * An analysis is filled by the thread that computes it and not changed once it is published.
+ */
+public final class CurveAnalysis {
+    /**
+     * The kind of a marker.
+     */
+    public enum Kind {
+        ROOT("Root"),
+        MINIMUM("Minimum"),
+        MAXIMUM("Maximum"),
+        INFLECTION("Inflection"),
+        AREA("Area");
+
+        private final String label;
+
+        Kind(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private double[] xs;
+    private double[] ys;
+    private double[] fromXs;
+    private double[] toXs;
+    private double[] values;
+    private byte[] kinds;
+    private int size;
+
+    public CurveAnalysis() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty analysis.
+     *
+     * @param capacity the initial number of markers to reserve space for
+     */
+    public CurveAnalysis(int capacity) {
+        int length = Math.max(capacity, 16);
+        xs = new double[length];
+        ys = new double[length];
+        fromXs = new double[length];
+        toXs = new double[length];
+        values = new double[length];
+        kinds = new byte[length];
+    }
+
+    /**
+     * Returns an analysis with the markers of several analyses, in order.
+     *
+     * @param analyses the analyses to combine
+     */
+    public static CurveAnalysis merge(List<CurveAnalysis> analyses) {
+        int count = 0;
+        for (CurveAnalysis analysis : analyses) {
+            count += analysis.size;
+        }
+        CurveAnalysis merged = new CurveAnalysis(count);
+        for (CurveAnalysis analysis : analyses) {
+            for (int i = 0; i < analysis.size; i++) {
+                merged.add(analysis.getKind(i), analysis.xs[i], analysis.ys[i],
+                        analysis.fromXs[i], analysis.toXs[i], analysis.values[i]);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Appends a point marker, such as a root or an extremum.
+     *
+     * @param kind the kind of the point
+     * @param x the x value of the point
+     * @param y the y value of the point
+     */
+    public void addPoint(Kind kind, double x, double y) {
+        add(kind, x, y, x, x, y);
+    }
+
+    /**
+     * Appends the area between two curves over an interval, marked at the middle of the interval.
+     *
+     * @param fromX the start of the interval
+     * @param toX the end of the interval
+     * @param y the y value to mark the area at, between the curves
+     * @param area the integral of the first curve minus the second over the interval
+     */
+    public void addArea(double fromX, double toX, double y, double area) {
+        add(Kind.AREA, 0.5 * (fromX + toX), y, fromX, toX, area);
+    }
+
+    private void add(Kind kind, double x, double y, double fromX, double toX, double value) {
+        if (size == xs.length) {
+            int length = size * 2;
+            xs = Arrays.copyOf(xs, length);
+            ys = Arrays.copyOf(ys, length);
+            fromXs = Arrays.copyOf(fromXs, length);
+            toXs = Arrays.copyOf(toXs, length);
+            values = Arrays.copyOf(values, length);
+            kinds = Arrays.copyOf(kinds, length);
+        }
+        xs[size] = x;
+        ys[size] = y;
+        fromXs[size] = fromX;
+        toXs[size] = toX;
+        values[size] = value;
+        kinds[size] = (byte) kind.ordinal();
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Kind getKind(int index) {
+        return KINDS[kinds[index]];
+    }
+
+    public double getX(int index) {
+        return xs[index];
+    }
+
+    public double getY(int index) {
+        return ys[index];
+    }
+
+    /**
+     * Returns the start of the interval of an area, or the x value of a point.
+     */
+    public double getFromX(int index) {
+        return fromXs[index];
+    }
+
+    /**
+     * Returns the end of the interval of an area, or the x value of a point.
+     */
+    public double getToX(int index) {
+        return toXs[index];
+    }
+
+    /**
+     * Returns the integral of an area, or the y value of a point.
+     */
+    public double getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * Returns the text shown when the pointer is over a marker.
+     *
+     * @param index the index of the marker
+     */
+    public String describe(int index) {
+        Kind kind = getKind(index);
+        if (kind == Kind.AREA) {
+            return String.format("Area: %.4g, X: %.2f to %.2f", values[index], fromXs[index], toXs[index]);
+        }
+        return String.format("%s X: %.2f, Y: %.2f", kind.getLabel(), xs[index], ys[index]);
+    }
+
+    @Override
+    public String toString() {
+        int[] counts = new int[KINDS.length];
+        for (int i = 0; i < size; i++) {
+            counts[kinds[i]]++;
+        }
+        StringBuilder text = new StringBuilder("CurveAnalysis[");
+        for (Kind kind : KINDS) {
+            text.append(kind.name().toLowerCase(Locale.ROOT)).append('=').append(counts[kind.ordinal()]);
+            text.append(kind.ordinal() < KINDS.length - 1 ? ", " : "]");
+        }
+        return text.toString();
+    }
+}
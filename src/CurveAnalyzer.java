@@ -0,0 +1,253 @@
+/**
+ * Finds the roots, local extrema and inflection points of explicit curves, and the areas enclosed
+ * between pairs of curves, over a fixed x range.
+ * <p>
+ * A curve is evaluated on a grid over the range, and sign changes of its values, of its first and
+ * of its second differences bracket the roots of the curve and of its first and second derivatives.
+ * Each bracket is refined with Brent's method by {@link IntersectionFinder}, on derivatives taken by
+ * central differences, and brackets around poles are rejected there. Where the values or the differences
+ * stay within rounding error of zero over several grid points, as on a straight line or a curve that
+ * lies on the x axis, the finder ignores them, rather than reporting a run of points.
+ * <p>
+ * Areas are integrated between consecutive intersections of two curves with adaptive Gauss-Kronrod
+ * quadrature, and left out where the integral does not converge, as across a pole.
+ */
+public final class CurveAnalyzer {
+    private static final CurveFunction ZERO = x -> 0;
+
+    /**
+     * Steps of the central differences for the first and second derivative, relative to max(1, |x|).
+     * They balance the truncation error against the rounding error of the differences.
+     */
+    private static final double FIRST_DIFFERENCE = Math.cbrt(Math.ulp(1.0));
+    private static final double SECOND_DIFFERENCE = Math.sqrt(Math.sqrt(Math.ulp(1.0)));
+
+    /**
+     * Multiples of the unit in the last place of the values below which a difference counts as rounding noise.
+     */
+    private static final double NOISE_ULPS = 16;
+
+    private static final int MAX_DEPTH = 24;
+    private static final double RELATIVE_TOLERANCE = 1e-10;
+
+    /**
+     * Gauss-Kronrod nodes on [-1, 1], from the outermost inwards, with the weights of the 15 point Kronrod
+     * rule and of the 7 point Gauss rule, whose nodes are every other Kronrod node starting with the second.
+     */
+    private static final double[] KRONROD_NODES = {
+            0.991455371120812639206854697526329, 0.949107912342758524526189684047851,
+            0.864864423359769072789712788640926, 0.741531185599394439863864773280788,
+            0.586087235467691130294144845693013, 0.405845151377397166906606412076961,
+            0.207784955007898467600689403773245, 0.0};
+    private static final double[] KRONROD_WEIGHTS = {
+            0.022935322010529224963732008058970, 0.063092092629978553290700663189204,
+            0.104790010322250183839876322541518, 0.140653259715525918745189590510238,
+            0.169004726639267902826583426598550, 0.190350578064785409913256402421014,
+            0.204432940075298892414161999234649, 0.209482141084727828012999174891714};
+    private static final double[] GAUSS_WEIGHTS = {
+            0.129484966168869693270611432679082, 0.279705391489276667901467771423780,
+            0.381830050505118944950369775488975, 0.417959183673469387755102040816327};
+
+    private final double fromX;
+    private final double toX;
+    private final int steps;
+
+    /**
+     * Creates an analyzer.
+     *
+     * @param fromX the start of the x range to analyze
+     * @param toX the end of the x range to analyze
+     * @param steps the number of grid intervals to bracket points on
+     */
+    public CurveAnalyzer(double fromX, double toX, int steps) {
+        this.fromX = fromX;
+        this.toX = toX;
+        this.steps = steps;
+    }
+
+    public double getFromX() {
+        return fromX;
+    }
+
+    public double getToX() {
+        return toX;
+    }
+
+    /**
+     * Finds the roots, local extrema and inflection points of a curve.
+     *
+     * @param function the curve
+     * @return the points, roots first, then extrema, then inflection points, each in increasing x
+     */
+    public CurveAnalysis analyze(CurveFunction function) {
+        double step = (toX - fromX) / steps;
+        double[] values = new double[steps + 1];
+        function.applyAll(fromX, step, values, steps + 1);
+        double[] zeros = new double[steps + 1];
+        IntersectionFinder finder = finder(step);
+        CurveAnalysis analysis = new CurveAnalysis();
+
+        IntersectionSet found = new IntersectionSet();
+        finder.findOnGrid(function, ZERO, values, zeros, fromX, step, 0, steps, 0, 0, found);
+        for (int i = 0; i < found.size(); i++) {
+            analysis.addPoint(CurveAnalysis.Kind.ROOT, found.getX(i), 0);
+        }
+
+        // Besides the rounding of the values, the grid points are rounded by up to an ulp of the
+        // largest x, which changes the values by that much times the slope.
+        double xError = Math.ulp(Math.max(Math.abs(fromX), Math.abs(toX)));
+        CurveFunction slope = x -> firstDerivative(function, x);
+        double[] slopes = new double[steps + 1];
+        double[] noise = new double[steps + 1];
+        for (int i = 0; i <= steps; i++) {
+            int before = Math.max(i - 1, 0);
+            int after = Math.min(i + 1, steps);
+            slopes[i] = (values[after] - values[before]) / ((after - before) * step);
+            double magnitude = Math.max(Math.abs(values[before]), Math.abs(values[after]));
+            noise[i] = NOISE_ULPS * (Math.ulp(magnitude) + Math.abs(slopes[i]) * xError) / step;
+        }
+        double[] curvatures = new double[steps + 1];
+        double[] curvatureNoise = new double[steps + 1];
+        curvatures[0] = Double.NaN;
+        curvatures[steps] = Double.NaN;
+        for (int i = 1; i < steps; i++) {
+            curvatures[i] = (values[i + 1] - 2 * values[i] + values[i - 1]) / (step * step);
+            double magnitude = Math.max(Math.abs(values[i]), Math.max(Math.abs(values[i - 1]), Math.abs(values[i + 1])));
+            curvatureNoise[i] = NOISE_ULPS * (Math.ulp(magnitude) + Math.abs(slopes[i]) * xError) / (step * step);
+        }
+        found.clear();
+        finder.findOnGrid(slope, ZERO, slopes, zeros, noise, fromX, step, 0, steps, 0, 0, found);
+        for (int i = 0; i < found.size(); i++) {
+            double x = found.getX(i);
+            double before = slope.apply(x - 0.25 * step);
+            if (changesSign(before, slope.apply(x + 0.25 * step))) {
+                // The slope falls through zero at a maximum and rises through it at a minimum.
+                analysis.addPoint(before > 0 ? CurveAnalysis.Kind.MAXIMUM : CurveAnalysis.Kind.MINIMUM, x, function.apply(x));
+            }
+        }
+
+        CurveFunction curvature = x -> secondDerivative(function, x);
+        found.clear();
+        finder.findOnGrid(curvature, ZERO, curvatures, zeros, curvatureNoise, fromX, step, 0, steps, 0, 0, found);
+        for (int i = 0; i < found.size(); i++) {
+            double x = found.getX(i);
+            if (changesSign(curvature.apply(x - 0.25 * step), curvature.apply(x + 0.25 * step))) {
+                analysis.addPoint(CurveAnalysis.Kind.INFLECTION, x, function.apply(x));
+            }
+        }
+        return analysis;
+    }
+
+    /**
+     * Finds the areas enclosed between two curves, from each of their intersections to the next.
+     *
+     * @param first the first curve
+     * @param second the second curve
+     * @return the areas, each the integral of the first curve minus the second, in increasing x
+     */
+    public CurveAnalysis areasBetween(CurveFunction first, CurveFunction second) {
+        double step = (toX - fromX) / steps;
+        double[] firstValues = new double[steps + 1];
+        double[] secondValues = new double[steps + 1];
+        first.applyAll(fromX, step, firstValues, steps + 1);
+        second.applyAll(fromX, step, secondValues, steps + 1);
+        CurveFunction difference = x -> first.apply(x) - second.apply(x);
+        IntersectionSet found = new IntersectionSet();
+        finder(step).findOnGrid(first, second, firstValues, secondValues, fromX, step, 0, steps, 0, 0, found);
+
+        CurveAnalysis analysis = new CurveAnalysis();
+        for (int i = 0; i + 1 < found.size(); i++) {
+            double a = found.getX(i);
+            double b = found.getX(i + 1);
+            double area = integrate(difference, a, b);
+            if (Double.isFinite(area)) {
+                double middle = 0.5 * (a + b);
+                analysis.addArea(a, b, 0.5 * (first.apply(middle) + second.apply(middle)), area);
+            }
+        }
+        return analysis;
+    }
+
+    /**
+     * Integrates a function with adaptive 15 point Gauss-Kronrod quadrature, halving the intervals
+     * whose Kronrod and Gauss estimates differ by more than their share of the tolerance.
+     *
+     * @param function the function to integrate
+     * @param a the lower limit
+     * @param b the upper limit
+     * @return the integral to about ten significant digits, or NaN if the function is not finite
+     *         somewhere it was evaluated or the estimate does not converge
+     */
+    public static double integrate(CurveFunction function, double a, double b) {
+        double[] estimate = new double[2];
+        gaussKronrod(function, a, b, estimate);
+        double tolerance = Math.max(RELATIVE_TOLERANCE * Math.abs(estimate[0]), Double.MIN_NORMAL);
+        return integrate(function, a, b, estimate, tolerance, 0);
+    }
+
+    private static double integrate(CurveFunction function, double a, double b, double[] estimate,
+                                    double tolerance, int depth) {
+        double kronrod = estimate[0];
+        double error = estimate[1];
+        if (!Double.isFinite(kronrod) || !Double.isFinite(error)) {
+            return Double.NaN;
+        } else if (error <= tolerance) {
+            return kronrod;
+        } else if (depth == MAX_DEPTH) {
+            return Double.NaN;
+        }
+        double middle = 0.5 * (a + b);
+        gaussKronrod(function, a, middle, estimate);
+        double left = integrate(function, a, middle, estimate, 0.5 * tolerance, depth + 1);
+        if (Double.isNaN(left)) {
+            return Double.NaN;
+        }
+        gaussKronrod(function, middle, b, estimate);
+        return left + integrate(function, middle, b, estimate, 0.5 * tolerance, depth + 1);
+    }
+
+    /**
+     * Stores the 15 point Kronrod estimate of the integral over [a, b] and its difference
+     * from the 7 point Gauss estimate.
+     */
+    private static void gaussKronrod(CurveFunction function, double a, double b, double[] estimate) {
+        double center = 0.5 * (a + b);
+        double halfLength = 0.5 * (b - a);
+        double middleValue = function.apply(center);
+        double kronrod = middleValue * KRONROD_WEIGHTS[7];
+        double gauss = middleValue * GAUSS_WEIGHTS[3];
+        for (int j = 0; j < 7; j++) {
+            double offset = halfLength * KRONROD_NODES[j];
+            double sum = function.apply(center - offset) + function.apply(center + offset);
+            kronrod += KRONROD_WEIGHTS[j] * sum;
+            if (j % 2 == 1) {
+                gauss += GAUSS_WEIGHTS[j / 2] * sum;
+            }
+        }
+        estimate[0] = kronrod * halfLength;
+        estimate[1] = Math.abs((kronrod - gauss) * halfLength);
+    }
+
+    private static IntersectionFinder finder(double step) {
+        return new IntersectionFinder(1e-6 * step, 0.5 * step);
+    }
+
+    /**
+     * Returns whether a derivative has opposite signs on the two sides of a point found in a bracket.
+     * Differences on the grid that straddle a pole change sign next to it although the derivative
+     * does not, and the derivative itself tells those apart.
+     */
+    private static boolean changesSign(double before, double after) {
+        return Double.isFinite(before) && Double.isFinite(after) && (before > 0 && after < 0 || before < 0 && after > 0);
+    }
+
+    private static double firstDerivative(CurveFunction function, double x) {
+        double h = FIRST_DIFFERENCE * Math.max(1, Math.abs(x));
+        return (function.apply(x + h) - function.apply(x - h)) / (2 * h);
+    }
+
+    private static double secondDerivative(CurveFunction function, double x) {
+        double h = SECOND_DIFFERENCE * Math.max(1, Math.abs(x));
+        return (function.apply(x + h) - 2 * function.apply(x) + function.apply(x - h)) / (h * h);
+    }
+}
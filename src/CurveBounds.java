@@ -0,0 +1,99 @@
+import java.util.Arrays;
+
+/**
+ * The values of an explicit curve on a grid in x, with their range on each interval of the grid.
+ * <p>
+ * Intersection search brackets crossings between neighbouring grid points, where the difference
+ * of two curves changes sign. That needs the curves to take overlapping values on the interval
+ * holding both points, so intervals on which the ranges of two curves are disjoint hold no
+ * bracket and are skipped, as are pairs of curves whose ranges are disjoint everywhere.
+ * Only finite values enter the ranges, since brackets are only formed between finite values.
+ * The pruning therefore finds exactly the brackets a search of every grid step would find.
+ */
+public final class CurveBounds {
+    /**
+     * Grid steps per interval.
+     */
+    public static final int INTERVAL = 16;
+
+    private final double fromX;
+    private final double step;
+    private final int steps;
+    private final double[] values;
+    private final double[] min;
+    private final double[] max;
+
+    /**
+     * Evaluates a curve on a grid.
+     *
+     * @param function the curve
+     * @param fromX the first grid point
+     * @param toX the last grid point
+     * @param steps the number of grid steps
+     */
+    public CurveBounds(CurveFunction function, double fromX, double toX, int steps) {
+        this.fromX = fromX;
+        this.step = (toX - fromX) / steps;
+        this.steps = steps;
+        this.values = new double[steps + 1];
+        function.applyAll(fromX, step, values, steps + 1);
+
+        int intervals = (steps + INTERVAL - 1) / INTERVAL;
+        min = new double[intervals];
+        max = new double[intervals];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        for (int k = 0; k < intervals; k++) {
+            for (int i = k * INTERVAL, end = lastStep(k); i <= end; i++) {
+                double value = values[i];
+                if (Double.isFinite(value)) {
+                    min[k] = Math.min(min[k], value);
+                    max[k] = Math.max(max[k], value);
+                }
+            }
+        }
+    }
+
+    public int getIntervals() {
+        return min.length;
+    }
+
+    /**
+     * Returns the first grid point of an interval.
+     */
+    public int firstStep(int interval) {
+        return interval * INTERVAL;
+    }
+
+    /**
+     * Returns the last grid point of an interval, which is also the first of the next one.
+     */
+    public int lastStep(int interval) {
+        return Math.min((interval + 1) * INTERVAL, steps);
+    }
+
+    /**
+     * Returns whether this curve and another one on the same grid take overlapping values on an interval.
+     *
+     * @param other the other curve
+     * @param interval the interval
+     */
+    public boolean overlaps(CurveBounds other, int interval) {
+        return min[interval] <= other.max[interval] && other.min[interval] <= max[interval];
+    }
+
+    public double getFromX() {
+        return fromX;
+    }
+
+    public double getStep() {
+        return step;
+    }
+
+    /**
+     * Returns the values at the grid points. The array is shared and must not be modified.
+     */
+    public double[] getValues() {
+        return values;
+    }
+}
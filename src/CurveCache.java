@@ -0,0 +1,141 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Least recently used cache of sampled curves.
+ * Entries are keyed by curve id, curve parameters and viewport, so a curve is
+ * sampled again only when one of those changes.
+ */
+public final class CurveCache {
+    private final Map<Key, SampledCurve> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evaluations = new AtomicLong();
+    private volatile int capacity;
+
+    /**
+     * Creates a cache.
+     *
+     * @param capacity the maximum number of curves to keep
+     */
+    public CurveCache(int capacity) {
+        this.capacity = capacity;
+        entries = new LinkedHashMap<Key, SampledCurve>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, SampledCurve> eldest) {
+                return size() > CurveCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached samples of a curve, sampling it on a miss.
+     *
+     * @param id the id of the curve
+     * @param params the parameters the function was built from
+     * @param viewport the viewport to sample for
+     * @param function the function to sample on a miss
+     * @param parallel whether to sample chunks of the x range in parallel on a miss
+     * @return the sampled curve
+     */
+    public SampledCurve get(String id, double[] params, Viewport viewport, CurveFunction function, boolean parallel) {
+        return get(id, params, viewport, () -> parallel
+                ? AdaptiveSampler.sampleParallel(function, viewport) : AdaptiveSampler.sample(function, viewport));
+    }
+
+    /**
+     * Returns the cached samples of a curve, taking them from a sampler on a miss.
+     *
+     * @param id the id of the curve
+     * @param params the parameters the curve was built from
+     * @param viewport the viewport to sample for
+     * @param sampler the source of the samples on a miss
+     * @return the sampled curve
+     */
+    public SampledCurve get(String id, double[] params, Viewport viewport, Supplier<SampledCurve> sampler) {
+        Key key = new Key(id, params, viewport);
+        SampledCurve curve;
+        synchronized (entries) {
+            curve = entries.get(key);
+        }
+        if (curve != null) {
+            hits.incrementAndGet();
+            return curve;
+        }
+        misses.incrementAndGet();
+        curve = sampler.get();
+        evaluations.addAndGet(curve.getEvaluations());
+        synchronized (entries) {
+            entries.put(key, curve);
+        }
+        return curve;
+    }
+
+    /**
+     * Raises the capacity, so that it holds at least the given number of curves. Never lowers it.
+     *
+     * @param capacity the number of curves to keep
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > this.capacity) {
+            this.capacity = capacity;
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of function evaluations spent sampling curves on misses.
+     */
+    public long getEvaluations() {
+        return evaluations.get();
+    }
+
+    @Override
+    public String toString() {
+        return "CurveCache[hits=" + hits.get() + ", misses=" + misses.get() + "]";
+    }
+
+    private static final class Key {
+        private final String id;
+        private final double[] params;
+        private final Viewport viewport;
+        private final int hash;
+
+        Key(String id, double[] params, Viewport viewport) {
+            this.id = id;
+            this.params = params.clone();
+            this.viewport = viewport;
+            this.hash = 31 * (31 * id.hashCode() + Arrays.hashCode(params)) + viewport.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return id.equals(other.id) && Arrays.equals(params, other.params) && viewport.equals(other.viewport);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
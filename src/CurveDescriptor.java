@@ -0,0 +1,244 @@
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+ * Describes one curve the panel can draw: its id, how to evaluate it, its parameters, colour
+ * and whether it is enabled. Explicit curves y = f(x) are built by a {@link CurveFactory} and
+ * implicit curves F(x, y) = 0 by an {@link ImplicitFactory}.
+ * <p>
+ * Every curve has the parameters A, B and C, but it may name fewer of them, as the ellipse
+ * uses only A and B, or give them other names, as the circle calls C its radius. Unnamed
+ * parameters keep their defaults.
+ * <p>
+ * Descriptors are changed on the event dispatch thread only. The factories are read while
+ * painting, so they are built completely before they are published.
+ */
+public final class CurveDescriptor {
+    private static final String[] ABC = {"A", "B", "C"};
+
+    private final String id;
+    private final String label;
+    private final Color color;
+    private final double[] defaults;
+    private final double[] params;
+    private final boolean implicitCurve;
+    private String[] parameterNames = ABC;
+    private volatile CurveFactory function;
+    private volatile ImplicitFactory implicit;
+    private Expression expression;
+    private boolean compiled;
+    private String compileFailure;
+    private String source;
+    private boolean enabled;
+
+    /**
+     * Creates a disabled explicit curve.
+     *
+     * @param id the unique id of the curve, such as "sin"
+     * @param label the name shown to the user
+     * @param color the colour of the curve
+     * @param factory builds the curve from its parameters
+     * @param a the initial parameter A
+     * @param b the initial parameter B
+     * @param c the initial parameter C
+     */
+    public CurveDescriptor(String id, String label, Color color, CurveFactory factory, double a, double b, double c) {
+        this(id, label, color, false, a, b, c);
+        this.function = factory;
+    }
+
+    /**
+     * Creates a disabled implicit curve.
+     *
+     * @param id the unique id of the curve, such as "circle"
+     * @param label the name shown to the user
+     * @param color the colour of the curve
+     * @param factory builds the curve from its parameters
+     * @param a the initial parameter A
+     * @param b the initial parameter B
+     * @param c the initial parameter C
+     */
+    public CurveDescriptor(String id, String label, Color color, ImplicitFactory factory, double a, double b, double c) {
+        this(id, label, color, true, a, b, c);
+        this.implicit = factory;
+    }
+
+    private CurveDescriptor(String id, String label, Color color, boolean implicitCurve, double a, double b, double c) {
+        this.id = id;
+        this.label = label;
+        this.color = color;
+        this.implicitCurve = implicitCurve;
+        this.defaults = new double[] {a, b, c};
+        this.params = defaults.clone();
+    }
+
+    /**
+     * Creates a disabled curve whose formula the user edits.
+     *
+     * @param id the unique id of the curve
+     * @param label the name shown to the user
+     * @param color the colour of the curve
+     * @param implicit whether the formula is the left-hand side F(x, y) of F(x, y) = 0 rather than f(x)
+     * @param expression the initial formula
+     * @throws IllegalArgumentException if the formula cannot be parsed
+     */
+    public static CurveDescriptor ofExpression(String id, String label, Color color, boolean implicit, String expression) {
+        CurveDescriptor curve = new CurveDescriptor(id, label, color, implicit, 1, 10, 0.1);
+        curve.setExpression(expression);
+        return curve;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
+    public boolean isImplicit() {
+        return implicitCurve;
+    }
+
+    public CurveFactory getFactory() {
+        return function;
+    }
+
+    public ImplicitFactory getImplicitFactory() {
+        return implicit;
+    }
+
+    /**
+     * Makes this a curve whose formula the user edits, and sets the formula. The formula is
+     * interpreted until the curve is enabled, and is then compiled to bytecode, or stays
+     * interpreted if it cannot be compiled.
+     *
+     * @param expression the formula, in x and the parameters A, B and C for an explicit curve,
+     *                   and also in y for an implicit curve
+     * @throws IllegalArgumentException if the formula cannot be parsed
+     */
+    public void setExpression(String expression) {
+        Expression parsed = implicitCurve ? Expression.parseImplicit(expression) : Expression.parse(expression);
+        this.expression = parsed;
+        this.compiled = false;
+        this.compileFailure = null;
+        if (implicitCurve) {
+            implicit = parsed.interpretedImplicit();
+        } else {
+            function = parsed.interpreted();
+        }
+        source = expression;
+        if (enabled) {
+            compile();
+        }
+    }
+
+    /**
+     * Compiles the formula, so that curves drawn from then on are built from bytecode.
+     * Compiling takes a while, so it is left until the curve is first enabled.
+     */
+    private void compile() {
+        if (expression == null || compiled) {
+            return;
+        }
+        compiled = true;
+        try {
+            if (implicitCurve) {
+                implicit = ExpressionCompiler.compileImplicit(expression);
+            } else {
+                function = ExpressionCompiler.compile(expression);
+            }
+        } catch (IllegalStateException e) {
+            compileFailure = e.getMessage();
+        }
+    }
+
+    /**
+     * Returns why the formula could not be compiled and is interpreted instead, or null if it
+     * was compiled, is not compiled yet or the curve is built in.
+     */
+    public String getCompileFailure() {
+        return compileFailure;
+    }
+
+    /**
+     * Returns the formula of a curve the user edits, or null for a built-in curve.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the key of the samples of this curve: its id, and its formula if it has one,
+     * so that editing the formula does not reuse samples of the old one.
+     */
+    public String getKey() {
+        return source == null ? id : id + ":" + source;
+    }
+
+    /**
+     * Returns the names of the parameters the user can set, in the order A, B, C.
+     */
+    public String[] getParameterNames() {
+        return parameterNames.clone();
+    }
+
+    /**
+     * Names the parameters the user can set. Parameters without a name keep their defaults.
+     *
+     * @param names one to three names, for A, B and C in that order
+     */
+    public void setParameterNames(String... names) {
+        if (names.length < 1 || names.length > 3) {
+            throw new IllegalArgumentException("A curve has one to three parameters");
+        }
+        this.parameterNames = names.clone();
+    }
+
+    /**
+     * Sets a parameter. Parameters without a name are ignored.
+     *
+     * @param index 0 for A, 1 for B and 2 for C
+     * @param value the new value
+     */
+    public void setParameter(int index, double value) {
+        if (index < parameterNames.length) {
+            params[index] = value;
+        }
+    }
+
+    public double getParameter(int index) {
+        return params[index];
+    }
+
+    public double getDefault(int index) {
+        return defaults[index];
+    }
+
+    /**
+     * Returns a copy of the parameters A, B and C.
+     */
+    public double[] getParams() {
+        return params.clone();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (enabled) {
+            compile();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return id + Arrays.toString(params) + (enabled ? "" : " (disabled)");
+    }
+}
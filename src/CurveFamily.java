@@ -0,0 +1,150 @@
+import java.awt.*;
+
+/**
+ * The built-in explicit curve families y = f(x) with their parameters A, B and C.
+ * Their curves evaluate runs of evenly spaced x values through {@link CurveKernels}.
+ */
+public enum CurveFamily implements CurveFactory {
+    SIN("sin", Color.RED) {
+        @Override
+        public CurveFunction create(double a, double b, double c) {
+            return new Curve(this, a, b, c) {
+                @Override
+                public double apply(double x) {
+                    return a + b * Math.sin(c * x);
+                }
+            };
+        }
+    },
+    COS("cos", Color.BLUE) {
+        @Override
+        public CurveFunction create(double a, double b, double c) {
+            return new Curve(this, a, b, c) {
+                @Override
+                public double apply(double x) {
+                    return a + b * Math.cos(c * x);
+                }
+            };
+        }
+    },
+    TAN("tan", Color.GREEN) {
+        @Override
+        public CurveFunction create(double a, double b, double c) {
+            return new Curve(this, a, b, c) {
+                @Override
+                public double apply(double x) {
+                    return a + b * Math.tan(c * x);
+                }
+            };
+        }
+    },
+    CTAN("ctan", Color.ORANGE) {
+        @Override
+        public CurveFunction create(double a, double b, double c) {
+            return new Curve(this, a, b, c) {
+                @Override
+                public double apply(double x) {
+                    return a + b / Math.tan(c * x);
+                }
+            };
+        }
+    },
+    PARABOLA("parabola", Color.MAGENTA) {
+        @Override
+        public CurveFunction create(double a, double b, double c) {
+            return new Curve(this, a, b, c) {
+                @Override
+                public double apply(double x) {
+                    return a * x * x + b * x + c;
+                }
+            };
+        }
+    },
+    HYPERBOLA("hyperbola", Color.CYAN) {
+        @Override
+        public CurveFunction create(double a, double b, double c) {
+            return new Curve(this, a, b, c) {
+                @Override
+                public double apply(double x) {
+                    return a / (b * x);
+                }
+            };
+        }
+    },
+    EXP("exp", Color.YELLOW) {
+        @Override
+        public CurveFunction create(double a, double b, double c) {
+            return new Curve(this, a, b, c) {
+                @Override
+                public double apply(double x) {
+                    return a * Math.exp(b * x);
+                }
+            };
+        }
+    },
+    LOG("log", new Color(100, 50, 200)) {
+        @Override
+        public CurveFunction create(double a, double b, double c) {
+            return new Curve(this, a, b, c) {
+                @Override
+                public double apply(double x) {
+                    return a * Math.log(b * x);
+                }
+            };
+        }
+    };
+
+    private final String id;
+    private final Color color;
+
+    CurveFamily(String id, Color color) {
+        this.id = id;
+        this.color = color;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
+    /**
+     * A curve of a family for fixed parameters. Single values are computed by the subclass of each family,
+     * runs of values by the kernels selected at startup.
+     */
+    abstract static class Curve implements CurveFunction {
+        private final CurveFamily family;
+        private final double a;
+        private final double b;
+        private final double c;
+
+        Curve(CurveFamily family, double a, double b, double c) {
+            this.family = family;
+            this.a = a;
+            this.b = b;
+            this.c = c;
+        }
+
+        @Override
+        public void applyAll(double startX, double stepX, double[] out, int count) {
+            CurveKernels.get().evaluate(family, a, b, c, startX, stepX, out, count);
+        }
+    }
+
+    /**
+     * Returns the family with the given id.
+     *
+     * @param id the id used by the sliders, such as "sin"
+     * @return the family, or null if there is none
+     */
+    public static CurveFamily forId(String id) {
+        for (CurveFamily family : values()) {
+            if (family.id.equals(id)) {
+                return family;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Primitive specialization of {@link Function} for curves y = f(x).
+ * Evaluating through this interface avoids boxing every sample into a {@link Double}.
+ */
+@FunctionalInterface
+public interface CurveFunction {
+    double apply(double x);
+
+    /**
+     * Evaluates the function at evenly spaced x values.
+     *
+     * @param startX the first x value
+     * @param stepX the distance between consecutive x values
+     * @param out the array to store the results in
+     * @param count the number of values to evaluate
+     */
+    default void applyAll(double startX, double stepX, double[] out, int count) {
+        for (int i = 0; i < count; i++) {
+            out[i] = apply(startX + i * stepX);
+        }
+    }
+
+    /**
+     * Adapts a boxed {@link Function} to a CurveFunction.
+     *
+     * @param function the function to adapt
+     * @return the adapted function
+     */
+    static CurveFunction of(Function<Double, Double> function) {
+        return x -> function.apply(x);
+    }
+}
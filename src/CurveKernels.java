@@ -0,0 +1,106 @@
+/**
+ * Evaluates the curves of the built-in families for runs of evenly spaced x values, as
+ * {@link CurveFunction#applyAll} does, producing the value of x = startX + i * stepX at index i.
+ * <p>
+ * The kernels are chosen once at startup. If the {@code jdk.incubator.vector} module is in the boot
+ * layer, which takes {@code --add-modules jdk.incubator.vector} on the java command line, and the
+ * {@code VectorCurveKernels} class from {@code src-vector} is on the class path, the families are
+ * evaluated several lanes at a time with the Vector API. Otherwise every value is computed by the
+ * scalar function of its curve. Setting the system property {@code curve.kernels} to {@code scalar}
+ * forces the scalar kernels.
+ * <p>
+ * Parabolas and hyperbolas are computed with the same operations in either case and agree exactly.
+ * The vector kernels compute sines, cosines, exponentials and logarithms with polynomials after
+ * range reduction, which differ from {@link Math} by at most the bounds in {@link #ulpBound}.
+ */
+public abstract class CurveKernels {
+    private static final CurveKernels SCALAR = new Scalar();
+    private static final CurveKernels SELECTED = select();
+
+    /**
+     * Returns the kernels selected at startup.
+     */
+    public static CurveKernels get() {
+        return SELECTED;
+    }
+
+    /**
+     * Returns the scalar kernels, which are always available.
+     */
+    public static CurveKernels scalar() {
+        return SCALAR;
+    }
+
+    private static CurveKernels select() {
+        if ("scalar".equals(System.getProperty("curve.kernels"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return SCALAR;
+        }
+        try {
+            return (CurveKernels) Class.forName("VectorCurveKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR;
+        }
+    }
+
+    /**
+     * Returns a short description of the kernels, such as the number of lanes.
+     */
+    public abstract String getName();
+
+    /**
+     * Evaluates the curve of a family at evenly spaced x values.
+     *
+     * @param family the family of the curve
+     * @param a the parameter A
+     * @param b the parameter B
+     * @param c the parameter C
+     * @param startX the first x value
+     * @param stepX the distance between consecutive x values
+     * @param out the array to store the results in
+     * @param count the number of values to evaluate
+     */
+    public abstract void evaluate(CurveFamily family, double a, double b, double c,
+                                  double startX, double stepX, double[] out, int count);
+
+    /**
+     * Returns the largest distance in units in the last place between the value of a family with
+     * A = 0 or 1 and B = C = 1, which is the bare function of the family, and the value of {@link Math}.
+     * The bounds are twice the largest errors seen on random arguments, 1 ulp for sines, cosines,
+     * exponentials and logarithms and 4 ulp for tangents and cotangents, so that other processors
+     * and JDKs have room to round differently.
+     *
+     * @param family the family
+     * @return the bound
+     */
+    public static double ulpBound(CurveFamily family) {
+        switch (family) {
+            case SIN:
+            case COS:
+            case EXP:
+            case LOG:
+                return 4;
+            case TAN:
+            case CTAN:
+                return 8;
+            default:
+                return 0;
+        }
+    }
+
+    private static final class Scalar extends CurveKernels {
+        @Override
+        public String getName() {
+            return "scalar";
+        }
+
+        @Override
+        public void evaluate(CurveFamily family, double a, double b, double c,
+                             double startX, double stepX, double[] out, int count) {
+            CurveFunction function = family.create(a, b, c);
+            for (int i = 0; i < count; i++) {
+                out[i] = function.apply(startX + i * stepX);
+            }
+        }
+    }
+}
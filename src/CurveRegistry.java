@@ -0,0 +1,106 @@
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The curves a panel can draw, looked up by id in constant time and drawn in the order they were added.
+ * <p>
+ * New kinds of curves are added as descriptors rather than as fields and switch cases of the panel,
+ * so the panel, its sliders and the intersection search handle any number of curves alike.
+ */
+public final class CurveRegistry {
+    private final Map<String, CurveDescriptor> curves = new LinkedHashMap<>();
+
+    /**
+     * Returns a registry with the built-in curves, all disabled, in their drawing order.
+     */
+    public static CurveRegistry withBuiltIns() {
+        CurveRegistry registry = new CurveRegistry();
+        registry.add(builtIn(CurveFamily.SIN, "sin"));
+        registry.add(builtIn(CurveFamily.COS, "cos"));
+        registry.add(builtIn(CurveFamily.TAN, "tan"));
+        registry.add(builtIn(CurveFamily.CTAN, "ctan"));
+        registry.add(builtIn(CurveFamily.PARABOLA, "Parabola"));
+        registry.add(builtIn(CurveFamily.HYPERBOLA, "Hyperbola"));
+
+        CurveDescriptor ellipse = new CurveDescriptor(ImplicitFamily.ELLIPSE.getId(), "Ellipse",
+                ImplicitFamily.ELLIPSE.getColor(), ImplicitFamily.ELLIPSE, 1, 10, 0.1);
+        ellipse.setParameterNames("A", "B");
+        registry.add(ellipse);
+        CurveDescriptor circle = new CurveDescriptor(ImplicitFamily.CIRCLE.getId(), "Circle",
+                ImplicitFamily.CIRCLE.getColor(), ImplicitFamily.CIRCLE, 1, 10, 5);
+        circle.setParameterNames("A", "B", "Radius");
+        registry.add(circle);
+        registry.add(builtIn(CurveFamily.EXP, "Exponential"));
+        registry.add(builtIn(CurveFamily.LOG, "Logarithmic"));
+        registry.add(CurveDescriptor.ofExpression("custom", "Custom", new Color(0, 128, 128), false, GraphPanel.DEFAULT_EXPRESSION));
+        registry.add(new CurveDescriptor(ImplicitFamily.CONIC.getId(), "Conic hyperbola",
+                ImplicitFamily.CONIC.getColor(), ImplicitFamily.CONIC, 10, 10, 1));
+        registry.add(CurveDescriptor.ofExpression("implicit", "Implicit", new Color(120, 60, 160), true, GraphPanel.DEFAULT_IMPLICIT_EXPRESSION));
+        return registry;
+    }
+
+    private static CurveDescriptor builtIn(CurveFamily family, String label) {
+        return new CurveDescriptor(family.getId(), label, family.getColor(), family, 1, 10, 0.1);
+    }
+
+    /**
+     * Adds a curve after all others.
+     *
+     * @param curve the curve
+     * @throws IllegalArgumentException if a curve with the same id is registered
+     */
+    public void add(CurveDescriptor curve) {
+        if (curves.putIfAbsent(curve.getId(), curve) != null) {
+            throw new IllegalArgumentException("Duplicate curve " + curve.getId());
+        }
+    }
+
+    /**
+     * Returns the curve with an id.
+     *
+     * @param id the id of the curve
+     * @return the curve, or null if there is none
+     */
+    public CurveDescriptor get(String id) {
+        return curves.get(id);
+    }
+
+    /**
+     * Removes a curve.
+     *
+     * @param id the id of the curve
+     * @return the removed curve, or null if there was none
+     */
+    public CurveDescriptor remove(String id) {
+        return curves.remove(id);
+    }
+
+    /**
+     * Returns all curves in drawing order.
+     */
+    public Collection<CurveDescriptor> all() {
+        return Collections.unmodifiableCollection(curves.values());
+    }
+
+    /**
+     * Returns the enabled curves in drawing order.
+     */
+    public List<CurveDescriptor> enabled() {
+        List<CurveDescriptor> enabled = new ArrayList<>();
+        for (CurveDescriptor curve : curves.values()) {
+            if (curve.isEnabled()) {
+                enabled.add(curve);
+            }
+        }
+        return enabled;
+    }
+
+    public int size() {
+        return curves.size();
+    }
+}
@@ -0,0 +1,362 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Measured series of (x, y) points read from a memory-mapped binary file.
+ * <p>
+ * The data file is a sequence of big-endian double pairs sorted by x, as written by
+ * {@link DataOutputStream}. Next to it lives a pyramid file ({@code <data>.lod}) holding the
+ * minimum and maximum y of buckets of 64 points, of buckets of 4 such buckets, and so on.
+ * Sampling a series for a viewport reads a handful of points and pyramid buckets per pixel
+ * column, so it takes time proportional to the width of the viewport and no heap beyond the
+ * samples themselves, however many points the file holds.
+ */
+public final class DataSeries {
+    private static final int POINT_BYTES = 16;
+    private static final int SEGMENT_SHIFT = 26;
+    private static final long SEGMENT_POINTS = 1L << SEGMENT_SHIFT;
+    private static final int BUCKET = 64;
+    private static final int FANOUT = 4;
+    private static final int MAGIC = 0x4C4F4431;
+    private static final int HEADER_BYTES = 32;
+
+    private final Path path;
+    private final long size;
+    private final MappedByteBuffer[] segments;
+    private final MappedByteBuffer pyramid;
+    private final long[] levelOffsets;
+
+    private DataSeries(Path path, long size, MappedByteBuffer[] segments, MappedByteBuffer pyramid, long[] levelOffsets) {
+        this.path = path;
+        this.size = size;
+        this.segments = segments;
+        this.pyramid = pyramid;
+        this.levelOffsets = levelOffsets;
+    }
+
+    /**
+     * Opens a data file, building its pyramid first if it is missing or older than the data.
+     *
+     * @param path the data file
+     * @return the opened series
+     * @throws IOException if the file cannot be read or is not a valid series
+     */
+    public static DataSeries open(Path path) throws IOException {
+        long size = Files.size(path) / POINT_BYTES;
+        if (Files.size(path) % POINT_BYTES != 0) {
+            throw new IOException(path + " is not a sequence of (x, y) double pairs");
+        }
+        MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + SEGMENT_POINTS - 1) / SEGMENT_POINTS)];
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (int i = 0; i < segments.length; i++) {
+                long first = i * SEGMENT_POINTS;
+                long count = Math.min(SEGMENT_POINTS, size - first);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, first * POINT_BYTES, count * POINT_BYTES);
+            }
+        }
+
+        Path pyramidPath = pyramidPath(path);
+        if (!isCurrent(path, pyramidPath, size)) {
+            buildPyramid(path, pyramidPath);
+        }
+        MappedByteBuffer pyramid;
+        try (FileChannel channel = FileChannel.open(pyramidPath, StandardOpenOption.READ)) {
+            pyramid = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return new DataSeries(path, size, segments, pyramid, levelOffsets(size));
+    }
+
+    /**
+     * Returns the path of the pyramid file that belongs to a data file.
+     *
+     * @param data the data file
+     * @return the pyramid file next to it
+     */
+    public static Path pyramidPath(Path data) {
+        return data.resolveSibling(data.getFileName() + ".lod");
+    }
+
+    /**
+     * Writes the min/max pyramid of a data file. The first level is computed in one pass
+     * over the data and every further level from the level below, all through mapped buffers.
+     *
+     * @param data the data file
+     * @param pyramidPath the pyramid file to write
+     * @throws IOException if the data cannot be read, is not sorted by x, or the pyramid cannot be written
+     */
+    public static void buildPyramid(Path data, Path pyramidPath) throws IOException {
+        long size = Files.size(data) / POINT_BYTES;
+        long[] offsets = levelOffsets(size);
+        long bytes = offsets[offsets.length - 1];
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IOException(data + " has too many points for a single pyramid file");
+        }
+
+        try (FileChannel input = FileChannel.open(data, StandardOpenOption.READ);
+             FileChannel output = FileChannel.open(pyramidPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = output.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            double lastX = Double.NEGATIVE_INFINITY;
+            for (long first = 0; first < size; first += SEGMENT_POINTS) {
+                long count = Math.min(SEGMENT_POINTS, size - first);
+                MappedByteBuffer in = input.map(FileChannel.MapMode.READ_ONLY, first * POINT_BYTES, count * POINT_BYTES);
+                for (int start = 0; start < count; start += BUCKET) {
+                    double min = Double.POSITIVE_INFINITY;
+                    double max = Double.NEGATIVE_INFINITY;
+                    for (int i = start; i < Math.min(start + BUCKET, count); i++) {
+                        double x = in.getDouble(i * POINT_BYTES);
+                        double y = in.getDouble(i * POINT_BYTES + 8);
+                        if (!(x >= lastX)) {
+                            throw new IOException(data + " is not sorted by x at point " + (first + i));
+                        }
+                        lastX = x;
+                        min = y < min ? y : min;
+                        max = y > max ? y : max;
+                    }
+                    int bucket = (int) ((first + start) / BUCKET);
+                    out.putDouble((int) offsets[0] + bucket * 16, min);
+                    out.putDouble((int) offsets[0] + bucket * 16 + 8, max);
+                }
+            }
+            for (int level = 1; level < offsets.length - 1; level++) {
+                int below = (int) offsets[level - 1];
+                int belowCount = (int) ((offsets[level] - offsets[level - 1]) / 16);
+                int here = (int) offsets[level];
+                for (int start = 0; start < belowCount; start += FANOUT) {
+                    double min = Double.POSITIVE_INFINITY;
+                    double max = Double.NEGATIVE_INFINITY;
+                    for (int i = start; i < Math.min(start + FANOUT, belowCount); i++) {
+                        min = Math.min(min, out.getDouble(below + i * 16));
+                        max = Math.max(max, out.getDouble(below + i * 16 + 8));
+                    }
+                    out.putDouble(here + start / FANOUT * 16, min);
+                    out.putDouble(here + start / FANOUT * 16 + 8, max);
+                }
+            }
+            out.putInt(0, MAGIC);
+            out.putInt(4, offsets.length - 1);
+            out.putLong(8, size);
+            out.putLong(16, Files.getLastModifiedTime(data).toMillis());
+            out.force();
+        }
+    }
+
+    /**
+     * Returns the byte offsets of the pyramid levels, followed by the total size of the pyramid file.
+     * Level 0 holds one bucket per 64 points and every further level one bucket per 4 buckets below,
+     * up to the level with a single bucket.
+     */
+    private static long[] levelOffsets(long size) {
+        int levels = 1;
+        for (long count = (size + BUCKET - 1) / BUCKET; count > 1; count = (count + FANOUT - 1) / FANOUT) {
+            levels++;
+        }
+        long[] offsets = new long[levels + 1];
+        offsets[0] = HEADER_BYTES;
+        long count = (size + BUCKET - 1) / BUCKET;
+        for (int level = 0; level < levels; level++) {
+            offsets[level + 1] = offsets[level] + count * 16;
+            count = (count + FANOUT - 1) / FANOUT;
+        }
+        return offsets;
+    }
+
+    private static boolean isCurrent(Path data, Path pyramidPath, long size) throws IOException {
+        long[] offsets = levelOffsets(size);
+        if (!Files.exists(pyramidPath) || Files.size(pyramidPath) != offsets[offsets.length - 1]) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(pyramidPath, StandardOpenOption.READ)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            return header.getInt(0) == MAGIC && header.getLong(8) == size
+                    && header.getLong(16) == Files.getLastModifiedTime(data).toMillis();
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public double getX(long index) {
+        return segments[(int) (index >>> SEGMENT_SHIFT)].getDouble((int) (index & (SEGMENT_POINTS - 1)) * POINT_BYTES);
+    }
+
+    public double getY(long index) {
+        return segments[(int) (index >>> SEGMENT_SHIFT)].getDouble((int) (index & (SEGMENT_POINTS - 1)) * POINT_BYTES + 8);
+    }
+
+    /**
+     * Returns the index of the first point whose x is not less than the given value.
+     *
+     * @param x the x value to search for
+     * @return the index of the point, or the number of points if every x is less
+     */
+    public long lowerBound(double x) {
+        long low = 0;
+        long high = size;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (getX(middle) < x) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the lowest and highest y of a range of points. Only the up to 63 points at each end
+     * that do not fill a whole bucket are read; the rest comes from the pyramid, climbing
+     * one level at a time, so a query costs O(log n) reads.
+     *
+     * @param from the index of the first point
+     * @param to the index after the last point
+     * @param range receives the minimum at index 0 and the maximum at index 1
+     */
+    public void minMax(long from, long to, double[] range) {
+        range[0] = Double.POSITIVE_INFINITY;
+        range[1] = Double.NEGATIVE_INFINITY;
+        long low = (from + BUCKET - 1) / BUCKET;
+        long high = to / BUCKET;
+        if (low >= high) {
+            scanPoints(from, to, range);
+            return;
+        }
+        scanPoints(from, low * BUCKET, range);
+        scanPoints(high * BUCKET, to, range);
+        for (int level = 0; ; level++) {
+            long nextLow = (low + FANOUT - 1) / FANOUT;
+            long nextHigh = high / FANOUT;
+            if (nextLow >= nextHigh || level == levelOffsets.length - 2) {
+                scanBuckets(level, low, high, range);
+                return;
+            }
+            scanBuckets(level, low, nextLow * FANOUT, range);
+            scanBuckets(level, nextHigh * FANOUT, high, range);
+            low = nextLow;
+            high = nextHigh;
+        }
+    }
+
+    private void scanPoints(long from, long to, double[] range) {
+        for (long i = from; i < to; i++) {
+            double y = getY(i);
+            range[0] = y < range[0] ? y : range[0];
+            range[1] = y > range[1] ? y : range[1];
+        }
+    }
+
+    private void scanBuckets(int level, long from, long to, double[] range) {
+        for (long i = from; i < to; i++) {
+            int offset = (int) (levelOffsets[level] + i * 16);
+            range[0] = Math.min(range[0], pyramid.getDouble(offset));
+            range[1] = Math.max(range[1], pyramid.getDouble(offset + 8));
+        }
+    }
+
+    /**
+     * Samples the series for a viewport. Every pixel column contributes its first and last point
+     * and, if it holds more, its lowest and highest y taken from the pyramid, which is what
+     * {@link M4Decimator} keeps of a column anyway. The points just outside the drawing area are
+     * added too, so that the lines into the edge columns are drawn.
+     *
+     * @param viewport the viewport to sample for
+     * @return at most four samples per pixel column
+     */
+    public SampledCurve sample(Viewport viewport) {
+        SampledCurve curve = new SampledCurve(4 * viewport.getWidth() + 2);
+        double[] range = new double[2];
+        long start = lowerBound(viewport.toWorldX(0));
+        if (start > 0) {
+            addPoint(curve, start - 1);
+        }
+        for (int column = 0; column < viewport.getWidth(); column++) {
+            long end = lowerBound(viewport.toWorldX(column + 1));
+            if (end > start) {
+                addPoint(curve, start);
+                if (end - start > 2) {
+                    minMax(start + 1, end - 1, range);
+                    double x = viewport.toWorldX(column + 0.5);
+                    curve.add(x, range[0]);
+                    curve.add(x, range[1]);
+                }
+                if (end - 1 > start) {
+                    addPoint(curve, end - 1);
+                }
+            }
+            start = end;
+        }
+        if (start < size) {
+            addPoint(curve, start);
+        }
+        return curve;
+    }
+
+    private void addPoint(SampledCurve curve, long index) {
+        curve.add(getX(index), getY(index));
+    }
+
+    /**
+     * Returns the series as a function that interpolates linearly between neighbouring points
+     * and is undefined outside the x range of the data, so it can take part in intersection search.
+     *
+     * @return the interpolating function
+     */
+    public CurveFunction asFunction() {
+        return x -> {
+            long index = lowerBound(x);
+            if (index == size || size == 0) {
+                return Double.NaN;
+            }
+            double x1 = getX(index);
+            double y1 = getY(index);
+            if (x1 == x) {
+                return y1;
+            }
+            if (index == 0) {
+                return Double.NaN;
+            }
+            double x0 = getX(index - 1);
+            double y0 = getY(index - 1);
+            return y0 + (y1 - y0) * (x - x0) / (x1 - x0);
+        };
+    }
+
+    /**
+     * Writes a synthetic series for trying out large data sets and builds its pyramid.
+     * <p>
+     * Usage: {@code java DataSeries <file> [points]}
+     */
+    public static void main(String[] args) throws IOException {
+        Path path = Paths.get(args[0]);
+        long points = args.length > 1 ? Long.parseLong(args[1]) : 100_000_000L;
+        Random random = new Random(1);
+        try (OutputStream file = Files.newOutputStream(path);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            double noise = 0;
+            for (long i = 0; i < points; i++) {
+                double x = -1000 + 2000.0 * i / points;
+                noise = 0.999 * noise + random.nextGaussian();
+                out.writeDouble(x);
+                out.writeDouble(40 * Math.sin(x / 20) + noise * 0.5);
+            }
+        }
+        long start = System.nanoTime();
+        buildPyramid(path, pyramidPath(path));
+        System.out.printf("Wrote %d points, pyramid built in %d ms%n", points, (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -0,0 +1,384 @@
+import java.util.Locale;
+
+/**
+ * Parsed user-defined expression of x and the parameters A, B and C,
+ * or of x and y for implicit curves F(x, y) = 0.
+ * <p>
+ * The language supports numbers, {@code + - * / ^}, parentheses, the constants
+ * {@code pi} and {@code e}, and the functions {@code sin cos tan ctan exp log sqrt abs}.
+ * An expression can be evaluated by walking its tree or turned into Java source
+ * for {@link ExpressionCompiler}.
+ */
+public abstract class Expression {
+    private static final String[] FUNCTIONS = {"sin", "cos", "tan", "ctan", "exp", "log", "sqrt", "abs"};
+
+    /**
+     * Evaluates the expression by walking the tree.
+     *
+     * @param x the value of x
+     * @param y the value of y, used only by implicit expressions
+     * @param a the value of A
+     * @param b the value of B
+     * @param c the value of C
+     * @return the value of the expression
+     */
+    public abstract double evaluate(double x, double y, double a, double b, double c);
+
+    /**
+     * Evaluates an expression of x by walking the tree.
+     *
+     * @param x the value of x
+     * @param a the value of A
+     * @param b the value of B
+     * @param c the value of C
+     * @return the value of the expression
+     */
+    public double evaluate(double x, double a, double b, double c) {
+        return evaluate(x, 0, a, b, c);
+    }
+
+    /**
+     * Returns the expression as a Java expression over the variables {@code x, y, a, b, c}.
+     *
+     * @return the Java source of the expression
+     */
+    public abstract String toJava();
+
+    /**
+     * Returns a factory that evaluates the expression by walking the tree.
+     *
+     * @return the interpreting curve factory
+     */
+    public CurveFactory interpreted() {
+        return (a, b, c) -> x -> evaluate(x, a, b, c);
+    }
+
+    /**
+     * Returns a factory that evaluates the implicit expression by walking the tree.
+     *
+     * @return the interpreting implicit curve factory
+     */
+    public ImplicitFactory interpretedImplicit() {
+        return (a, b, c) -> (x, y) -> evaluate(x, y, a, b, c);
+    }
+
+    /**
+     * Parses an expression.
+     *
+     * @param text the text of the expression
+     * @return the parsed expression
+     * @throws IllegalArgumentException if the text is not a valid expression
+     */
+    public static Expression parse(String text) {
+        return parse(text, false);
+    }
+
+    /**
+     * Parses the left-hand side F(x, y) of an implicit curve F(x, y) = 0.
+     *
+     * @param text the text of the expression, which may use y
+     * @return the parsed expression
+     * @throws IllegalArgumentException if the text is not a valid expression
+     */
+    public static Expression parseImplicit(String text) {
+        return parse(text, true);
+    }
+
+    private static Expression parse(String text, boolean implicit) {
+        Parser parser = new Parser(text, implicit);
+        Expression expression = parser.parseSum();
+        parser.skipSpaces();
+        if (parser.position < text.length()) {
+            throw parser.error("Unexpected '" + text.charAt(parser.position) + "'");
+        }
+        return expression;
+    }
+
+    private static final class Parser {
+        private final String text;
+        private final boolean implicit;
+        private int position;
+
+        Parser(String text, boolean implicit) {
+            this.text = text;
+            this.implicit = implicit;
+        }
+
+        Expression parseSum() {
+            Expression left = parseProduct();
+            while (true) {
+                if (accept('+')) {
+                    left = new Binary('+', left, parseProduct());
+                } else if (accept('-')) {
+                    left = new Binary('-', left, parseProduct());
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        Expression parseProduct() {
+            Expression left = parseUnary();
+            while (true) {
+                if (accept('*')) {
+                    left = new Binary('*', left, parseUnary());
+                } else if (accept('/')) {
+                    left = new Binary('/', left, parseUnary());
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        Expression parseUnary() {
+            if (accept('-')) {
+                return new Negation(parseUnary());
+            }
+            if (accept('+')) {
+                return parseUnary();
+            }
+            Expression base = parsePrimary();
+            if (accept('^')) {
+                return new Binary('^', base, parseUnary());
+            }
+            return base;
+        }
+
+        Expression parsePrimary() {
+            skipSpaces();
+            if (accept('(')) {
+                Expression inner = parseSum();
+                expect(')');
+                return inner;
+            }
+            int start = position;
+            if (position < text.length() && (Character.isDigit(text.charAt(position)) || text.charAt(position) == '.')) {
+                while (position < text.length() && (Character.isDigit(text.charAt(position)) || text.charAt(position) == '.')) {
+                    position++;
+                }
+                if (position < text.length() && (text.charAt(position) == 'e' || text.charAt(position) == 'E')
+                        && position + 1 < text.length()
+                        && (Character.isDigit(text.charAt(position + 1)) || text.charAt(position + 1) == '-' || text.charAt(position + 1) == '+')) {
+                    position += 2;
+                    while (position < text.length() && Character.isDigit(text.charAt(position))) {
+                        position++;
+                    }
+                }
+                try {
+                    return new Constant(Double.parseDouble(text.substring(start, position)));
+                } catch (NumberFormatException e) {
+                    throw error("Invalid number '" + text.substring(start, position) + "'");
+                }
+            }
+            while (position < text.length() && Character.isLetter(text.charAt(position))) {
+                position++;
+            }
+            if (start == position) {
+                throw error(position < text.length() ? "Unexpected '" + text.charAt(position) + "'" : "Unexpected end");
+            }
+
+            String name = text.substring(start, position);
+            String lower = name.toLowerCase(Locale.ROOT);
+            for (String function : FUNCTIONS) {
+                if (function.equals(lower)) {
+                    expect('(');
+                    Expression argument = parseSum();
+                    expect(')');
+                    return new Call(function, argument);
+                }
+            }
+            switch (lower) {
+                case "x":
+                case "a":
+                case "b":
+                case "c":
+                    return new Variable(lower.charAt(0));
+                case "y":
+                    if (!implicit) {
+                        throw error("Unknown name '" + name + "'");
+                    }
+                    return new Variable('y');
+                case "pi":
+                    return new Constant(Math.PI);
+                case "e":
+                    return new Constant(Math.E);
+                default:
+                    throw error("Unknown name '" + name + "'");
+            }
+        }
+
+        boolean accept(char expected) {
+            skipSpaces();
+            if (position < text.length() && text.charAt(position) == expected) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char expected) {
+            if (!accept(expected)) {
+                throw error("Expected '" + expected + "'");
+            }
+        }
+
+        void skipSpaces() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + (position + 1));
+        }
+    }
+
+    private static final class Constant extends Expression {
+        private final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double evaluate(double x, double y, double a, double b, double c) {
+            return value;
+        }
+
+        @Override
+        public String toJava() {
+            if (Double.isNaN(value)) {
+                return "Double.NaN";
+            } else if (Double.isInfinite(value)) {
+                return value > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY";
+            }
+            return "(" + Double.toString(value) + ")";
+        }
+    }
+
+    private static final class Variable extends Expression {
+        private final char name;
+
+        Variable(char name) {
+            this.name = name;
+        }
+
+        @Override
+        public double evaluate(double x, double y, double a, double b, double c) {
+            switch (name) {
+                case 'y':
+                    return y;
+                case 'a':
+                    return a;
+                case 'b':
+                    return b;
+                case 'c':
+                    return c;
+                default:
+                    return x;
+            }
+        }
+
+        @Override
+        public String toJava() {
+            return String.valueOf(name);
+        }
+    }
+
+    private static final class Negation extends Expression {
+        private final Expression operand;
+
+        Negation(Expression operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public double evaluate(double x, double y, double a, double b, double c) {
+            return -operand.evaluate(x, y, a, b, c);
+        }
+
+        @Override
+        public String toJava() {
+            return "(-" + operand.toJava() + ")";
+        }
+    }
+
+    private static final class Binary extends Expression {
+        private final char operator;
+        private final Expression left;
+        private final Expression right;
+
+        Binary(char operator, Expression left, Expression right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public double evaluate(double x, double y, double a, double b, double c) {
+            double l = left.evaluate(x, y, a, b, c);
+            double r = right.evaluate(x, y, a, b, c);
+            switch (operator) {
+                case '+':
+                    return l + r;
+                case '-':
+                    return l - r;
+                case '*':
+                    return l * r;
+                case '/':
+                    return l / r;
+                default:
+                    return Math.pow(l, r);
+            }
+        }
+
+        @Override
+        public String toJava() {
+            if (operator == '^') {
+                return "Math.pow(" + left.toJava() + ", " + right.toJava() + ")";
+            }
+            return "(" + left.toJava() + " " + operator + " " + right.toJava() + ")";
+        }
+    }
+
+    private static final class Call extends Expression {
+        private final String function;
+        private final Expression argument;
+
+        Call(String function, Expression argument) {
+            this.function = function;
+            this.argument = argument;
+        }
+
+        @Override
+        public double evaluate(double x, double y, double a, double b, double c) {
+            double value = argument.evaluate(x, y, a, b, c);
+            switch (function) {
+                case "sin":
+                    return Math.sin(value);
+                case "cos":
+                    return Math.cos(value);
+                case "tan":
+                    return Math.tan(value);
+                case "ctan":
+                    return 1 / Math.tan(value);
+                case "exp":
+                    return Math.exp(value);
+                case "log":
+                    return Math.log(value);
+                case "sqrt":
+                    return Math.sqrt(value);
+                default:
+                    return Math.abs(value);
+            }
+        }
+
+        @Override
+        public String toJava() {
+            if (function.equals("ctan")) {
+                return "(1 / Math.tan(" + argument.toJava() + "))";
+            }
+            return "Math." + function + "(" + argument.toJava() + ")";
+        }
+    }
+}
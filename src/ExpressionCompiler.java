@@ -0,0 +1,186 @@
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles expressions at runtime into classes that implement {@link CurveFunction},
+ * or {@link ImplicitFunction} for expressions of x and y.
+ * The expression becomes the body of {@code apply}, so the JIT treats it like a
+ * hand-written lambda. The most recently used compiled classes are cached by expression text;
+ * evicted classes are unloaded with their class loader once no curve uses them.
+ */
+public final class ExpressionCompiler {
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+    private static final int CACHE_CAPACITY = 256;
+    private static final Map<String, CurveFactory> COMPILED = lru();
+    private static final Map<String, ImplicitFactory> COMPILED_IMPLICIT = lru();
+
+    private ExpressionCompiler() {
+    }
+
+    /**
+     * Returns a factory for the compiled expression, compiling it on first use.
+     *
+     * @param expression the expression to compile
+     * @return the compiled curve factory
+     * @throws IllegalStateException if no Java compiler is available or compilation fails
+     */
+    public static CurveFactory compile(Expression expression) {
+        String source = expression.toJava();
+        CurveFactory factory;
+        synchronized (COMPILED) {
+            factory = COMPILED.get(source);
+        }
+        if (factory == null) {
+            Constructor<?> constructor = define("CurveFunction", "double x", source);
+            factory = (a, b, c) -> (CurveFunction) instantiate(constructor, a, b, c);
+            synchronized (COMPILED) {
+                COMPILED.putIfAbsent(source, factory);
+            }
+        }
+        return factory;
+    }
+
+    /**
+     * Returns a factory for the compiled implicit expression F(x, y), compiling it on first use.
+     *
+     * @param expression the expression to compile
+     * @return the compiled implicit curve factory
+     * @throws IllegalStateException if no Java compiler is available or compilation fails
+     */
+    public static ImplicitFactory compileImplicit(Expression expression) {
+        String source = expression.toJava();
+        ImplicitFactory factory;
+        synchronized (COMPILED_IMPLICIT) {
+            factory = COMPILED_IMPLICIT.get(source);
+        }
+        if (factory == null) {
+            Constructor<?> constructor = define("ImplicitFunction", "double x, double y", source);
+            factory = (a, b, c) -> (ImplicitFunction) instantiate(constructor, a, b, c);
+            synchronized (COMPILED_IMPLICIT) {
+                COMPILED_IMPLICIT.putIfAbsent(source, factory);
+            }
+        }
+        return factory;
+    }
+
+    /**
+     * Returns a map that keeps the {@link #CACHE_CAPACITY} most recently used entries.
+     * It is not synchronized.
+     */
+    private static <V> Map<String, V> lru() {
+        return new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > CACHE_CAPACITY;
+            }
+        };
+    }
+
+    private static Object instantiate(Constructor<?> constructor, double a, double b, double c) {
+        try {
+            return constructor.newInstance(a, b, c);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Compiles a class implementing the given function interface whose {@code apply} returns the expression.
+     *
+     * @return the constructor of the class, taking the parameters A, B and C
+     */
+    private static Constructor<?> define(String interfaceName, String arguments, String expression) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("No Java compiler available");
+        }
+
+        String className = "CompiledExpression" + COUNTER.getAndIncrement();
+        String source = "public final class " + className + " implements " + interfaceName + " {\n"
+                + "    private final double a, b, c;\n"
+                + "    public " + className + "(double a, double b, double c) {\n"
+                + "        this.a = a;\n"
+                + "        this.b = b;\n"
+                + "        this.c = c;\n"
+                + "    }\n"
+                + "    @Override\n"
+                + "    public double apply(" + arguments + ") {\n"
+                + "        return " + expression + ";\n"
+                + "    }\n"
+                + "}\n";
+
+        Map<String, ByteArrayOutputStream> classes = new HashMap<>();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StandardJavaFileManager standardManager = compiler.getStandardFileManager(diagnostics, null, null);
+        JavaFileManager manager = new ForwardingJavaFileManager<JavaFileManager>(standardManager) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String name, JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("mem:///" + name + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                        classes.put(name, bytes);
+                        return bytes;
+                    }
+                };
+            }
+        };
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///" + className + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+
+        boolean compiled = compiler.getTask(null, manager, diagnostics,
+                Arrays.asList("-classpath", System.getProperty("java.class.path")), null,
+                Collections.singletonList(file)).call();
+        try {
+            manager.close();
+        } catch (IOException ignored) {
+        }
+        if (!compiled) {
+            StringBuilder message = new StringBuilder("Compilation failed");
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                message.append(": ").append(diagnostic.getMessage(null));
+            }
+            throw new IllegalStateException(message.toString());
+        }
+
+        ClassLoader loader = new ClassLoader(CurveFunction.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                ByteArrayOutputStream bytes = classes.get(name);
+                if (bytes == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                byte[] code = bytes.toByteArray();
+                return defineClass(name, code, 0, code.length);
+            }
+        };
+        try {
+            return loader.loadClass(className).getConstructor(double.class, double.class, double.class);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load compiled expression", e);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The computed content of one frame of {@link GraphPanel}: the sampled curves in drawing order
+ * and their intersections, for one viewport. A snapshot is built by the background render worker
+ * and never changes once it is published, so the event dispatch thread can draw it and
+ * look up hovered points without locking.
+ */
+public final class FrameSnapshot {
+    /**
+     * A sampled curve and how to draw it.
+     */
+    public static final class Curve {
+        private final String id;
+        private final Color color;
+        private final SampledCurve samples;
+
+        public Curve(String id, Color color, SampledCurve samples) {
+            this.id = id;
+            this.color = color;
+            this.samples = samples;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Color getColor() {
+            return color;
+        }
+
+        public SampledCurve getSamples() {
+            return samples;
+        }
+    }
+
+    private final Viewport viewport;
+    private final List<Curve> curves;
+    private final IntersectionSet intersections;
+    private final PointIndex pointIndex;
+    private final long evaluations;
+    private final long samplingNanos;
+    private final long intersectionNanos;
+
+    /**
+     * Creates a snapshot. The caller hands over the curves and intersections and must not modify them afterwards.
+     *
+     * @param viewport the viewport the curves were sampled for
+     * @param curves the sampled curves in drawing order
+     * @param intersections the intersections of the curves, or null if they were not searched
+     * @param evaluations the number of function evaluations made for this frame
+     * @param samplingNanos the time spent sampling
+     * @param intersectionNanos the time spent searching intersections
+     */
+    public FrameSnapshot(Viewport viewport, List<Curve> curves, IntersectionSet intersections,
+                         long evaluations, long samplingNanos, long intersectionNanos) {
+        this.viewport = viewport;
+        this.curves = Collections.unmodifiableList(new ArrayList<>(curves));
+        this.intersections = intersections != null ? intersections : new IntersectionSet(0);
+        this.pointIndex = new PointIndex(10);
+        this.pointIndex.rebuild(this.intersections, viewport);
+        this.evaluations = evaluations;
+        this.samplingNanos = samplingNanos;
+        this.intersectionNanos = intersectionNanos;
+    }
+
+    public Viewport getViewport() {
+        return viewport;
+    }
+
+    public List<Curve> getCurves() {
+        return curves;
+    }
+
+    public int getIntersectionCount() {
+        return intersections.size();
+    }
+
+    public double getIntersectionX(int index) {
+        return intersections.getX(index);
+    }
+
+    public double getIntersectionY(int index) {
+        return intersections.getY(index);
+    }
+
+    /**
+     * Returns the intersection nearest to a screen position.
+     *
+     * @param x the x position in pixels
+     * @param y the y position in pixels
+     * @param radius the maximum distance in pixels
+     * @return the index of the intersection, or -1 if there is none within the radius
+     */
+    public int nearestIntersection(int x, int y, int radius) {
+        return pointIndex.nearest(x, y, radius);
+    }
+
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    public long getSamplingNanos() {
+        return samplingNanos;
+    }
+
+    public long getIntersectionNanos() {
+        return intersectionNanos;
+    }
+}
@@ -0,0 +1,277 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Workloads for the rendering and intersection hot paths, measured by the JMH benchmarks in
+ * {@code src-jmh}. Each workload has a name, such as {@code sample.sin} or {@code paint.cold.1920x1080},
+ * and is built on demand, so a benchmark fork only sets up the curves, panels and images it measures.
+ * <p>
+ * The benchmarks are built and run with Maven:
+ * {@code mvn -Pjmh package} and {@code java -jar target/benchmarks.jar -prof gc}, which reports
+ * throughput and, with the gc profiler, the allocation rate of all threads of the forked JVM.
+ * Append {@code -jvmArgsAppend --add-modules=jdk.incubator.vector} and build with {@code -Pjmh,vector}
+ * to measure the vector kernels, see {@link CurveKernels}.
+ * <p>
+ * Usage: {@code java GraphBenchmark [name filter]} runs every matching workload once, as a quick check that
+ * they work. LineRasterizerTest checks the drawings of the rasterizer against Java2D.
+ */
+public class GraphBenchmark {
+    private static final Map<String, Supplier<Supplier<Object>>> WORKLOADS = new LinkedHashMap<>();
+
+    static {
+        Viewport viewport = new Viewport(1920, 1080, 2);
+        for (CurveFamily family : CurveFamily.values()) {
+            define("sample." + family.getId(), () -> {
+                CurveFunction function = family.create(1, 10, 0.1);
+                return () -> AdaptiveSampler.sample(function, viewport);
+            });
+        }
+
+        for (CurveFamily family : CurveFamily.values()) {
+            define("draw." + family.getId(), () -> {
+                SampledCurve curve = AdaptiveSampler.sample(family.create(1, 10, 0.1), viewport);
+                BufferedImage canvas = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_ARGB_PRE);
+                return () -> {
+                    Graphics2D g2 = canvas.createGraphics();
+                    try {
+                        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                        return GraphUtils.drawSamples(g2, family.getColor(), curve, viewport);
+                    } finally {
+                        g2.dispose();
+                    }
+                };
+            });
+            define("draw.raster." + family.getId(), () -> {
+                SampledCurve curve = AdaptiveSampler.sample(family.create(1, 10, 0.1), viewport);
+                BufferedImage canvas = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_ARGB_PRE);
+                return () -> {
+                    Graphics2D g2 = canvas.createGraphics();
+                    try {
+                        return LineRasterizer.drawSamples(canvas, g2, family.getColor(), curve, viewport);
+                    } finally {
+                        g2.dispose();
+                    }
+                };
+            });
+        }
+
+        String[] variantNames = {"compiled", "interpreted", "builtin"};
+        for (int i = 0; i < variantNames.length; i++) {
+            int variant = i;
+            define("expression." + variantNames[i], () -> {
+                Expression expression = Expression.parse("A + B * sin(C * x) + x * x / 100");
+                CurveFunction function = variant == 0 ? ExpressionCompiler.compile(expression).create(1, 10, 0.1)
+                        : variant == 1 ? expression.interpreted().create(1, 10, 0.1)
+                        : x -> 1 + 10 * Math.sin(0.1 * x) + x * x / 100;
+                double[] values = new double[4096];
+                return () -> {
+                    function.applyAll(-1000, 0.5, values, values.length);
+                    return values;
+                };
+            });
+        }
+
+        for (CurveFamily family : CurveFamily.values()) {
+            define("kernels.scalar." + family.getId(), () -> {
+                double[] values = new double[4096];
+                return () -> {
+                    CurveKernels.scalar().evaluate(family, 1, 2, 1, -10, 20.0 / values.length, values, values.length);
+                    return values;
+                };
+            });
+            define("kernels." + family.getId(), () -> {
+                double[] values = new double[4096];
+                return () -> {
+                    CurveKernels.get().evaluate(family, 1, 2, 1, -10, 20.0 / values.length, values, values.length);
+                    return values;
+                };
+            });
+        }
+
+        for (CurveFamily family : CurveFamily.values()) {
+            define("analysis." + family.getId(), () -> {
+                CurveAnalyzer analyzer = new CurveAnalyzer(-500, 500, 100_000);
+                CurveFunction function = family.create(1, 10, 0.1);
+                return () -> analyzer.analyze(function);
+            });
+        }
+        define("analysis.areas.sin.cos", () -> {
+            CurveAnalyzer analyzer = new CurveAnalyzer(-500, 500, 100_000);
+            CurveFunction sin = CurveFamily.SIN.create(1, 10, 0.1);
+            CurveFunction cos = CurveFamily.COS.create(1, 10, 0.1);
+            return () -> analyzer.areasBetween(sin, cos);
+        });
+
+        define("stream.append4096", () -> {
+            StreamingSeries stream = new StreamingSeries("benchmark", 1 << 16, 1 << 20);
+            long[] streamed = new long[1];
+            return () -> {
+                for (int i = 0; i < 4096; i++) {
+                    streamed[0]++;
+                    stream.append(streamed[0], i & 255);
+                }
+                return stream.drain();
+            };
+        });
+        define("stream.sample", () -> {
+            StreamingSeries stream = new StreamingSeries("benchmark", 1 << 16, 1 << 20);
+            for (int i = 0; i < 1 << 16; i++) {
+                stream.append(i, i & 255);
+            }
+            stream.drain();
+            return () -> stream.sample(viewport);
+        });
+
+        for (int count : new int[] {2, 3, 4, 5, 6, 7, 8, 9, 10, 100, 500}) {
+            define("intersections." + count, () -> {
+                List<CurveFunction> functions = curves(count);
+                IntersectionSet intersections = new IntersectionSet();
+                return () -> {
+                    intersections.clear();
+                    GraphUtils.findAllIntersections(intersections, functions, 1920, 1080, 2);
+                    return intersections.size();
+                };
+            });
+        }
+
+        int[][] sizes = {{800, 600}, {1920, 1080}, {3840, 2160}};
+        for (int[] size : sizes) {
+            String suffix = size[0] + "x" + size[1];
+            define("paint.cold." + suffix, () -> {
+                GraphPanel panel = fullPanel(size[0], size[1]);
+                BufferedImage image = new BufferedImage(size[0], size[1], BufferedImage.TYPE_INT_RGB);
+                return () -> {
+                    panel.clearCaches();
+                    return paint(panel, image);
+                };
+            });
+            define("paint.cached." + suffix, () -> {
+                GraphPanel panel = fullPanel(size[0], size[1]);
+                BufferedImage image = new BufferedImage(size[0], size[1], BufferedImage.TYPE_INT_RGB);
+                return () -> paint(panel, image);
+            });
+        }
+        define("paint.cold.raster.1920x1080", () -> {
+            GraphPanel panel = fullPanel(1920, 1080);
+            panel.setFastRaster(true);
+            BufferedImage image = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_RGB);
+            return () -> {
+                panel.clearCaches();
+                return paint(panel, image);
+            };
+        });
+
+        define("paint.cold.curves500", () -> {
+            GraphPanel panel = manyCurvesPanel(500, 1920, 1080);
+            BufferedImage image = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_RGB);
+            return () -> {
+                panel.clearCaches();
+                return paint(panel, image);
+            };
+        });
+        define("paint.cached.curves500", () -> {
+            GraphPanel panel = manyCurvesPanel(500, 1920, 1080);
+            BufferedImage image = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_RGB);
+            return () -> paint(panel, image);
+        });
+    }
+
+    private static void define(String name, Supplier<Supplier<Object>> setup) {
+        WORKLOADS.put(name, setup);
+    }
+
+    /**
+     * Returns the names of all workloads.
+     */
+    public static Set<String> names() {
+        return Collections.unmodifiableSet(WORKLOADS.keySet());
+    }
+
+    /**
+     * Sets up a workload. Each call of the returned supplier performs one operation of the workload
+     * and returns its result, which the caller must consume so that the JIT cannot drop the work.
+     *
+     * @param name the name of the workload
+     * @return the operation
+     * @throws IllegalArgumentException if there is no workload of that name
+     */
+    public static Supplier<Object> workload(String name) {
+        Supplier<Supplier<Object>> setup = WORKLOADS.get(name);
+        if (setup == null) {
+            throw new IllegalArgumentException("Unknown workload " + name);
+        }
+        return setup.get();
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        String filter = args.length > 0 ? args[0] : "";
+
+        for (String name : names()) {
+            if (name.contains(filter)) {
+                long start = System.nanoTime();
+                workload(name).get();
+                System.out.printf("%-40s ok %10.1f ms%n", name, (System.nanoTime() - start) / 1e6);
+            }
+        }
+    }
+
+    /**
+     * Returns the given number of curves, cycling through the families with varying parameters.
+     */
+    static List<CurveFunction> curves(int count) {
+        CurveFamily[] families = CurveFamily.values();
+        List<CurveFunction> functions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            functions.add(families[i % families.length].create(1 + i / families.length, 10, 0.1));
+        }
+        return functions;
+    }
+
+    /**
+     * Returns a panel of the given size with every built-in curve but the custom one enabled.
+     */
+    static GraphPanel fullPanel(int width, int height) {
+        GraphPanel panel = new GraphPanel();
+        for (CurveDescriptor curve : panel.getRegistry().all()) {
+            panel.setDrawn(curve.getId(), !curve.getId().equals("custom"));
+        }
+        panel.setSize(width, height);
+        return panel;
+    }
+
+    /**
+     * Returns a panel of the given size with the given number of explicit curves registered and enabled,
+     * cycling through the families with varying parameters as {@link #curves} does.
+     */
+    static GraphPanel manyCurvesPanel(int count, int width, int height) {
+        GraphPanel panel = new GraphPanel();
+        CurveFamily[] families = CurveFamily.values();
+        for (int i = 0; i < count; i++) {
+            CurveFamily family = families[i % families.length];
+            CurveDescriptor curve = new CurveDescriptor(family.getId() + "#" + i, family.getId(), family.getColor(),
+                    family, 1 + i / families.length, 10, 0.1);
+            curve.setEnabled(true);
+            panel.getRegistry().add(curve);
+        }
+        panel.setSize(width, height);
+        return panel;
+    }
+
+    static BufferedImage paint(GraphPanel panel, BufferedImage image) {
+        Graphics2D g2 = image.createGraphics();
+        try {
+            panel.paint(g2);
+        } finally {
+            g2.dispose();
+        }
+        return image;
+    }
+}
@@ -1,81 +1,157 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.geom.*;
+import java.awt.event.MouseAdapter;
 import java.awt.event.MouseMotionAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Objects;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
 
 /**
  * GraphPanel is a JPanel that draws various mathematical functions and finds their intersection points.
  */
-public class GraphPanel extends JPanel {
-    private double sinA = 1.0, sinB = 10.0, sinC = 0.1;
-    private double cosA = 1.0, cosB = 10.0, cosC = 0.1;
-    private double tanA = 1.0, tanB = 10.0, tanC = 0.1;
-    private double ctanA = 1.0, ctanB = 10.0, ctanC = 0.1;
-    private double parabolaA = 1.0, parabolaB = 10.0, parabolaC = 0.1;
-    private double hyperbolaA = 1.0, hyperbolaB = 10.0, hyperbolaC = 0.1;
-    private double expA = 1.0, expB = 10.0, expC = 0.1;
-    private double logA = 1.0, logB = 10.0, logC = 0.1;
-    private double radius = 5.0;
+@SuppressWarnings("serial")
+public final class GraphPanel extends JPanel {
+    public static final String DEFAULT_EXPRESSION = "A + B * sin(C * x)";
+    public static final String DEFAULT_IMPLICIT_EXPRESSION = "(x^2 + y^2)^2 - 200 * B^2 * (x^2 - y^2)";
+    private static final int PREVIEW_STEP = 4;
+    private static final double ZOOM_STEP = 1.1;
+    private static final long TILE_MEMORY = 128L << 20;
+    private static final int TILE_BAND = 1024;
+    private static final int MAX_CURVE_LAYERS = 16;
+    private static final double ANALYSIS_RANGE = 500;
+    private static final int ANALYSIS_STEPS = 100_000;
+
+    private final CurveRegistry registry = CurveRegistry.withBuiltIns();
     private double scale = 2;
+    private double baseScale = 2;
+    private int zoomLevel;
+    private int panX;
+    private int panY;
+    private boolean parallel = false;
+    private volatile boolean fastRaster = false;
+    private boolean analysisVisible = false;
+
+    private final List<DataSeries> dataSeries = new ArrayList<>();
+    private final List<StreamingSeries> streams = new ArrayList<>();
+    private final Timer streamTimer = new Timer(1000 / 60, e -> repaintIfStreaming());
 
-    public boolean drawSin = false;
-    public boolean drawCos = false;
-    public boolean drawTan = false;
-    public boolean drawCtan = false;
-    public boolean drawParabola = false;
-    public boolean drawHyperbola = false;
-    public boolean drawEllipse = false;
-    public boolean drawCircle = false;
-    public boolean drawExp = false;
-    public boolean drawLog = false;
-
-    private List<IntersectionPoint> intersections = new ArrayList<>();
+    private int hoveredIndex = -1;
     private IntersectionPoint hoveredPoint;
+    private final CurveCache curveCache = new CurveCache(64);
+    private final LayerCompositor layers = new LayerCompositor();
+    private final TileCache tiles = new TileCache(TILE_MEMORY, this::repaint);
+    private final UpdateScheduler scheduler = new UpdateScheduler(this, 16);
+    private final RenderStats stats = new RenderStats();
+    private final RenderWorker<FrameSnapshot> worker = new RenderWorker<>("graph-render");
+    private final AnalysisCache analysisCache = new AnalysisCache(
+            new CurveAnalyzer(-ANALYSIS_RANGE, ANALYSIS_RANGE, ANALYSIS_STEPS), 128, this::repaint);
+    private final PointIndex markerIndex = new PointIndex(10);
+    private List<CurveAnalysis> shownAnalyses = new ArrayList<>();
+    private CurveAnalysis markers = new CurveAnalysis(0);
+    private Viewport markerViewport;
+    private FrameRequest requested;
+    private FrameSnapshot snapshot;
+    private FrameSnapshot accounted;
+    private String adjusting;
 
     public Map<String, JPanel> functionPanels = new HashMap<>();
 
     public GraphPanel() {
         addMouseWheelListener(e -> {
-            int notches = e.getWheelRotation();
-            if (notches < 0) {
-                scale *= 1.1;
-            } else {
-                scale /= 1.1;
-            }
-            repaint();
+            double previous = scale;
+            zoomLevel += e.getWheelRotation() < 0 ? 1 : -1;
+            scale = baseScale * Math.pow(ZOOM_STEP, zoomLevel);
+            // Keep the point under the cursor in place.
+            int originX = getWidth() / 2 + panX;
+            int originY = getHeight() / 2 + panY;
+            panX += (int) Math.round((e.getX() - originX) * (1 - scale / previous));
+            panY += (int) Math.round((e.getY() - originY) * (1 - scale / previous));
+            scheduler.requestRender();
         });
 
+        MouseAdapter panner = new MouseAdapter() {
+            private Point last;
+
+            @Override
+            public void mousePressed(MouseEvent e) {
+                last = e.getPoint();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (last != null) {
+                    panX += e.getX() - last.x;
+                    panY += e.getY() - last.y;
+                    last = e.getPoint();
+                    scheduler.requestRender();
+                }
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                last = null;
+            }
+        };
+        addMouseListener(panner);
+        addMouseMotionListener(panner);
+
         addMouseMotionListener(new MouseMotionAdapter() {
             @Override
             public void mouseMoved(MouseEvent e) {
-                hoveredPoint = null;
-                for (IntersectionPoint p : intersections) {
-                    if (Math.abs(e.getX() - p.x) < 10 && Math.abs(e.getY() - p.y) < 10) {
-                        hoveredPoint = p;
-                        break;
+                FrameSnapshot frame = snapshot;
+                if (frame == null) {
+                    return;
+                }
+                // Intersections come first; analysis markers are numbered after them.
+                int index = frame.nearestIntersection(e.getX(), e.getY(), 10);
+                int marker = index < 0 && analysisVisible ? markerIndex.nearest(e.getX(), e.getY(), 10) : -1;
+                if (marker >= 0) {
+                    index = frame.getIntersectionCount() + marker;
+                }
+                if (index != hoveredIndex) {
+                    IntersectionPoint previous = hoveredPoint;
+                    hoveredIndex = index;
+                    if (marker >= 0) {
+                        hoveredPoint = new IntersectionPoint(markerViewport, markers.getX(marker), markers.getY(marker));
+                        hoveredPoint.text = markers.describe(marker);
+                    } else {
+                        hoveredPoint = index < 0 ? null : new IntersectionPoint(frame.getViewport(), frame.getIntersectionX(index), frame.getIntersectionY(index));
+                    }
+                    if (previous != null) {
+                        repaint(tooltipBounds(previous));
+                    }
+                    if (hoveredPoint != null) {
+                        repaint(tooltipBounds(hoveredPoint));
                     }
                 }
-                repaint();
             }
         });
     }
 
     /**
-     * Inner class representing an intersection point of two functions.
+     * Inner class representing an intersection point of two functions, or a hovered analysis marker.
      */
     class IntersectionPoint extends Point {
         double xValue, yValue;
+        String text;
 
         IntersectionPoint(int x, int y, double xValue, double yValue) {
             super(x, y);
             this.xValue = xValue;
             this.yValue = yValue;
         }
+
+        IntersectionPoint(Viewport viewport, double xValue, double yValue) {
+            this((int) Math.round(viewport.toScreenX(xValue)), (int) Math.round(viewport.toScreenY(yValue)), xValue, yValue);
+        }
     }
 
     @Override
@@ -84,224 +160,835 @@ public class GraphPanel extends JPanel {
         Graphics2D g2 = (Graphics2D) g;
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-        g2.drawLine(0, getHeight() / 2, getWidth(), getHeight() / 2);
-        g2.drawLine(getWidth() / 2, 0, getWidth() / 2, getHeight());
-
-        GraphUtils.drawTicks(g2, getWidth(), getHeight(), scale);
-
-        intersections.clear();
-        List<Point> sinPoints = new ArrayList<>();
-        List<Point> cosPoints = new ArrayList<>();
-        List<Point> tanPoints = new ArrayList<>();
-        List<Point> ctanPoints = new ArrayList<>();
-        List<Point> parabolaPoints = new ArrayList<>();
-        List<Point> hyperbolaPoints = new ArrayList<>();
-        List<Point> ellipsePoints = new ArrayList<>();
-        List<Point> circlePoints = new ArrayList<>();
-        List<Point> expPoints = new ArrayList<>();
-        List<Point> logPoints = new ArrayList<>();
-        List<List<Point>> functionPoints = new ArrayList<>();
-        List<Function<Double, Double>> functions = new ArrayList<>();
-
-        if (drawSin) {
-            GraphUtils.drawFunction(g2, Color.RED, x -> sinA + sinB * Math.sin(sinC * x), sinPoints, getWidth(), getHeight(), scale);
-            functionPoints.add(sinPoints);
-            functions.add(x -> sinA + sinB * Math.sin(sinC * x));
-        }
-        if (drawCos) {
-            GraphUtils.drawFunction(g2, Color.BLUE, x -> cosA + cosB * Math.cos(cosC * x), cosPoints, getWidth(), getHeight(), scale);
-            functionPoints.add(cosPoints);
-            functions.add(x -> cosA + cosB * Math.cos(cosC * x));
-        }
-        if (drawTan) {
-            GraphUtils.drawFunction(g2, Color.GREEN, x -> tanA + tanB * Math.tan(tanC * x), tanPoints, getWidth(), getHeight(), scale);
-            functionPoints.add(tanPoints);
-            functions.add(x -> tanA + tanB * Math.tan(tanC * x));
-        }
-        if (drawCtan) {
-            GraphUtils.drawFunction(g2, Color.ORANGE, x -> ctanA + ctanB / Math.tan(ctanC * x), ctanPoints, getWidth(), getHeight(), scale);
-            functionPoints.add(ctanPoints);
-            functions.add(x -> ctanA + ctanB / Math.tan(ctanC * x));
-        }
-        if (drawParabola) {
-            GraphUtils.drawFunction(g2, Color.MAGENTA, x -> parabolaA * x * x + parabolaB * x + parabolaC, parabolaPoints, getWidth(), getHeight(), scale);
-            functionPoints.add(parabolaPoints);
-            functions.add(x -> parabolaA * x * x + parabolaB * x + parabolaC);
-        }
-        if (drawHyperbola) {
-            GraphUtils.drawFunction(g2, Color.CYAN, x -> hyperbolaA / (hyperbolaB * x), hyperbolaPoints, getWidth(), getHeight(), scale);
-            functionPoints.add(hyperbolaPoints);
-            functions.add(x -> hyperbolaA / (hyperbolaB * x));
-        }
-        if (drawEllipse) {
-            GraphUtils.drawEllipse(g2, ellipsePoints, getWidth(), getHeight(), sinA, sinB, scale);
-        }
-        if (drawCircle) {
-            GraphUtils.drawCircle(g2, circlePoints, getWidth(), getHeight(), sinA, sinB, radius, scale);
-        }
-        if (drawExp) {
-            GraphUtils.drawFunction(g2, Color.YELLOW, x -> expA * Math.exp(expB * x), expPoints, getWidth(), getHeight(), scale);
-            functionPoints.add(expPoints);
-            functions.add(x -> expA * Math.exp(expB * x));
-        }
-        if (drawLog) {
-            GraphUtils.drawFunction(g2, new Color(100, 50, 200), x -> logA * Math.log(logB * x), logPoints, getWidth(), getHeight(), scale);
-            functionPoints.add(logPoints);
-            functions.add(x -> logA * Math.log(logB * x));
-        }
-
-        GraphUtils.findAllIntersections(intersections, functionPoints, functions, getWidth(), getHeight(), scale);
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        Viewport viewport = new Viewport(width, height, scale, width / 2 + panX, height / 2 + panY);
+        stats.beginFrame();
+        layers.beginFrame();
+
+        long stage = stats.startStage();
+        layers.drawLayer(g2, "axes", viewport, width, height, layer -> {
+            layer.drawLine(0, viewport.getOriginY(), width, viewport.getOriginY());
+            layer.drawLine(viewport.getOriginX(), 0, viewport.getOriginX(), height);
+            GraphUtils.drawTicks(layer, viewport);
+        });
+        stats.endStage(RenderStats.Stage.AXES, stage);
+
+        // On screen the curves are drawn from tiles, so that panning only renders what it exposes.
+        // Offscreen paints, such as headless renders, must produce the complete frame at once.
+        boolean tiled = isShowing();
+        FrameRequest request = new FrameRequest(viewport, plottedCurves(), adjusting, parallel, tiled);
+        if (!tiled) {
+            if (!request.equals(requested) || worker.isBusy()) {
+                worker.cancel();
+                requested = request;
+                showSnapshot(computeFrame(request, new RenderWorker.Cancellation()));
+            }
+        } else if (!request.equals(requested)) {
+            requested = request;
+            worker.submit(cancellation -> computeFrame(request, cancellation), this::showSnapshot);
+        }
+
+        FrameSnapshot frame = snapshot;
+        if (frame != null && frame != accounted) {
+            accounted = frame;
+            stats.addSamples(frame.getEvaluations());
+            stats.addStage(RenderStats.Stage.SAMPLING, frame.getSamplingNanos());
+            stats.addStage(RenderStats.Stage.INTERSECTIONS, frame.getIntersectionNanos());
+        }
+
+        stage = stats.startStage();
+        // Each curve has a layer of its own, so changing one curve redraws only that one, up to a limit
+        // beyond which the remaining curves share a layer rather than hold an image each.
+        if (tiled) {
+            tiles.beginFrame(scale);
+            int layered = 0;
+            List<PlotCurve> shared = new ArrayList<>();
+            List<String> sharedVersion = new ArrayList<>();
+            for (PlotCurve curve : request.curves) {
+                if (curve.name.equals(adjusting)) {
+                    continue;
+                }
+                if (layered < MAX_CURVE_LAYERS) {
+                    tiles.draw(g2, curve.id, Arrays.toString(curve.params), viewport, curve::paintTile);
+                    layered++;
+                } else {
+                    shared.add(curve);
+                    sharedVersion.add(curve.id + Arrays.toString(curve.params));
+                }
+            }
+            if (!shared.isEmpty()) {
+                tiles.draw(g2, "curves", sharedVersion, viewport, (tile, image, tileViewport) -> {
+                    int vertices = 0;
+                    for (PlotCurve curve : shared) {
+                        vertices += curve.paintTile(tile, image, tileViewport);
+                    }
+                    return vertices;
+                });
+            }
+        }
+        if (frame != null) {
+            List<FrameSnapshot.Curve> curves = frame.getCurves();
+            int own = Math.min(curves.size(), MAX_CURVE_LAYERS);
+            for (FrameSnapshot.Curve curve : curves.subList(0, own)) {
+                layers.drawLayer(g2, curve.getId(), curve.getSamples(), width, height, (layer, image) ->
+                        stats.addSegments(drawSamples(layer, image, curve.getColor(), curve.getSamples(), frame.getViewport())));
+            }
+            if (own < curves.size()) {
+                List<FrameSnapshot.Curve> shared = curves.subList(own, curves.size());
+                List<SampledCurve> key = new ArrayList<>();
+                for (FrameSnapshot.Curve curve : shared) {
+                    key.add(curve.getSamples());
+                }
+                layers.drawLayer(g2, "curves", key, width, height, (layer, image) -> {
+                    for (FrameSnapshot.Curve curve : shared) {
+                        stats.addSegments(drawSamples(layer, image, curve.getColor(), curve.getSamples(), frame.getViewport()));
+                    }
+                });
+            }
+            layers.drawLayer(g2, "intersections", Arrays.asList(frame, viewport), width, height, layer -> {
+                layer.setColor(Color.DARK_GRAY);
+                for (int i = 0; i < frame.getIntersectionCount(); i++) {
+                    int x = (int) Math.round(viewport.toScreenX(frame.getIntersectionX(i)));
+                    int y = (int) Math.round(viewport.toScreenY(frame.getIntersectionY(i)));
+                    layer.drawOval(x - 3, y - 3, 6, 6);
+                }
+            });
+            stats.setIntersections(frame.getIntersectionCount());
+        }
+        if (analysisVisible) {
+            drawAnalysis(g2, request.curves, viewport, width, height);
+        }
+        for (StreamingSeries stream : streams) {
+            stream.drain();
+            SampledCurve samples = stream.sample(viewport);
+            layers.drawLayer(g2, "stream:" + stream.getName(), samples, width, height,
+                    (layer, image) -> stats.addSegments(drawSamples(layer, image, new Color(0, 150, 0), samples, viewport)));
+        }
+        stats.endStage(RenderStats.Stage.DRAWING, stage);
+        layers.endFrame();
 
         if (hoveredPoint != null) {
             g2.setColor(Color.GRAY);
             g2.fillOval(hoveredPoint.x - 5, hoveredPoint.y - 5, 10, 10);
-            String text = String.format("X: %.2f, Y: %.2f", hoveredPoint.xValue, hoveredPoint.yValue);
-            g2.drawString(text, hoveredPoint.x + 10, hoveredPoint.y - 10);
+            g2.drawString(tooltipText(hoveredPoint), hoveredPoint.x + 10, hoveredPoint.y - 10);
+        }
+        for (StreamingSeries stream : streams) {
+            stream.framePainted();
+        }
+        stats.endFrame(width, height);
+        if (stats.isHudEnabled()) {
+            stats.drawHud(g2);
         }
     }
 
-    public void updateSliders(String function, JSlider sliderA, JSlider sliderB, JSlider sliderC) {
-        switch (function) {
-            case "sin":
-                sliderA.setValue((int) sinA);
-                sliderB.setValue((int) sinB);
-                sliderC.setValue((int) sinC);
-                break;
-            case "cos":
-                sliderA.setValue((int) cosA);
-                sliderB.setValue((int) cosB);
-                sliderC.setValue((int) cosC);
-                break;
-            case "tan":
-                sliderA.setValue((int) tanA);
-                sliderB.setValue((int) tanB);
-                sliderC.setValue((int) tanC);
-                break;
-            case "ctan":
-                sliderA.setValue((int) ctanA);
-                sliderB.setValue((int) ctanB);
-                sliderC.setValue((int) ctanC);
-                break;
-            case "parabola":
-                sliderA.setValue((int) parabolaA);
-                sliderB.setValue((int) parabolaB);
-                sliderC.setValue((int) parabolaC);
-                break;
-            case "hyperbola":
-                sliderA.setValue((int) hyperbolaA);
-                sliderB.setValue((int) hyperbolaB);
-                sliderC.setValue((int) hyperbolaC);
-                break;
-            case "exp":
-                sliderA.setValue((int) expA);
-                sliderB.setValue((int) expB);
-                sliderC.setValue((int) expC);
-                break;
-            case "log":
-                sliderA.setValue((int) logA);
-                sliderB.setValue((int) logB);
-                sliderC.setValue((int) logC);
-                break;
-            case "circle":
-                sliderA.setVisible(false);
-                sliderB.setVisible(false);
-                sliderC.setVisible(false);
-                break;
+    /**
+     * Draws the markers of the analyses of the explicit curves that are ready, and requests the others.
+     * The analyses are merged again only when one of them changes, and indexed for hovering only when
+     * they or the viewport change.
+     */
+    private void drawAnalysis(Graphics2D g2, List<PlotCurve> plotted, Viewport viewport, int width, int height) {
+        List<PlotCurve> analyzed = new ArrayList<>();
+        for (PlotCurve curve : plotted) {
+            if (curve.function != null && curve.series == null && !curve.name.equals(adjusting)) {
+                analyzed.add(curve);
+            }
+        }
+        List<CurveAnalysis> analyses = new ArrayList<>();
+        for (PlotCurve curve : analyzed) {
+            CurveAnalysis analysis = analysisCache.get(curve.id, curve.params, curve.function);
+            if (analysis != null) {
+                analyses.add(analysis);
+            }
+        }
+        for (int i = 0; i < analyzed.size(); i++) {
+            for (int j = i + 1; j < analyzed.size(); j++) {
+                PlotCurve first = analyzed.get(i);
+                PlotCurve second = analyzed.get(j);
+                CurveAnalysis areas = analysisCache.getAreas(first.id, first.params, first.function,
+                        second.id, second.params, second.function);
+                if (areas != null) {
+                    analyses.add(areas);
+                }
+            }
+        }
+        if (!analyses.equals(shownAnalyses)) {
+            shownAnalyses = analyses;
+            markers = CurveAnalysis.merge(analyses);
+            markerViewport = null;
+            if (snapshot != null && hoveredIndex >= snapshot.getIntersectionCount()) {
+                repaint(tooltipBounds(hoveredPoint));
+                hoveredIndex = -1;
+                hoveredPoint = null;
+            }
+        }
+        if (!viewport.equals(markerViewport)) {
+            markerViewport = viewport;
+            markerIndex.rebuild(markers, viewport);
         }
+        CurveAnalysis shown = markers;
+        layers.drawLayer(g2, "analysis", Arrays.asList(shown, viewport), width, height, layer -> {
+            layer.setColor(Color.DARK_GRAY);
+            for (int i = 0; i < shown.size(); i++) {
+                int x = (int) Math.round(viewport.toScreenX(shown.getX(i)));
+                int y = (int) Math.round(viewport.toScreenY(shown.getY(i)));
+                if (x >= -5 && x <= width + 5 && y >= -5 && y <= height + 5) {
+                    drawMarker(layer, shown.getKind(i), x, y);
+                }
+            }
+        });
     }
 
-    public void setA(String function, double a) {
-        switch (function) {
-            case "sin":
-                this.sinA = a;
-                break;
-            case "cos":
-                this.cosA = a;
-                break;
-            case "tan":
-                this.tanA = a;
-                break;
-            case "ctan":
-                this.ctanA = a;
+    /**
+     * Draws an analysis marker: a square on a root, a triangle pointing up on a maximum and down
+     * on a minimum, a diamond on an inflection point and a cross in the middle of an area.
+     */
+    private static void drawMarker(Graphics2D g2, CurveAnalysis.Kind kind, int x, int y) {
+        switch (kind) {
+            case ROOT:
+                g2.fillRect(x - 2, y - 2, 5, 5);
                 break;
-            case "parabola":
-                this.parabolaA = a;
+            case MAXIMUM:
+                g2.fillPolygon(new int[] {x - 4, x, x + 4}, new int[] {y + 3, y - 4, y + 3}, 3);
                 break;
-            case "hyperbola":
-                this.hyperbolaA = a;
+            case MINIMUM:
+                g2.fillPolygon(new int[] {x - 4, x, x + 4}, new int[] {y - 3, y + 4, y - 3}, 3);
                 break;
-            case "exp":
-                this.expA = a;
+            case INFLECTION:
+                g2.drawPolygon(new int[] {x - 4, x, x + 4, x}, new int[] {y, y - 4, y, y + 4}, 4);
                 break;
-            case "log":
-                this.logA = a;
+            default:
+                g2.drawLine(x - 4, y, x + 4, y);
+                g2.drawLine(x, y - 4, x, y + 4);
                 break;
         }
+    }
+
+    /**
+     * Draws a sampled curve into a layer or tile image, with the rasterizer selected by {@link #setFastRaster}.
+     * Called on the painting thread and on tile rendering threads.
+     */
+    private int drawSamples(Graphics2D g2, BufferedImage image, Color color, SampledCurve samples, Viewport viewport) {
+        if (fastRaster) {
+            return LineRasterizer.drawSamples(image, g2, color, samples, viewport);
+        }
+        return GraphUtils.drawSamples(g2, color, samples, viewport);
+    }
+
+    /**
+     * Returns the enabled curves and data series, in drawing order. Streaming series are
+     * sampled by the paint itself, as they change every frame.
+     */
+    private List<PlotCurve> plottedCurves() {
+        List<PlotCurve> plotted = new ArrayList<>();
+        for (CurveDescriptor curve : registry.enabled()) {
+            plotted.add(new PlotCurve(curve));
+        }
+        for (DataSeries series : dataSeries) {
+            plotted.add(new PlotCurve(series));
+        }
+        // Room for the curves of the current and the previous viewport, so that neither evicts the other.
+        curveCache.ensureCapacity(2 * plotted.size());
+        return plotted;
+    }
+
+    /**
+     * Samples the curves of a frame and searches their intersections. Runs on the render worker,
+     * or on the painting thread for offscreen paints, and reads nothing but the request and the cache.
+     * Every function is evaluated through the cancellation guard, so a superseded frame stops at its next evaluation.
+     *
+     * @param request the inputs of the frame
+     * @param cancellation the cancellation of the frame
+     * @return the snapshot of the frame
+     */
+    private FrameSnapshot computeFrame(FrameRequest request, RenderWorker.Cancellation cancellation) {
+        Viewport viewport = request.viewport;
+        List<PlotCurve> plotted = request.curves;
+        SampledCurve[] samples = new SampledCurve[plotted.size()];
+        boolean search = request.adjusting == null;
+
+        // Tiled frames draw only the previewed curve from the snapshot, and need the
+        // samples of the other curves only where intersection search walks along them.
+        long start = System.nanoTime();
+        long evaluations = curveCache.getEvaluations();
+        IntPredicate needed = i -> !request.tiled || plotted.get(i).name.equals(request.adjusting)
+                || search && plotted.get(i).implicit != null;
+        if (request.parallel) {
+            IntStream.range(0, samples.length).filter(needed).parallel().forEach(i ->
+                    samples[i] = plotted.get(i).sample(viewport, true, request.adjusting, cancellation));
+        } else {
+            for (int i = 0; i < samples.length; i++) {
+                if (needed.test(i)) {
+                    samples[i] = plotted.get(i).sample(viewport, false, request.adjusting, cancellation);
+                }
+            }
+        }
+        evaluations = curveCache.getEvaluations() - evaluations;
+        List<FrameSnapshot.Curve> curves = new ArrayList<>();
+        for (int i = 0; i < samples.length; i++) {
+            PlotCurve curve = plotted.get(i);
+            boolean previewed = curve.name.equals(request.adjusting);
+            if (previewed) {
+                evaluations += samples[i].getEvaluations();
+            }
+            if (!request.tiled || previewed) {
+                curves.add(new FrameSnapshot.Curve(curve.id, curve.color, samples[i]));
+            }
+        }
+        long sampled = System.nanoTime();
+
+        IntersectionSet found = null;
+        if (search) {
+            List<CurveFunction> functions = new ArrayList<>();
+            List<ImplicitFunction> implicits = new ArrayList<>();
+            List<SampledCurve> polylines = new ArrayList<>();
+            for (int i = 0; i < samples.length; i++) {
+                PlotCurve curve = plotted.get(i);
+                if (curve.implicit != null) {
+                    implicits.add(cancellation.guard(curve.implicit));
+                    polylines.add(samples[i]);
+                } else {
+                    functions.add(cancellation.guard(curve.function));
+                }
+            }
+            found = new IntersectionSet();
+            GraphUtils.findAllIntersections(found, functions, implicits, polylines, viewport, request.parallel);
+        }
+        cancellation.check();
+        return new FrameSnapshot(viewport, curves, found, evaluations, sampled - start, System.nanoTime() - sampled);
+    }
+
+    /**
+     * Makes a computed frame the one that is drawn. Called on the event dispatch thread.
+     */
+    private void showSnapshot(FrameSnapshot frame) {
+        snapshot = frame;
+        if (hoveredPoint != null) {
+            repaint(tooltipBounds(hoveredPoint));
+        }
+        hoveredIndex = -1;
+        hoveredPoint = null;
         repaint();
     }
 
-    public void setB(String function, double b) {
-        switch (function) {
-            case "sin":
-                this.sinB = b;
-                break;
-            case "cos":
-                this.cosB = b;
-                break;
-            case "tan":
-                this.tanB = b;
-                break;
-            case "ctan":
-                this.ctanB = b;
-                break;
-            case "parabola":
-                this.parabolaB = b;
-                break;
-            case "hyperbola":
-                this.hyperbolaB = b;
-                break;
-            case "exp":
-                this.expB = b;
-                break;
-            case "log":
-                this.logB = b;
-                break;
+    /**
+     * Samples the enabled curves for the current size and view and searches their intersections
+     * on the calling thread, as an offscreen paint does, but without drawing them.
+     *
+     * @return the curves and intersections of the current view
+     */
+    public FrameSnapshot computeSnapshot() {
+        int width = getWidth();
+        int height = getHeight();
+        Viewport viewport = new Viewport(width, height, scale, width / 2 + panX, height / 2 + panY);
+        return computeFrame(new FrameRequest(viewport, plottedCurves(), null, parallel, false), new RenderWorker.Cancellation());
+    }
+
+    /**
+     * Returns the frame that was drawn last, or null if none has been computed yet.
+     */
+    public FrameSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the worker that computes frames while the panel is shown.
+     */
+    public RenderWorker<FrameSnapshot> getRenderWorker() {
+        return worker;
+    }
+
+    /**
+     * The inputs of a frame. Two requests are equal when they produce the same snapshot,
+     * so repaints that change nothing, such as tooltip updates, reuse the current one.
+     */
+    private static final class FrameRequest {
+        final Viewport viewport;
+        final List<PlotCurve> curves;
+        final String adjusting;
+        final boolean parallel;
+        final boolean tiled;
+
+        FrameRequest(Viewport viewport, List<PlotCurve> curves, String adjusting, boolean parallel, boolean tiled) {
+            this.viewport = viewport;
+            this.curves = curves;
+            this.adjusting = adjusting;
+            this.parallel = parallel;
+            this.tiled = tiled;
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FrameRequest)) {
+                return false;
+            }
+            FrameRequest other = (FrameRequest) o;
+            if (!viewport.equals(other.viewport) || !Objects.equals(adjusting, other.adjusting)
+                    || parallel != other.parallel || tiled != other.tiled || curves.size() != other.curves.size()) {
+                return false;
+            }
+            for (int i = 0; i < curves.size(); i++) {
+                if (!curves.get(i).id.equals(other.curves.get(i).id)
+                        || !Arrays.equals(curves.get(i).params, other.curves.get(i).params)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return viewport.hashCode();
+        }
+    }
+
+    private String tooltipText(IntersectionPoint p) {
+        if (p.text != null) {
+            return p.text;
+        }
+        return String.format("X: %.2f, Y: %.2f", p.xValue, p.yValue);
+    }
+
+    /**
+     * Returns the area covered by the hover dot and label of an intersection point.
+     *
+     * @param p the hovered intersection point
+     * @return the bounds to repaint when the point is shown or hidden
+     */
+    private Rectangle tooltipBounds(IntersectionPoint p) {
+        FontMetrics metrics = getFontMetrics(getFont());
+        Rectangle bounds = new Rectangle(p.x - 5, p.y - 5, 10, 10);
+        bounds.add(new Rectangle(p.x + 10, p.y - 10 - metrics.getAscent(),
+                metrics.stringWidth(tooltipText(p)), metrics.getHeight()));
+        bounds.grow(2, 2);
+        return bounds;
+    }
+
+    /**
+     * An enabled curve of a frame, with the function built from its current parameters.
+     */
+    private final class PlotCurve {
+        final String name;
+        final String id;
+        final Color color;
+        final CurveFunction function;
+        final ImplicitFunction implicit;
+        final double[] params;
+        final DataSeries series;
+
+        PlotCurve(CurveDescriptor curve) {
+            this.name = curve.getId();
+            this.id = curve.getKey();
+            this.color = curve.getColor();
+            this.params = curve.getParams();
+            if (curve.isImplicit()) {
+                this.function = null;
+                this.implicit = curve.getImplicitFactory().create(params[0], params[1], params[2]);
+            } else {
+                this.function = curve.getFactory().create(params[0], params[1], params[2]);
+                this.implicit = null;
+            }
+            this.series = null;
+        }
+
+        PlotCurve(DataSeries series) {
+            this.name = "data";
+            this.id = "data:" + series.getPath();
+            this.color = new Color(140, 90, 40);
+            this.function = series.asFunction();
+            this.implicit = null;
+            this.params = new double[0];
+            this.series = series;
+        }
+
+        /**
+         * Samples the curve for a tile and draws it. Called on a tile rendering thread.
+         */
+        int paintTile(Graphics2D g2, BufferedImage image, Viewport viewport) {
+            if (series != null) {
+                return drawSamples(g2, image, color, series.sample(viewport), viewport);
+            } else if (implicit != null) {
+                return drawSamples(g2, image, color, MarchingSquares.trace(implicit, viewport, false), viewport);
+            }
+            // The sampler does not refine steps that stay beyond one edge of the viewport, which
+            // on a short tile would skip the steep sides of poles just above or below it.
+            // Sampling in a band as tall as a screen finds them as a full-height view does.
+            Viewport band = new Viewport(viewport.getWidth(), viewport.getHeight() + 2 * TILE_BAND, viewport.getScale(),
+                    viewport.getOriginX(), viewport.getOriginY() + TILE_BAND);
+            Graphics2D bandGraphics = (Graphics2D) g2.create();
+            try {
+                bandGraphics.translate(0, -TILE_BAND);
+                return drawSamples(bandGraphics, image, color, AdaptiveSampler.sample(function, band), band);
+            } finally {
+                bandGraphics.dispose();
+            }
+        }
+
+        /**
+         * Takes the samples from the cache, sampling the curve only if its parameters or the viewport changed.
+         * While one of its sliders is dragged, the curve is sampled coarsely and not cached instead.
+         * Data series are reduced through their min/max pyramid. Implicit curves are traced with
+         * marching squares, on a coarser grid while previewed.
+         */
+        SampledCurve sample(Viewport viewport, boolean parallel, String adjusting, RenderWorker.Cancellation cancellation) {
+            cancellation.check();
+            if (series != null) {
+                return curveCache.get(id, params, viewport, () -> series.sample(viewport));
+            } else if (implicit != null && name.equals(adjusting)) {
+                return MarchingSquares.trace(cancellation.guard(implicit), viewport, MarchingSquares.CELL * PREVIEW_STEP, parallel);
+            } else if (implicit != null) {
+                return curveCache.get(id, params, viewport, () -> MarchingSquares.trace(cancellation.guard(implicit), viewport, parallel));
+            } else if (name.equals(adjusting)) {
+                return AdaptiveSampler.samplePreview(cancellation.guard(function), viewport, PREVIEW_STEP);
+            } else {
+                return curveCache.get(id, params, viewport, cancellation.guard(function), parallel);
+            }
+        }
+    }
+
+    /**
+     * Switches between sampling and intersection search on the calling thread
+     * and on the common ForkJoin pool. Both modes draw the same image.
+     *
+     * @param parallel whether to compute in parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+        repaint();
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Switches between drawing curves through Java2D and through {@link LineRasterizer}, which writes
+     * the pixels of the layer and tile images directly. The rasterizer is faster on the software
+     * pipeline, and its lines differ from those of Java2D only in the coverage of edge pixels.
+     *
+     * @param fastRaster whether to draw curves with the line rasterizer
+     */
+    public void setFastRaster(boolean fastRaster) {
+        this.fastRaster = fastRaster;
+        layers.invalidateAll();
+        tiles.clear();
+        repaint();
+    }
+
+    public boolean isFastRaster() {
+        return fastRaster;
+    }
+
+    /**
+     * Shows or hides the roots, local extrema and inflection points of the explicit curves, and the
+     * areas between consecutive intersections of each pair of them, as markers that show their values
+     * when hovered. They are found for x within 500 of the origin, on a background
+     * thread, once per set of curve parameters, and appear once they are ready.
+     *
+     * @param visible whether to show the analysis markers
+     */
+    public void setAnalysisVisible(boolean visible) {
+        this.analysisVisible = visible;
+        repaint();
+    }
+
+    public boolean isAnalysisVisible() {
+        return analysisVisible;
+    }
+
+    public AnalysisCache getAnalysisCache() {
+        return analysisCache;
+    }
+
+    /**
+     * Drops all cached samples and layer images, so the next paint computes everything again.
+     */
+    public void clearCaches() {
+        curveCache.clear();
+        analysisCache.clear();
+        layers.invalidateAll();
+        tiles.clear();
+        requested = null;
+    }
+
+    /**
+     * Overlays a measured data series on the curves. It takes part in intersection search
+     * like any other curve.
+     *
+     * @param series the series to draw
+     */
+    public void addDataSeries(DataSeries series) {
+        dataSeries.add(series);
         repaint();
     }
 
+    /**
+     * Removes all data series from the panel.
+     */
+    public void clearDataSeries() {
+        dataSeries.clear();
+        repaint();
+    }
+
+    /**
+     * Adds a live series. While any is shown, the panel repaints at the stream frame rate
+     * whenever new samples are waiting, rather than once per sample. Streaming series do not
+     * take part in intersection search.
+     *
+     * @param stream the series to draw
+     */
+    public void addStreamingSeries(StreamingSeries stream) {
+        streams.add(stream);
+        streamTimer.start();
+        repaint();
+    }
+
+    public void removeStreamingSeries(StreamingSeries stream) {
+        streams.remove(stream);
+        if (streams.isEmpty()) {
+            streamTimer.stop();
+        }
+        repaint();
+    }
+
+    /**
+     * Sets how often the panel repaints while streaming series receive samples.
+     *
+     * @param framesPerSecond the frame rate
+     */
+    public void setStreamFrameRate(int framesPerSecond) {
+        int delay = Math.max(1, 1000 / framesPerSecond);
+        streamTimer.setDelay(delay);
+        streamTimer.setInitialDelay(delay);
+    }
+
+    private void repaintIfStreaming() {
+        for (StreamingSeries stream : streams) {
+            if (stream.hasPending()) {
+                repaint();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Shows or hides the overlay with frame timings and per-frame counters.
+     * While it is hidden and no JFR recording is running, frames are not measured.
+     *
+     * @param visible whether to show the overlay
+     */
+    public void setHudVisible(boolean visible) {
+        stats.setHudEnabled(visible);
+        repaint();
+    }
+
+    public RenderStats getRenderStats() {
+        return stats;
+    }
+
+    public CurveCache getCurveCache() {
+        return curveCache;
+    }
+
+    /**
+     * Returns the curves the panel can draw. Curves added to it are drawn once enabled;
+     * call {@link #repaint()} after changing them directly.
+     */
+    public CurveRegistry getRegistry() {
+        return registry;
+    }
+
+    public void updateSliders(String function, JSlider sliderA, JSlider sliderB, JSlider sliderC) {
+        CurveDescriptor curve = registry.get(function);
+        if (curve == null) {
+            return;
+        }
+        JSlider[] sliders = {sliderA, sliderB, sliderC};
+        for (int i = 0; i < sliders.length; i++) {
+            if (i < curve.getParameterNames().length) {
+                sliders[i].setValue((int) curve.getParameter(i));
+            } else {
+                sliders[i].setVisible(false);
+            }
+        }
+    }
+
+    public void setA(String function, double a) {
+        setParameter(function, 0, a);
+    }
+
+    public void setB(String function, double b) {
+        setParameter(function, 1, b);
+    }
+
     public void setC(String function, double c) {
-        switch (function) {
-            case "sin":
-                this.sinC = c;
-                break;
-            case "cos":
-                this.cosC = c;
-                break;
-            case "tan":
-                this.tanC = c;
-                break;
-            case "ctan":
-                this.ctanC = c;
-                break;
-            case "parabola":
-                this.parabolaC = c;
-                break;
-            case "hyperbola":
-                this.hyperbolaC = c;
-                break;
-            case "exp":
-                this.expC = c;
-                break;
-            case "log":
-                this.logC = c;
-                break;
+        setParameter(function, 2, c);
+    }
+
+    /**
+     * Sets a parameter of a function. Unknown functions and parameters the function does not name are ignored.
+     *
+     * @param function the function name
+     * @param index 0 for A, 1 for B and 2 for C
+     * @param value the new value
+     */
+    public void setParameter(String function, int index, double value) {
+        CurveDescriptor curve = registry.get(function);
+        if (curve != null) {
+            curve.setParameter(index, value);
+        }
+        scheduler.requestRender();
+    }
+
+    /**
+     * Enables or disables drawing of a function.
+     *
+     * @param function the function name
+     * @param drawn whether to draw the function
+     */
+    public void setDrawn(String function, boolean drawn) {
+        CurveDescriptor curve = registry.get(function);
+        if (curve != null) {
+            curve.setEnabled(drawn);
         }
         repaint();
     }
 
-    public void setRadius(double radius) {
-        this.radius = radius;
+    /**
+     * Returns whether a function is drawn.
+     *
+     * @param function the function name
+     */
+    public boolean isDrawn(String function) {
+        CurveDescriptor curve = registry.get(function);
+        return curve != null && curve.isEnabled();
+    }
+
+    /**
+     * Returns the parameters A, B and C of a function. C of the circle is its radius,
+     * and the ellipse reports the default C, as it does not use it.
+     *
+     * @param function the function name
+     * @return a new array with the parameters, or null for an unknown function
+     */
+    public double[] getParams(String function) {
+        CurveDescriptor curve = registry.get(function);
+        return curve == null ? null : curve.getParams();
+    }
+
+    /**
+     * Sets the formula of the custom curve. It is compiled to bytecode once the curve is enabled.
+     *
+     * @param expression the formula in x and the parameters A, B and C
+     * @throws IllegalArgumentException if the formula cannot be parsed
+     */
+    public void setExpression(String expression) {
+        setExpression("custom", expression);
+    }
+
+    public String getExpression() {
+        return registry.get("custom").getSource();
+    }
+
+    /**
+     * Sets the left-hand side F(x, y) of the user-defined implicit curve F(x, y) = 0.
+     * It is compiled to bytecode once the curve is enabled.
+     *
+     * @param expression the formula in x, y and the parameters A, B and C
+     * @throws IllegalArgumentException if the formula cannot be parsed
+     */
+    public void setImplicitExpression(String expression) {
+        setExpression("implicit", expression);
+    }
+
+    public String getImplicitExpression() {
+        return registry.get("implicit").getSource();
+    }
+
+    /**
+     * Sets the formula of a curve the user edits. It is compiled to bytecode once the curve is enabled.
+     *
+     * @param function the function name
+     * @param expression the formula
+     * @throws IllegalArgumentException if the formula cannot be parsed
+     */
+    public void setExpression(String function, String expression) {
+        CurveDescriptor curve = registry.get(function);
+        if (!expression.equals(curve.getSource())) {
+            curve.setExpression(expression);
+        }
         repaint();
     }
+
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * Sets the scale. Zooming with the mouse wheel then steps through discrete levels
+     * that are powers of 1.1 times this scale, so returning to a level reuses its tiles.
+     *
+     * @param scale the number of pixels per world unit
+     */
+    public void setScale(double scale) {
+        this.scale = scale;
+        this.baseScale = scale;
+        this.zoomLevel = 0;
+        scheduler.requestRender();
+    }
+
+    /**
+     * Moves the world origin away from the center of the panel.
+     *
+     * @param panX the horizontal offset in pixels, positive to the right
+     * @param panY the vertical offset in pixels, positive downwards
+     */
+    public void setPan(int panX, int panY) {
+        this.panX = panX;
+        this.panY = panY;
+        scheduler.requestRender();
+    }
+
+    public int getPanX() {
+        return panX;
+    }
+
+    public int getPanY() {
+        return panY;
+    }
+
+    public TileCache getTileCache() {
+        return tiles;
+    }
+
+    /**
+     * Marks whether a slider of a function is being dragged. While it is, the
+     * function is drawn as a coarse preview and intersections are not searched;
+     * the full-resolution pass follows once the slider settles.
+     *
+     * @param function the function name
+     * @param adjusting whether the slider is being dragged
+     */
+    public void setAdjusting(String function, boolean adjusting) {
+        if (adjusting) {
+            this.adjusting = function;
+        } else if (function.equals(this.adjusting)) {
+            this.adjusting = null;
+        }
+    }
+
+    public UpdateScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public double getRadius() {
+        return registry.get("circle").getParameter(2);
+    }
+
+    public void setRadius(double radius) {
+        setParameter("circle", 2, radius);
+    }
 }
@@ -2,11 +2,16 @@ import java.awt.*;
 import java.awt.geom.*;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Utility class for drawing functions and finding intersections.
  */
 public class GraphUtils {
+    private static final BasicStroke CURVE_STROKE = new BasicStroke(2.0f);
+    private static final ThreadLocal<SegmentDrawer> SEGMENT_DRAWER = ThreadLocal.withInitial(SegmentDrawer::new);
 
     /**
      * Draws a function on the given Graphics2D object.
@@ -14,27 +19,65 @@ public class GraphUtils {
      * @param g2 the Graphics2D object
      * @param color the color to draw the function
      * @param function the function to draw
-     * @param points the list to store the points of the function
      * @param width the width of the drawing area
      * @param height the height of the drawing area
      * @param scale the scale of the drawing
+     * @return the samples the function was drawn from
      */
-    public static void drawFunction(Graphics2D g2, Color color, Function<Double, Double> function, List<Point> points, int width, int height, double scale) {
+    public static SampledCurve drawFunction(Graphics2D g2, Color color, CurveFunction function, int width, int height, double scale) {
+        Viewport viewport = new Viewport(width, height, scale);
+        SampledCurve curve = AdaptiveSampler.sample(function, viewport);
+        drawSamples(g2, color, curve, viewport);
+        return curve;
+    }
+
+    /**
+     * Draws a sampled curve, leaving gaps at its breaks.
+     * The samples are reduced to at most four vertices per pixel column and clipped
+     * to the drawing area before they are drawn, without allocating per segment.
+     *
+     * @param g2 the Graphics2D object
+     * @param color the color to draw the curve
+     * @param curve the samples to draw
+     * @param viewport the viewport the curve was sampled for
+     * @return the number of vertices drawn
+     */
+    public static int drawSamples(Graphics2D g2, Color color, SampledCurve curve, Viewport viewport) {
         g2.setColor(color);
-        g2.setStroke(new BasicStroke(2.0f));
-
-        int numPoints = width * 50;
-        Point prevPoint = null;
-        for (int i = 0; i < numPoints; i++) {
-            double x = (i - width / 2) / scale;
-            double y = function.apply(x);
-            int xPos = i;
-            int yPos = (int) (height / 2 - scale * y);
-            points.add(new Point(xPos, yPos));
-            if (prevPoint != null && Math.abs(yPos - prevPoint.y) < height) {
-                g2.draw(new Line2D.Double(prevPoint.x, prevPoint.y, xPos, yPos));
-            }
-            prevPoint = new Point(xPos, yPos);
+        g2.setStroke(CURVE_STROKE);
+
+        SegmentDrawer drawer = SEGMENT_DRAWER.get();
+        drawer.g2 = g2;
+        try {
+            return M4Decimator.decimate(curve, viewport, drawer);
+        } finally {
+            drawer.g2 = null;
+        }
+    }
+
+    /**
+     * Draws the decimated polyline segment by segment through one reused Line2D.
+     * Java2D renders antialiased stroked lines as parallelograms, which is much
+     * faster than stroking a general path with joins.
+     */
+    private static final class SegmentDrawer implements M4Decimator.Sink {
+        private final Line2D.Double line = new Line2D.Double();
+        private Graphics2D g2;
+        private double lastX;
+        private double lastY;
+
+        @Override
+        public void moveTo(double x, double y) {
+            lastX = x;
+            lastY = y;
+        }
+
+        @Override
+        public void lineTo(double x, double y) {
+            line.setLine(lastX, lastY, x, y);
+            g2.draw(line);
+            lastX = x;
+            lastY = y;
         }
     }
 
@@ -47,18 +90,30 @@ public class GraphUtils {
      * @param scale the scale of the drawing
      */
     public static void drawTicks(Graphics2D g2, int width, int height, double scale) {
-        int centerX = width / 2;
-        int centerY = height / 2;
-        int pixelsPerTick = (int) (50 * scale);
+        drawTicks(g2, new Viewport(width, height, scale));
+    }
 
-        int startOffsetX = centerX % pixelsPerTick;
+    /**
+     * Draws the ticks on the axes of a viewport, which may be panned away from the world origin.
+     *
+     * @param g2 the Graphics2D object
+     * @param viewport the viewport of the drawing area
+     */
+    public static void drawTicks(Graphics2D g2, Viewport viewport) {
+        int width = viewport.getWidth();
+        int height = viewport.getHeight();
+        int centerX = viewport.getOriginX();
+        int centerY = viewport.getOriginY();
+        int pixelsPerTick = Math.max(1, (int) (50 * viewport.getScale()));
+
+        int startOffsetX = Math.floorMod(centerX, pixelsPerTick);
         for (int x = startOffsetX; x < width; x += pixelsPerTick) {
             g2.drawLine(x, centerY - 5, x, centerY + 5);
             int tickLabel = (x - centerX) / pixelsPerTick * 50;
             g2.drawString(Integer.toString(tickLabel), x - 10, centerY + 20);
         }
 
-        int startOffsetY = centerY % pixelsPerTick;
+        int startOffsetY = Math.floorMod(centerY, pixelsPerTick);
         for (int y = startOffsetY; y < height; y += pixelsPerTick) {
             g2.drawLine(centerX - 5, y, centerX + 5, y);
             int tickLabel = (centerY - y) / pixelsPerTick * 50;
@@ -69,86 +124,169 @@ public class GraphUtils {
     /**
      * Finds all intersections between pairs of functions.
      *
-     * @param intersections the list to store the intersection points
-     * @param functionPoints the list of lists of points for each function
+     * @param intersections the set to store the intersection points
      * @param functions the list of functions
      * @param width the width of the drawing area
      * @param height the height of the drawing area
      * @param scale the scale of the drawing
      */
-    public static void findAllIntersections(List<GraphPanel.IntersectionPoint> intersections, List<List<Point>> functionPoints, List<Function<Double, Double>> functions, int width, int height, double scale) {
-        for (int i = 0; i < functionPoints.size(); i++) {
-            for (int j = i + 1; j < functionPoints.size(); j++) {
-                findIntersections(intersections, functionPoints.get(i), functionPoints.get(j), functions.get(i), functions.get(j), width, height, scale);
-            }
-        }
+    public static void findAllIntersections(IntersectionSet intersections, List<CurveFunction> functions, int width, int height, double scale) {
+        findAllIntersections(intersections, functions, width, height, scale, false);
     }
 
     /**
-     * Finds intersections between two functions.
+     * Finds all intersections between pairs of functions, optionally searching the pairs in parallel.
+     * The intersections are stored in the same order in both modes.
      *
-     * @param intersections the list to store the intersection points
-     * @param first the points of the first function
-     * @param second the points of the second function
-     * @param firstFunction the first function
-     * @param secondFunction the second function
+     * @param intersections the set to store the intersection points
+     * @param functions the list of functions
      * @param width the width of the drawing area
      * @param height the height of the drawing area
      * @param scale the scale of the drawing
+     * @param parallel whether to search the pairs on the common ForkJoin pool
      */
-    public static void findIntersections(List<GraphPanel.IntersectionPoint> intersections, List<Point> first, List<Point> second, Function<Double, Double> firstFunction, Function<Double, Double> secondFunction, int width, int height, double scale) {
-        for (int i = 1; i < first.size(); i++) {
-            if ((first.get(i-1).y - second.get(i-1).y) * (first.get(i).y - second.get(i).y) <= 0) {
-                int midX = (first.get(i).x + first.get(i-1).x) / 2;
-                double xValue = (midX - width / 2) / scale;
-                double firstY = firstFunction.apply(xValue);
-                double secondY = secondFunction.apply(xValue);
-                double yValue = (firstY + secondY) / 2;
-                int midY = (int) (height / 2 - scale * yValue);
-                intersections.add(new GraphPanel().new IntersectionPoint(midX, midY, xValue, yValue));
-            }
-        }
+    public static void findAllIntersections(IntersectionSet intersections, List<CurveFunction> functions, int width, int height, double scale, boolean parallel) {
+        findAllIntersections(intersections, functions, Collections.emptyList(), Collections.emptyList(), width, height, scale, parallel);
     }
 
     /**
-     * Draws an ellipse on the given Graphics2D object.
+     * Finds all intersections between pairs of explicit and implicit curves, optionally searching
+     * the pairs in parallel. Implicit curves are numbered after the explicit ones, and pairs with
+     * an implicit curve are searched along its traced polylines.
      *
-     * @param g2 the Graphics2D object
-     * @param points the list to store the points of the ellipse
+     * @param intersections the set to store the intersection points
+     * @param functions the explicit curves
+     * @param implicits the implicit curves
+     * @param polylines the polylines traced from each implicit curve
      * @param width the width of the drawing area
      * @param height the height of the drawing area
-     * @param sinA the semi-major axis of the ellipse
-     * @param sinB the semi-minor axis of the ellipse
      * @param scale the scale of the drawing
+     * @param parallel whether to search the pairs on the common ForkJoin pool
      */
-    public static void drawEllipse(Graphics2D g2, List<Point> points, int width, int height, double sinA, double sinB, double scale) {
-        g2.setColor(Color.PINK);
-        int x = width / 2 - (int) (sinA * scale);
-        int y = height / 2 - (int) (sinB * scale);
-        int ellipseWidth = 2 * (int) (sinA * scale);
-        int ellipseHeight = 2 * (int) (sinB * scale);
-        g2.drawOval(x, y, ellipseWidth, ellipseHeight);
-        points.add(new Point(x, y));
+    public static void findAllIntersections(IntersectionSet intersections, List<CurveFunction> functions,
+                                            List<ImplicitFunction> implicits, List<SampledCurve> polylines,
+                                            int width, int height, double scale, boolean parallel) {
+        findAllIntersections(intersections, functions, implicits, polylines, new Viewport(width, height, scale), parallel);
     }
 
     /**
-     * Draws a circle on the given Graphics2D object.
+     * Finds all intersections between pairs of explicit and implicit curves in a viewport,
+     * which may be panned away from the world origin.
+     * <p>
+     * Every explicit curve is evaluated once at every pixel column, and pairs are searched
+     * only on the runs of intervals where their {@link CurveBounds} overlap, which finds the same
+     * points as searching every pair at every column. With many curves most pairs never come
+     * close in the viewport and cost no more than comparing their bounds.
      *
-     * @param g2 the Graphics2D object
-     * @param points the list to store the points of the circle
+     * @param intersections the set to store the intersection points
+     * @param functions the explicit curves
+     * @param implicits the implicit curves
+     * @param polylines the polylines traced from each implicit curve
+     * @param viewport the viewport to search in
+     * @param parallel whether to search the pairs on the common ForkJoin pool
+     */
+    public static void findAllIntersections(IntersectionSet intersections, List<CurveFunction> functions,
+                                            List<ImplicitFunction> implicits, List<SampledCurve> polylines,
+                                            Viewport viewport, boolean parallel) {
+        int count = functions.size() + implicits.size();
+        int width = viewport.getWidth();
+        double fromX = viewport.toWorldX(0);
+        double toX = viewport.toWorldX(width);
+        CurveBounds[] bounds = new CurveBounds[functions.size()];
+        IntStream indices = IntStream.range(0, bounds.length);
+        (parallel ? indices.parallel() : indices).forEach(i ->
+                bounds[i] = new CurveBounds(functions.get(i), fromX, toX, width));
+
+        if (!parallel) {
+            for (int i = 0; i < count; i++) {
+                for (int j = i + 1; j < count; j++) {
+                    findPair(intersections, functions, bounds, implicits, polylines, i, j, viewport);
+                }
+            }
+            return;
+        }
+
+        // One task per first curve keeps the pairs in the same order as the sequential loop.
+        List<IntersectionSet> results = IntStream.range(0, count)
+                .parallel()
+                .mapToObj(i -> {
+                    IntersectionSet found = new IntersectionSet(16);
+                    for (int j = i + 1; j < count; j++) {
+                        findPair(found, functions, bounds, implicits, polylines, i, j, viewport);
+                    }
+                    return found;
+                })
+                .collect(Collectors.toList());
+        for (IntersectionSet found : results) {
+            intersections.addAll(found);
+        }
+    }
+
+    private static void findPair(IntersectionSet intersections, List<CurveFunction> functions, CurveBounds[] bounds,
+                                 List<ImplicitFunction> implicits, List<SampledCurve> polylines,
+                                 int first, int second, Viewport viewport) {
+        int explicit = functions.size();
+        double scale = viewport.getScale();
+        IntersectionFinder finder = new IntersectionFinder(1e-3 / scale, 0.5 / scale);
+        if (second < explicit) {
+            CurveBounds a = bounds[first];
+            CurveBounds b = bounds[second];
+            int intervals = a.getIntervals();
+            for (int k = 0; k < intervals; k++) {
+                if (!a.overlaps(b, k)) {
+                    continue;
+                }
+                int end = k;
+                while (end + 1 < intervals && a.overlaps(b, end + 1)) {
+                    end++;
+                }
+                finder.findOnGrid(functions.get(first), functions.get(second), a.getValues(), b.getValues(),
+                        a.getFromX(), a.getStep(), a.firstStep(k), a.lastStep(end), first, second, intersections);
+                k = end;
+            }
+            return;
+        }
+        ImplicitFunction other;
+        if (first < explicit) {
+            CurveFunction function = functions.get(first);
+            other = (x, y) -> y - function.apply(x);
+        } else {
+            other = implicits.get(first - explicit);
+        }
+        finder.findOnPolyline(implicits.get(second - explicit), polylines.get(second - explicit), other,
+                first, second, intersections);
+    }
+
+    /**
+     * Finds the intersections between two functions in the visible x range.
+     * Crossings are bracketed at every pixel column and refined to a thousandth of a pixel.
+     *
+     * @param intersections the set to store the intersection points
+     * @param functions the list of functions
+     * @param first the index of the first function
+     * @param second the index of the second function
      * @param width the width of the drawing area
      * @param height the height of the drawing area
-     * @param sinA the x-coordinate of the circle center
-     * @param sinB the y-coordinate of the circle center
-     * @param radius the radius of the circle
      * @param scale the scale of the drawing
      */
-    public static void drawCircle(Graphics2D g2, List<Point> points, int width, int height, double sinA, double sinB, double radius, double scale) {
-        g2.setColor(Color.BLACK);
-        int r = (int) (radius * scale);
-        int x = width / 2 - r + (int) (sinA * scale);
-        int y = height / 2 - r + (int) (sinB * scale);
-        g2.drawOval(x, y, 2 * r, 2 * r);
-        points.add(new Point(x + r, y + r));
+    public static void findIntersections(IntersectionSet intersections, List<CurveFunction> functions, int first, int second, int width, int height, double scale) {
+        findIntersections(intersections, functions, first, second, new Viewport(width, height, scale));
+    }
+
+    /**
+     * Finds the intersections between two functions in the x range of a viewport.
+     *
+     * @param intersections the set to store the intersection points
+     * @param functions the list of functions
+     * @param first the index of the first function
+     * @param second the index of the second function
+     * @param viewport the viewport to search in
+     */
+    public static void findIntersections(IntersectionSet intersections, List<CurveFunction> functions, int first, int second, Viewport viewport) {
+        double scale = viewport.getScale();
+        int width = viewport.getWidth();
+        IntersectionFinder finder = new IntersectionFinder(1e-3 / scale, 0.5 / scale);
+        finder.find(functions.get(first), functions.get(second), viewport.toWorldX(0), viewport.toWorldX(width), width,
+                first, second, intersections);
     }
 }
@@ -0,0 +1,48 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Renders plot specs to images with the drawing code of {@link GraphPanel}, without a display.
+ * Every thread keeps its own panel and image buffer, which are reused across renders.
+ */
+public final class HeadlessRenderer {
+    private final ThreadLocal<GraphPanel> panels = ThreadLocal.withInitial(GraphPanel::new);
+    private final ThreadLocal<BufferedImage> images = new ThreadLocal<>();
+
+    /**
+     * Renders a plot into the image buffer of the calling thread.
+     * The image is overwritten by the next render on the same thread.
+     *
+     * @param spec the plot to render
+     * @return the rendered image
+     */
+    public BufferedImage render(PlotSpec spec) {
+        BufferedImage image = render(spec, panels.get(), images.get());
+        images.set(image);
+        return image;
+    }
+
+    /**
+     * Renders a plot with a given panel into a given image buffer, for callers that manage the
+     * panels and buffers themselves. Neither may be used by another thread during the render.
+     *
+     * @param spec the plot to render
+     * @param panel the panel to draw with; it is reconfigured to the spec
+     * @param image the buffer to reuse, or null; it is only reused if it has the size of the spec
+     * @return the rendered image, which is the given buffer if it was reused
+     */
+    public static BufferedImage render(PlotSpec spec, GraphPanel panel, BufferedImage image) {
+        spec.applyTo(panel);
+        if (image == null || image.getWidth() != spec.getWidth() || image.getHeight() != spec.getHeight()) {
+            image = new BufferedImage(spec.getWidth(), spec.getHeight(), BufferedImage.TYPE_INT_RGB);
+        }
+
+        Graphics2D g2 = image.createGraphics();
+        try {
+            panel.paint(g2);
+        } finally {
+            g2.dispose();
+        }
+        return image;
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * Creates the implicit curve of a family of curves for a set of parameters.
+ */
+@FunctionalInterface
+public interface ImplicitFactory {
+    /**
+     * Creates the curve for the given parameters.
+     *
+     * @param a the parameter A
+     * @param b the parameter B
+     * @param c the parameter C
+     * @return the implicit function of the curve
+     */
+    ImplicitFunction create(double a, double b, double c);
+}
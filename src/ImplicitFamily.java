@@ -0,0 +1,52 @@
+import java.awt.*;
+
+/**
+ * The built-in implicit curve families F(x, y) = 0 with their parameters A, B and C.
+ */
+public enum ImplicitFamily implements ImplicitFactory {
+    /**
+     * Ellipse x^2/A^2 + y^2/B^2 = 1 centred on the origin.
+     */
+    ELLIPSE("ellipse", Color.PINK) {
+        @Override
+        public ImplicitFunction create(double a, double b, double c) {
+            return (x, y) -> x * x / (a * a) + y * y / (b * b) - 1;
+        }
+    },
+    /**
+     * Circle around (A, -B) with radius C. B is measured downwards, which keeps the circle
+     * where the panel has always drawn it.
+     */
+    CIRCLE("circle", Color.BLACK) {
+        @Override
+        public ImplicitFunction create(double a, double b, double c) {
+            return (x, y) -> (x - a) * (x - a) + (y + b) * (y + b) - c * c;
+        }
+    },
+    /**
+     * Hyperbola x^2/A^2 - y^2/B^2 = C with both branches: opening sideways for positive C,
+     * up and down for negative C, and degenerating to its asymptotes for C = 0.
+     */
+    CONIC("conic", new Color(200, 120, 0)) {
+        @Override
+        public ImplicitFunction create(double a, double b, double c) {
+            return (x, y) -> x * x / (a * a) - y * y / (b * b) - c;
+        }
+    };
+
+    private final String id;
+    private final Color color;
+
+    ImplicitFamily(String id, Color color) {
+        this.id = id;
+        this.color = color;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Color getColor() {
+        return color;
+    }
+}
@@ -0,0 +1,14 @@
+/**
+ * A curve given implicitly as the set of points where F(x, y) = 0.
+ */
+@FunctionalInterface
+public interface ImplicitFunction {
+    /**
+     * Evaluates F at a point.
+     *
+     * @param x the x value
+     * @param y the y value
+     * @return the value of F, which changes sign across the curve
+     */
+    double apply(double x, double y);
+}
@@ -0,0 +1,322 @@
+/**
+ * Finds the x values where two curves cross.
+ * Sign changes of f(x) - g(x) are bracketed on a grid and each bracket is refined
+ * with Brent's method. Brackets around poles are rejected because the difference
+ * grows instead of vanishing there, touching without crossing is not reported, and
+ * neither are stretches where the curves coincide.
+ * <p>
+ * Implicit curves are searched along their traced polylines instead of a grid in x;
+ * see {@link #findOnPolyline}.
+ */
+public final class IntersectionFinder {
+    private static final int MAX_ITERATIONS = 100;
+    private static final int NEWTON_ITERATIONS = 8;
+
+    /**
+     * Multiples of the unit in the last place of the larger value within which a difference counts as zero.
+     */
+    private static final double ZERO_ULPS = 4;
+    private static final CurveFunction ZERO = x -> 0;
+
+    private final double tolerance;
+    private final double mergeDistance;
+
+    /**
+     * Creates a finder.
+     *
+     * @param tolerance the accuracy in x to refine the roots to
+     * @param mergeDistance roots of the same pair closer than this in x are reported once
+     */
+    public IntersectionFinder(double tolerance, double mergeDistance) {
+        this.tolerance = tolerance;
+        this.mergeDistance = mergeDistance;
+    }
+
+    /**
+     * Finds the intersections of two curves between two x values.
+     *
+     * @param first the first curve
+     * @param second the second curve
+     * @param fromX the start of the range to search
+     * @param toX the end of the range to search
+     * @param steps the number of grid intervals to bracket roots on
+     * @param firstIndex the index of the first curve, stored with each point
+     * @param secondIndex the index of the second curve, stored with each point
+     * @param out the set to store the intersection points in
+     */
+    public void find(CurveFunction first, CurveFunction second, double fromX, double toX, int steps,
+                     int firstIndex, int secondIndex, IntersectionSet out) {
+        double step = (toX - fromX) / steps;
+        double[] firstValues = new double[steps + 1];
+        double[] secondValues = new double[steps + 1];
+        for (int i = 0; i <= steps; i++) {
+            double x = fromX + i * step;
+            firstValues[i] = first.apply(x);
+            secondValues[i] = second.apply(x);
+        }
+        findOnGrid(first, second, firstValues, secondValues, fromX, step, 0, steps, firstIndex, secondIndex, out);
+    }
+
+    /**
+     * Finds the intersections of two curves on a part of a grid on which both were evaluated,
+     * such as the intervals where their {@link CurveBounds} overlap.
+     *
+     * @param first the first curve
+     * @param second the second curve
+     * @param firstValues the values of the first curve at the grid points
+     * @param secondValues the values of the second curve at the grid points
+     * @param fromX the x value of grid point 0
+     * @param step the distance between grid points
+     * @param fromStep the first grid point to search from
+     * @param toStep the last grid point to search to
+     * @param firstIndex the index of the first curve, stored with each point
+     * @param secondIndex the index of the second curve, stored with each point
+     * @param out the set to store the intersection points in
+     */
+    public void findOnGrid(CurveFunction first, CurveFunction second, double[] firstValues, double[] secondValues,
+                           double fromX, double step, int fromStep, int toStep,
+                           int firstIndex, int secondIndex, IntersectionSet out) {
+        findOnGrid(first, second, firstValues, secondValues, null, fromX, step, fromStep, toStep,
+                firstIndex, secondIndex, out);
+    }
+
+    /**
+     * Finds the intersections of two curves on a part of a grid on which both were evaluated,
+     * treating differences within a given noise of zero as zero.
+     * <p>
+     * Where the difference of the curves is zero at two or more consecutive grid points, the curves
+     * coincide there, as identical curves or a curve touching another along a flat stretch do, and
+     * nothing is reported for the run. A zero at a single grid point is reported as an intersection.
+     * A difference counts as zero if it is within a few units in the last place of the larger value,
+     * or within its given noise.
+     *
+     * @param first the first curve
+     * @param second the second curve
+     * @param firstValues the values of the first curve at the grid points
+     * @param secondValues the values of the second curve at the grid points
+     * @param noise the rounding error of the difference at each grid point, or null if it is only that of the values
+     * @param fromX the x value of grid point 0
+     * @param step the distance between grid points
+     * @param fromStep the first grid point to search from
+     * @param toStep the last grid point to search to
+     * @param firstIndex the index of the first curve, stored with each point
+     * @param secondIndex the index of the second curve, stored with each point
+     * @param out the set to store the intersection points in
+     */
+    public void findOnGrid(CurveFunction first, CurveFunction second, double[] firstValues, double[] secondValues,
+                           double[] noise, double fromX, double step, int fromStep, int toStep,
+                           int firstIndex, int secondIndex, IntersectionSet out) {
+        double lastRoot = Double.NaN;
+        double xa = Double.NaN;
+        double ha = Double.NaN;
+        boolean zeroBefore = false;
+        boolean zero = isZero(firstValues, secondValues, noise, fromStep);
+        for (int i = fromStep; i <= toStep; i++) {
+            boolean zeroAfter = i < toStep && isZero(firstValues, secondValues, noise, i + 1);
+            double xb = fromX + i * step;
+            double hb = firstValues[i] - secondValues[i];
+            if (zero && (zeroBefore || zeroAfter)) {
+                // Part of a run where the curves coincide, which brackets nothing.
+                hb = Double.NaN;
+            }
+            double root = Double.NaN;
+            if (ha == 0) {
+                root = xa;
+            } else if (Double.isFinite(ha) && Double.isFinite(hb) && (ha < 0) != (hb < 0) && hb != 0) {
+                root = refine(first, second, xa, xb, ha, hb);
+            }
+            if (!Double.isNaN(root) && !(Math.abs(root - lastRoot) <= mergeDistance)) {
+                out.add(root, 0.5 * (first.apply(root) + second.apply(root)), firstIndex, secondIndex);
+                lastRoot = root;
+            }
+            xa = xb;
+            ha = hb;
+            zeroBefore = zero;
+            zero = zeroAfter;
+        }
+        if (ha == 0 && !(Math.abs(xa - lastRoot) <= mergeDistance)) {
+            out.add(xa, first.apply(xa), firstIndex, secondIndex);
+        }
+    }
+
+    /**
+     * Returns whether the difference of two curves at a grid point is zero within its rounding error.
+     */
+    private static boolean isZero(double[] firstValues, double[] secondValues, double[] noise, int i) {
+        double a = firstValues[i];
+        double b = secondValues[i];
+        double difference = Math.abs(a - b);
+        if (!Double.isFinite(difference)) {
+            return false;
+        }
+        return difference <= ZERO_ULPS * Math.ulp(Math.max(Math.abs(a), Math.abs(b)))
+                || noise != null && difference <= noise[i];
+    }
+
+    /**
+     * Finds the intersections of an implicit curve F(x, y) = 0 with another curve G(x, y) = 0.
+     * Sign changes of G between consecutive vertices of the polylines traced from F are bracketed
+     * and located on their segment with Brent's method, rejecting poles as in {@link #find}.
+     * Each point is then polished with Newton's method on both equations, which moves it from the
+     * polyline onto the exact curve, unless that fails to converge close by.
+     * An explicit curve y = g(x) is searched as G(x, y) = y - g(x).
+     *
+     * @param curve the implicit function F
+     * @param polyline the polylines traced from F, with breaks between them
+     * @param other the implicit function G of the other curve
+     * @param firstIndex the index of the first curve, stored with each point
+     * @param secondIndex the index of the second curve, stored with each point
+     * @param out the set to store the intersection points in
+     */
+    public void findOnPolyline(ImplicitFunction curve, SampledCurve polyline, ImplicitFunction other,
+                               int firstIndex, int secondIndex, IntersectionSet out) {
+        int from = out.size();
+        double xa = 0;
+        double ya = 0;
+        double ga = Double.NaN;
+        for (int i = 0; i < polyline.size(); i++) {
+            if (polyline.isBreak(i)) {
+                ga = Double.NaN;
+                continue;
+            }
+            double xb = polyline.getX(i);
+            double yb = polyline.getY(i);
+            double gb = other.apply(xb, yb);
+            if (gb == 0) {
+                addPolished(curve, other, xb, yb, firstIndex, secondIndex, from, out);
+            } else if (Double.isFinite(ga) && ga != 0 && Double.isFinite(gb) && (ga < 0) != (gb < 0)) {
+                double length = Math.hypot(xb - xa, yb - ya);
+                double ux = (xb - xa) / length;
+                double uy = (yb - ya) / length;
+                double x0 = xa;
+                double y0 = ya;
+                double s = refine(t -> other.apply(x0 + t * ux, y0 + t * uy), ZERO, 0, length, ga, gb);
+                if (!Double.isNaN(s)) {
+                    addPolished(curve, other, x0 + s * ux, y0 + s * uy, firstIndex, secondIndex, from, out);
+                }
+            }
+            xa = xb;
+            ya = yb;
+            ga = gb;
+        }
+    }
+
+    /**
+     * Moves a point found on a polyline onto the intersection of both curves and stores it,
+     * unless a point of the same pair already lies within the merge distance.
+     */
+    private void addPolished(ImplicitFunction f, ImplicitFunction g, double x, double y,
+                             int firstIndex, int secondIndex, int from, IntersectionSet out) {
+        double px = x;
+        double py = y;
+        double h = tolerance;
+        for (int iteration = 0; iteration < NEWTON_ITERATIONS; iteration++) {
+            double fv = f.apply(px, py);
+            double gv = g.apply(px, py);
+            double fx = (f.apply(px + h, py) - f.apply(px - h, py)) / (2 * h);
+            double fy = (f.apply(px, py + h) - f.apply(px, py - h)) / (2 * h);
+            double gx = (g.apply(px + h, py) - g.apply(px - h, py)) / (2 * h);
+            double gy = (g.apply(px, py + h) - g.apply(px, py - h)) / (2 * h);
+            double det = fx * gy - fy * gx;
+            if (!(Math.abs(det) > 0)) {
+                break;
+            }
+            double dx = (fv * gy - fy * gv) / det;
+            double dy = (fx * gv - fv * gx) / det;
+            px -= dx;
+            py -= dy;
+            if (Math.hypot(dx, dy) <= tolerance) {
+                break;
+            }
+        }
+        if (Double.isFinite(px) && Double.isFinite(py) && Math.hypot(px - x, py - y) <= 4 * mergeDistance) {
+            x = px;
+            y = py;
+        }
+        for (int k = from; k < out.size(); k++) {
+            if (Math.abs(out.getX(k) - x) <= mergeDistance && Math.abs(out.getY(k) - y) <= mergeDistance) {
+                return;
+            }
+        }
+        out.add(x, y, firstIndex, secondIndex);
+    }
+
+    /**
+     * Refines a bracketed root, returning NaN if the bracket holds a pole instead.
+     */
+    private double refine(CurveFunction first, CurveFunction second, double a, double b, double fa, double fb) {
+        double root = brent(first, second, a, b, fa, fb);
+        double residual = Math.abs(first.apply(root) - second.apply(root));
+        if (!(residual <= Math.min(Math.abs(fa), Math.abs(fb)))) {
+            return Double.NaN;
+        }
+        return root;
+    }
+
+    /**
+     * Brent's method for a root of first - second in [a, b], where fa and fb have opposite signs.
+     */
+    private double brent(CurveFunction first, CurveFunction second, double a, double b, double fa, double fb) {
+        double c = b;
+        double fc = fb;
+        double d = 0;
+        double e = 0;
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            if ((fb > 0 && fc > 0) || (fb < 0 && fc < 0)) {
+                c = a;
+                fc = fa;
+                d = b - a;
+                e = d;
+            }
+            if (Math.abs(fc) < Math.abs(fb)) {
+                a = b;
+                b = c;
+                c = a;
+                fa = fb;
+                fb = fc;
+                fc = fa;
+            }
+            double tol = 2 * Math.ulp(b) + 0.5 * tolerance;
+            double xm = 0.5 * (c - b);
+            if (Math.abs(xm) <= tol || fb == 0) {
+                return b;
+            }
+            if (Math.abs(e) >= tol && Math.abs(fa) > Math.abs(fb)) {
+                double s = fb / fa;
+                double p;
+                double q;
+                if (a == c) {
+                    p = 2 * xm * s;
+                    q = 1 - s;
+                } else {
+                    double r = fb / fc;
+                    q = fa / fc;
+                    p = s * (2 * xm * q * (q - r) - (b - a) * (r - 1));
+                    q = (q - 1) * (r - 1) * (s - 1);
+                }
+                if (p > 0) {
+                    q = -q;
+                }
+                p = Math.abs(p);
+                if (2 * p < Math.min(3 * xm * q - Math.abs(tol * q), Math.abs(e * q))) {
+                    e = d;
+                    d = p / q;
+                } else {
+                    d = xm;
+                    e = d;
+                }
+            } else {
+                d = xm;
+                e = d;
+            }
+            a = b;
+            fa = fb;
+            b += Math.abs(d) > tol ? d : Math.copySign(tol, xm);
+            fb = first.apply(b) - second.apply(b);
+            if (Double.isNaN(fb)) {
+                return Double.NaN;
+            }
+        }
+        return b;
+    }
+}
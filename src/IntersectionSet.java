@@ -0,0 +1,88 @@
+import java.util.Arrays;
+
+/**
+ * Intersection points of pairs of curves, stored in primitive arrays.
+ * Each point keeps its world coordinates and the indices of the two curves it belongs to.
+ */
+public final class IntersectionSet {
+    private double[] xs;
+    private double[] ys;
+    private int[] firstCurves;
+    private int[] secondCurves;
+    private int size;
+
+    public IntersectionSet() {
+        this(64);
+    }
+
+    /**
+     * Creates an empty set.
+     *
+     * @param capacity the initial number of points to reserve space for
+     */
+    public IntersectionSet(int capacity) {
+        int length = Math.max(capacity, 16);
+        xs = new double[length];
+        ys = new double[length];
+        firstCurves = new int[length];
+        secondCurves = new int[length];
+    }
+
+    /**
+     * Appends an intersection point.
+     *
+     * @param x the x value of the point
+     * @param y the y value of the point
+     * @param firstCurve the index of the first curve
+     * @param secondCurve the index of the second curve
+     */
+    public void add(double x, double y, int firstCurve, int secondCurve) {
+        if (size == xs.length) {
+            int length = size * 2;
+            xs = Arrays.copyOf(xs, length);
+            ys = Arrays.copyOf(ys, length);
+            firstCurves = Arrays.copyOf(firstCurves, length);
+            secondCurves = Arrays.copyOf(secondCurves, length);
+        }
+        xs[size] = x;
+        ys[size] = y;
+        firstCurves[size] = firstCurve;
+        secondCurves[size] = secondCurve;
+        size++;
+    }
+
+    /**
+     * Appends all points of another set.
+     *
+     * @param other the set to append
+     */
+    public void addAll(IntersectionSet other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.xs[i], other.ys[i], other.firstCurves[i], other.secondCurves[i]);
+        }
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getX(int index) {
+        return xs[index];
+    }
+
+    public double getY(int index) {
+        return ys[index];
+    }
+
+    public int getFirstCurve(int index) {
+        return firstCurves[index];
+    }
+
+    public int getSecondCurve(int index) {
+        return secondCurves[index];
+    }
+}
@@ -0,0 +1,113 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Composites named layers that are rendered into cached offscreen images.
+ * A layer is rendered again only when the key describing its inputs changes,
+ * otherwise its image is just drawn.
+ */
+public final class LayerCompositor {
+    private final Map<String, Layer> layers = new HashMap<>();
+    private final Set<String> used = new HashSet<>();
+    private long renders;
+
+    /**
+     * Starts a new frame. Layers that are not drawn until {@link #endFrame()} are released.
+     */
+    public void beginFrame() {
+        used.clear();
+    }
+
+    /**
+     * Releases the images of layers that were not drawn in the current frame.
+     */
+    public void endFrame() {
+        layers.keySet().retainAll(used);
+    }
+
+    /**
+     * Draws a layer, rendering it first if it is missing or its key changed.
+     *
+     * @param g2 the Graphics2D object to draw the layer on
+     * @param name the name of the layer
+     * @param key the inputs the layer is rendered from, compared with equals
+     * @param width the width of the layer
+     * @param height the height of the layer
+     * @param painter renders the layer into a cleared image
+     */
+    public void drawLayer(Graphics2D g2, String name, Object key, int width, int height, Consumer<Graphics2D> painter) {
+        drawLayer(g2, name, key, width, height, (layer, image) -> painter.accept(layer));
+    }
+
+    /**
+     * Draws a layer like {@link #drawLayer(Graphics2D, String, Object, int, int, Consumer)},
+     * passing the painter the layer image as well, for painters that write its pixels directly.
+     *
+     * @param g2 the Graphics2D object to draw the layer on
+     * @param name the name of the layer
+     * @param key the inputs the layer is rendered from, compared with equals
+     * @param width the width of the layer
+     * @param height the height of the layer
+     * @param painter renders the layer into a cleared image, given graphics drawing into the image and the image
+     */
+    public void drawLayer(Graphics2D g2, String name, Object key, int width, int height,
+                          BiConsumer<Graphics2D, BufferedImage> painter) {
+        used.add(name);
+        Layer layer = layers.get(name);
+        if (layer == null || layer.image.getWidth() != width || layer.image.getHeight() != height) {
+            layer = new Layer(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE));
+            layers.put(name, layer);
+        } else if (Objects.equals(layer.key, key)) {
+            g2.drawImage(layer.image, 0, 0, null);
+            return;
+        }
+
+        Graphics2D layerGraphics = layer.image.createGraphics();
+        try {
+            layerGraphics.setComposite(AlphaComposite.Clear);
+            layerGraphics.fillRect(0, 0, width, height);
+            layerGraphics.setComposite(AlphaComposite.SrcOver);
+            layerGraphics.setFont(g2.getFont());
+            layerGraphics.setColor(g2.getColor());
+            layerGraphics.setRenderingHints(g2.getRenderingHints());
+            painter.accept(layerGraphics, layer.image);
+        } finally {
+            layerGraphics.dispose();
+        }
+        layer.key = key;
+        renders++;
+        g2.drawImage(layer.image, 0, 0, null);
+    }
+
+    /**
+     * Drops all cached layer images.
+     */
+    public void invalidateAll() {
+        layers.clear();
+    }
+
+    /**
+     * Returns how many times a layer was rendered instead of reused.
+     *
+     * @return the number of layer renders
+     */
+    public long getRenders() {
+        return renders;
+    }
+
+    private static final class Layer {
+        private final BufferedImage image;
+        private Object key;
+
+        Layer(BufferedImage image) {
+            this.image = image;
+        }
+    }
+}
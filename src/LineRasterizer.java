@@ -0,0 +1,317 @@
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+/**
+ * Draws sampled curves straight into the int pixels of a {@link BufferedImage}, bypassing the
+ * Java2D shape pipeline that antialiased {@link java.awt.geom.Line2D} strokes go through.
+ * <p>
+ * Every segment of the decimated polyline is drawn as a band of the curve stroke width in the
+ * manner of Wu's lines: the band is walked along its major axis one pixel at a time, and each
+ * pixel across it is blended with the color in proportion to how much of the pixel the band covers.
+ * Segment ends get square caps as {@link BasicStroke#CAP_SQUARE} does, and unless the graphics ask for
+ * pure strokes, vertices are moved to pixel centers as Java2D normalizes antialiased strokes. The result
+ * differs from Java2D only in the coverage of the pixels along the edges of the band.
+ * <p>
+ * Images of the types {@code TYPE_INT_ARGB_PRE}, {@code TYPE_INT_ARGB} and {@code TYPE_INT_RGB}
+ * are drawn directly; other images, and graphics that do more than translate, fall back to Java2D.
+ * Writing the pixels of an image makes Java2D stop caching it in video memory, which costs nothing
+ * with the software pipeline this is meant for.
+ */
+public final class LineRasterizer implements M4Decimator.Sink {
+    /**
+     * Width of the curve stroke in pixels, as used by {@link GraphUtils#drawSamples}.
+     */
+    public static final double WIDTH = 2;
+
+    private static final double HALF_WIDTH = WIDTH / 2;
+    private static final double NORMALIZE_ROUNDING = 1e-3;
+    private static final ThreadLocal<LineRasterizer> RASTERIZERS = ThreadLocal.withInitial(LineRasterizer::new);
+
+    private int[] pixels;
+    private int stride;
+    private int width;
+    private int height;
+    private int type;
+    private double translateX;
+    private double translateY;
+    private boolean normalize;
+    private int red;
+    private int green;
+    private int blue;
+    private int alpha;
+    private int opaque;
+    private int colorRedBlue;
+    private int colorAlphaGreen;
+    private int pixelMask;
+    private double lastX;
+    private double lastY;
+    private final double[] rowCoverage = new double[(int) WIDTH + 2];
+
+    private LineRasterizer() {
+    }
+
+    /**
+     * Returns whether curves can be drawn directly into an image through a graphics object.
+     *
+     * @param image the image
+     * @param g2 graphics drawing into the image
+     */
+    public static boolean supports(BufferedImage image, Graphics2D g2) {
+        int type = image.getType();
+        boolean intPixels = type == BufferedImage.TYPE_INT_ARGB_PRE || type == BufferedImage.TYPE_INT_ARGB
+                || type == BufferedImage.TYPE_INT_RGB;
+        return intPixels && (g2.getTransform().getType() & ~AffineTransform.TYPE_TRANSLATION) == 0;
+    }
+
+    /**
+     * Draws a sampled curve like {@link GraphUtils#drawSamples}, writing the pixels of the image
+     * that the graphics object draws into. Only the translation of the graphics object is honoured,
+     * and the curve is clipped to the image rather than to the clip of the graphics.
+     *
+     * @param image the image to draw into
+     * @param g2 graphics drawing into the image, used for its translation and as the fallback
+     * @param color the color of the curve
+     * @param curve the samples to draw
+     * @param viewport the viewport the curve was sampled for
+     * @return the number of vertices drawn
+     */
+    public static int drawSamples(BufferedImage image, Graphics2D g2, Color color, SampledCurve curve, Viewport viewport) {
+        if (!supports(image, g2)) {
+            return GraphUtils.drawSamples(g2, color, curve, viewport);
+        }
+        LineRasterizer rasterizer = RASTERIZERS.get();
+        rasterizer.begin(image, g2.getTransform(), color,
+                g2.getRenderingHint(RenderingHints.KEY_STROKE_CONTROL) != RenderingHints.VALUE_STROKE_PURE);
+        try {
+            return M4Decimator.decimate(curve, viewport, rasterizer);
+        } finally {
+            rasterizer.pixels = null;
+        }
+    }
+
+    private void begin(BufferedImage image, AffineTransform transform, Color color, boolean normalize) {
+        DataBufferInt buffer = (DataBufferInt) image.getRaster().getDataBuffer();
+        pixels = buffer.getData();
+        stride = ((SinglePixelPackedSampleModel) image.getSampleModel()).getScanlineStride();
+        width = image.getWidth();
+        height = image.getHeight();
+        type = image.getType();
+        translateX = transform.getTranslateX();
+        translateY = transform.getTranslateY();
+        this.normalize = normalize;
+        red = color.getRed();
+        green = color.getGreen();
+        blue = color.getBlue();
+        alpha = color.getAlpha();
+        pixelMask = type == BufferedImage.TYPE_INT_RGB ? 0x00ffffff : 0xffffffff;
+        opaque = color.getRGB() & pixelMask;
+        colorRedBlue = red << 16 | blue;
+        colorAlphaGreen = 255 << 16 | green;
+    }
+
+    @Override
+    public void moveTo(double x, double y) {
+        lastX = device(x + translateX);
+        lastY = device(y + translateY);
+    }
+
+    @Override
+    public void lineTo(double x, double y) {
+        double x0 = lastX;
+        double y0 = lastY;
+        double x1 = device(x + translateX);
+        double y1 = device(y + translateY);
+        lastX = x1;
+        lastY = y1;
+        if (x0 == x1 && y0 == y1) {
+            return;
+        }
+        if (Math.abs(x1 - x0) >= Math.abs(y1 - y0)) {
+            band(x0, y0, x1, y1, false);
+        } else {
+            band(y0, x0, y1, x1, true);
+        }
+    }
+
+    /**
+     * Returns a device coordinate moved to the center of its pixel if strokes are normalized.
+     * Like Java2D, coordinates within a thousandth of a pixel of the next pixel move to that one.
+     */
+    private double device(double coordinate) {
+        return normalize ? Math.floor(coordinate + NORMALIZE_ROUNDING) + 0.5 : coordinate;
+    }
+
+    /**
+     * Draws a segment walked along its major axis a, with b across it. For steep segments a is y.
+     */
+    private void band(double a0, double b0, double a1, double b1, boolean steep) {
+        if (a0 > a1) {
+            double t = a0;
+            a0 = a1;
+            a1 = t;
+            t = b0;
+            b0 = b1;
+            b1 = t;
+        }
+        double slope = (b1 - b0) / (a1 - a0);
+        double secant = Math.sqrt(1 + slope * slope);
+        // The band is WIDTH thick across the segment, which is WIDTH * secant along the minor axis,
+        // and its square caps reach HALF_WIDTH beyond the ends, HALF_WIDTH / secant along the major axis.
+        double half = HALF_WIDTH * secant;
+        double start = a0 - HALF_WIDTH / secant;
+        double end = a1 + HALF_WIDTH / secant;
+        int majorLimit = steep ? height : width;
+        int minorLimit = steep ? width : height;
+
+        int first = Math.max(floor(start), 0);
+        int last = Math.min(floor(end), majorLimit - 1);
+        // Pixels are addressed by column p and row q along the axes of the segment.
+        int rowStep = steep ? 1 : stride;
+        if (slope == 0) {
+            level(b0, start, end, first, last, minorLimit, steep ? stride : 1, rowStep);
+            return;
+        }
+        for (int p = first; p <= last; p++) {
+            double from = Math.max(p, start);
+            double to = Math.min(p + 1, end);
+            double along = to - from;
+            if (along <= 0) {
+                continue;
+            }
+            double near = b0 + slope * (from - a0) - half;
+            double far = near + 2 * half;
+            double rise = slope * along;
+            double low = Math.min(rise, 0);
+            double high = Math.max(rise, 0);
+            // Rows between those that the edges cross lie wholly inside the band.
+            int nearLast = floor(near + high);
+            int farFirst = floor(far + low);
+            int q0 = Math.max(floor(near + low), 0);
+            int q1 = Math.min(floor(far + high), minorLimit - 1);
+            int column = steep ? p * stride : p;
+            for (int q = q0; q <= q1; q++) {
+                double covered = along;
+                if (q <= nearLast || q >= farFirst) {
+                    // The part of the pixel between the edges is the part below the far edge less the part below the near one.
+                    covered *= meanCoverage(far - q, rise) - meanCoverage(near - q, rise);
+                }
+                blend(column + q * rowStep, covered);
+            }
+        }
+    }
+
+    /**
+     * Draws a segment parallel to an axis, as normalized vertical and horizontal segments are.
+     * Such a band covers the same rows in every column, so their coverage is worked out once.
+     */
+    private void level(double center, double start, double end, int first, int last, int minorLimit,
+                       int columnStep, int rowStep) {
+        int q0 = Math.max(floor(center - HALF_WIDTH), 0);
+        int q1 = Math.min(floor(center + HALF_WIDTH), minorLimit - 1);
+        if (q0 > q1) {
+            return;
+        }
+        for (int q = q0; q <= q1; q++) {
+            rowCoverage[q - q0] = Math.min(q + 1, center + HALF_WIDTH) - Math.max(q, center - HALF_WIDTH);
+        }
+        for (int p = first; p <= last; p++) {
+            double along = Math.min(p + 1, end) - Math.max(p, start);
+            int column = p * columnStep;
+            for (int q = q0; q <= q1; q++) {
+                blend(column + q * rowStep, along * rowCoverage[q - q0]);
+            }
+        }
+    }
+
+    /**
+     * Returns the share of a pixel column that lies below an edge, averaged over the width of the column.
+     * The edge crosses the column at height u above the pixel's near side and rises by the given amount
+     * across it.
+     *
+     * @param u the height of the edge where it enters the column
+     * @param rise the change of the height across the column
+     */
+    private static double meanCoverage(double u, double rise) {
+        double v = u + rise;
+        if (u >= 0 && u <= 1 && v >= 0 && v <= 1) {
+            // The edge stays within the pixel, where the covered share grows linearly with its height.
+            return u + 0.5 * rise;
+        } else if (u >= 1 && v >= 1) {
+            return 1;
+        } else if (u <= 0 && v <= 0) {
+            return 0;
+        }
+        return (integratedCoverage(v) - integratedCoverage(u)) / rise;
+    }
+
+    /**
+     * Returns the integral of the coverage min(max(u, 0), 1) from 0 to u.
+     */
+    private static double integratedCoverage(double u) {
+        if (u <= 0) {
+            return 0;
+        }
+        return u < 1 ? 0.5 * u * u : u - 0.5;
+    }
+
+    /**
+     * Composites the color over a pixel with the given coverage, as {@link AlphaComposite#SrcOver} does.
+     * Premultiplied and opaque pixels are blended two channels at a time, with the red and blue channels
+     * in one int and the alpha and green channels in another.
+     */
+    private void blend(int index, double coverage) {
+        int a = (int) (coverage * alpha + 0.5);
+        if (a <= 0) {
+            return;
+        } else if (a == 255) {
+            pixels[index] = opaque;
+            return;
+        } else if (type == BufferedImage.TYPE_INT_ARGB) {
+            blendStraight(index, a);
+            return;
+        }
+        int inverse = 255 - a;
+        int pixel = pixels[index];
+        int redBlue = div255Pairs((pixel & 0x00ff00ff) * inverse + colorRedBlue * a);
+        int alphaGreen = div255Pairs(((pixel >>> 8) & 0x00ff00ff) * inverse + colorAlphaGreen * a);
+        pixels[index] = (alphaGreen << 8 | redBlue) & pixelMask;
+    }
+
+    /**
+     * Composites the color over a pixel of an image with straight, not premultiplied, alpha.
+     */
+    private void blendStraight(int index, int a) {
+        int pixel = pixels[index];
+        int da = div255((pixel >>> 24) * (255 - a));
+        int oa = a + da;
+        pixels[index] = oa << 24
+                | (red * a + ((pixel >> 16) & 0xff) * da) / oa << 16
+                | (green * a + ((pixel >> 8) & 0xff) * da) / oa << 8
+                | (blue * a + (pixel & 0xff) * da) / oa;
+    }
+
+    private static int floor(double value) {
+        int truncated = (int) value;
+        return value < truncated ? truncated - 1 : truncated;
+    }
+
+    /**
+     * Divides a product of two bytes by 255, rounding to nearest.
+     */
+    private static int div255(int value) {
+        value += 128;
+        return (value + (value >> 8)) >> 8;
+    }
+
+    /**
+     * Divides the 16 bit halves of an int, each a sum of products of bytes of at most 255 * 255,
+     * by 255 as {@link #div255} does, returning the quotients in the low bytes of the halves.
+     */
+    private static int div255Pairs(int pairs) {
+        pairs += 0x00800080;
+        return ((pairs + ((pairs >>> 8) & 0x00ff00ff)) >>> 8) & 0x00ff00ff;
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Reduces the samples of a curve to at most four vertices per pixel column:
+ * the first, the lowest, the highest and the last sample of the column, in sample order.
+ * A polyline through these vertices covers the same pixels as one through all samples,
+ * so it can be drawn with far fewer segments. The polyline is also clipped to a band
+ * slightly taller than the drawing area, so that segments to far-away samples near
+ * poles keep their slope but do not make the rasterizer walk millions of rows.
+ */
+public final class M4Decimator {
+    /**
+     * Receives the vertices of the decimated polyline in screen coordinates.
+     */
+    public interface Sink {
+        /**
+         * Starts a new continuous run at the given vertex.
+         */
+        void moveTo(double x, double y);
+
+        /**
+         * Continues the current run to the given vertex.
+         */
+        void lineTo(double x, double y);
+    }
+
+    /**
+     * Distance in pixels above and below the drawing area up to which the polyline is kept.
+     */
+    private static final double MARGIN = 16;
+
+    private M4Decimator() {
+    }
+
+    /**
+     * Emits the decimated polyline of a sampled curve. Every break of the curve starts a new run,
+     * and so does every re-entry of the polyline into the band around the drawing area.
+     *
+     * @param curve the samples to decimate
+     * @param viewport the viewport the curve was sampled for
+     * @param sink the receiver of the vertices
+     * @return the number of vertices emitted
+     */
+    public static int decimate(SampledCurve curve, Viewport viewport, Sink sink) {
+        BandClipper clipper = new BandClipper(sink, -MARGIN, viewport.getHeight() + MARGIN);
+        boolean inRun = false;
+        boolean open = false;
+        long column = Long.MIN_VALUE;
+        int first = -1;
+        int min = -1;
+        int max = -1;
+        int last = -1;
+        double minY = 0;
+        double maxY = 0;
+
+        for (int i = 0; i <= curve.size(); i++) {
+            boolean end = i == curve.size() || curve.isBreak(i);
+            double sx = end ? 0 : viewport.toScreenX(curve.getX(i));
+            double sy = end ? 0 : viewport.toScreenY(curve.getY(i));
+            long sampleColumn = end ? Long.MIN_VALUE : (long) Math.floor(sx);
+
+            if (open && (end || sampleColumn != column)) {
+                emit(curve, viewport, clipper, !inRun, first, min, max, last);
+                inRun = true;
+                open = false;
+            }
+            if (end) {
+                inRun = false;
+                continue;
+            }
+            if (!open) {
+                open = true;
+                column = sampleColumn;
+                first = i;
+                min = i;
+                max = i;
+                minY = sy;
+                maxY = sy;
+            } else if (sy < minY) {
+                min = i;
+                minY = sy;
+            } else if (sy > maxY) {
+                max = i;
+                maxY = sy;
+            }
+            last = i;
+        }
+        return clipper.vertices;
+    }
+
+    private static void emit(SampledCurve curve, Viewport viewport, BandClipper clipper, boolean startRun,
+                             int first, int min, int max, int last) {
+        int low = Math.min(min, max);
+        int high = Math.max(min, max);
+        vertex(curve, viewport, clipper, first, startRun);
+        if (low != first && low != last) {
+            vertex(curve, viewport, clipper, low, false);
+        }
+        if (high != first && high != last && high != low) {
+            vertex(curve, viewport, clipper, high, false);
+        }
+        if (last != first) {
+            vertex(curve, viewport, clipper, last, false);
+        }
+    }
+
+    private static void vertex(SampledCurve curve, Viewport viewport, BandClipper clipper, int index, boolean move) {
+        double x = viewport.toScreenX(curve.getX(index));
+        double y = viewport.toScreenY(curve.getY(index));
+        if (move) {
+            clipper.moveTo(x, y);
+        } else {
+            clipper.lineTo(x, y);
+        }
+    }
+
+    /**
+     * Clips a polyline to a horizontal band, forwarding only the parts inside it.
+     */
+    private static final class BandClipper implements Sink {
+        private final Sink sink;
+        private final double top;
+        private final double bottom;
+        private double lastX;
+        private double lastY;
+        private boolean drawing;
+        private int vertices;
+
+        BandClipper(Sink sink, double top, double bottom) {
+            this.sink = sink;
+            this.top = top;
+            this.bottom = bottom;
+        }
+
+        @Override
+        public void moveTo(double x, double y) {
+            drawing = inside(y);
+            if (drawing) {
+                emit(x, y, true);
+            }
+            lastX = x;
+            lastY = y;
+        }
+
+        @Override
+        public void lineTo(double x, double y) {
+            boolean inside = inside(y);
+            if (drawing && inside) {
+                emit(x, y, false);
+            } else if (drawing) {
+                emitCrossing(x, y, y < top ? top : bottom, false);
+            } else if (inside) {
+                emitCrossing(x, y, lastY < top ? top : bottom, true);
+                emit(x, y, false);
+            } else if ((lastY < top) != (y < top)) {
+                emitCrossing(x, y, lastY < top ? top : bottom, true);
+                emitCrossing(x, y, y < top ? top : bottom, false);
+            }
+            drawing = inside;
+            lastX = x;
+            lastY = y;
+        }
+
+        private void emitCrossing(double x, double y, double boundary, boolean move) {
+            double t = (boundary - lastY) / (y - lastY);
+            emit(lastX + t * (x - lastX), boundary, move);
+        }
+
+        private void emit(double x, double y, boolean move) {
+            if (move) {
+                sink.moveTo(x, y);
+            } else {
+                sink.lineTo(x, y);
+            }
+            vertices++;
+        }
+
+        private boolean inside(double y) {
+            return y >= top && y <= bottom;
+        }
+    }
+}
@@ -1,5 +1,11 @@
 import javax.swing.*;
 import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Main class to set up the JFrame and add components.
@@ -15,97 +21,202 @@ public class Main {
         frame.add(graphPanel, BorderLayout.CENTER);
 
         JPanel checkBoxPanel = new JPanel();
-        checkBoxPanel.setLayout(new GridLayout(10, 1));
+        checkBoxPanel.setLayout(new GridLayout(0, 1));
 
         JPanel sliderPanel = new JPanel();
         sliderPanel.setLayout(new BoxLayout(sliderPanel, BoxLayout.Y_AXIS));
 
-        JCheckBox checkBoxSin = new JCheckBox("sin", false);
-        JCheckBox checkBoxCos = new JCheckBox("cos", false);
-        JCheckBox checkBoxTan = new JCheckBox("tan", false);
-        JCheckBox checkBoxCtan = new JCheckBox("ctan", false);
-        JCheckBox checkBoxParabola = new JCheckBox("Parabola", false);
-        JCheckBox checkBoxHyperbola = new JCheckBox("Hyperbola", false);
-        JCheckBox checkBoxEllipse = new JCheckBox("Ellipse", false);
-        JCheckBox checkBoxCircle = new JCheckBox("Circle", false);
-        JCheckBox checkBoxExp = new JCheckBox("Exponential", false);
-        JCheckBox checkBoxLog = new JCheckBox("Logarithmic", false);
-
-        checkBoxPanel.add(checkBoxSin);
-        checkBoxPanel.add(checkBoxCos);
-        checkBoxPanel.add(checkBoxTan);
-        checkBoxPanel.add(checkBoxCtan);
-        checkBoxPanel.add(checkBoxParabola);
-        checkBoxPanel.add(checkBoxHyperbola);
-        checkBoxPanel.add(checkBoxEllipse);
-        checkBoxPanel.add(checkBoxCircle);
-        checkBoxPanel.add(checkBoxExp);
-        checkBoxPanel.add(checkBoxLog);
-
-        sliderPanel.add(SliderPanel.createSliderPanel("sin", graphPanel));
-        sliderPanel.add(SliderPanel.createSliderPanel("cos", graphPanel));
-        sliderPanel.add(SliderPanel.createSliderPanel("tan", graphPanel));
-        sliderPanel.add(SliderPanel.createSliderPanel("ctan", graphPanel));
-        sliderPanel.add(SliderPanel.createSliderPanel("parabola", graphPanel));
-        sliderPanel.add(SliderPanel.createSliderPanel("hyperbola", graphPanel));
-        sliderPanel.add(SliderPanel.createSliderPanel("exp", graphPanel));
-        sliderPanel.add(SliderPanel.createSliderPanel("log", graphPanel));
-        sliderPanel.add(SliderPanel.createSliderPanel("ellipse", graphPanel)); // Add slider for ellipse
-        sliderPanel.add(SliderPanel.createSliderPanel("circle", graphPanel));  // Add slider for circle
-
-        checkBoxSin.addActionListener(e -> {
-            graphPanel.drawSin = checkBoxSin.isSelected();
-            graphPanel.functionPanels.get("sin").setVisible(checkBoxSin.isSelected());
-            graphPanel.repaint();
-        });
-        checkBoxCos.addActionListener(e -> {
-            graphPanel.drawCos = checkBoxCos.isSelected();
-            graphPanel.functionPanels.get("cos").setVisible(checkBoxCos.isSelected());
-            graphPanel.repaint();
-        });
-        checkBoxTan.addActionListener(e -> {
-            graphPanel.drawTan = checkBoxTan.isSelected();
-            graphPanel.functionPanels.get("tan").setVisible(checkBoxTan.isSelected());
-            graphPanel.repaint();
-        });
-        checkBoxCtan.addActionListener(e -> {
-            graphPanel.drawCtan = checkBoxCtan.isSelected();
-            graphPanel.functionPanels.get("ctan").setVisible(checkBoxCtan.isSelected());
-            graphPanel.repaint();
-        });
-        checkBoxParabola.addActionListener(e -> {
-            graphPanel.drawParabola = checkBoxParabola.isSelected();
-            graphPanel.functionPanels.get("parabola").setVisible(checkBoxParabola.isSelected());
-            graphPanel.repaint();
-        });
-        checkBoxHyperbola.addActionListener(e -> {
-            graphPanel.drawHyperbola = checkBoxHyperbola.isSelected();
-            graphPanel.functionPanels.get("hyperbola").setVisible(checkBoxHyperbola.isSelected());
-            graphPanel.repaint();
-        });
-        checkBoxEllipse.addActionListener(e -> {
-            graphPanel.drawEllipse = checkBoxEllipse.isSelected();
-            graphPanel.functionPanels.get("ellipse").setVisible(checkBoxEllipse.isSelected());
-            graphPanel.repaint();
-        });
-        checkBoxCircle.addActionListener(e -> {
-            graphPanel.drawCircle = checkBoxCircle.isSelected();
-            graphPanel.functionPanels.get("circle").setVisible(checkBoxCircle.isSelected());
-            graphPanel.repaint();
-        });
-        checkBoxExp.addActionListener(e -> {
-            graphPanel.drawExp = checkBoxExp.isSelected();
-            graphPanel.functionPanels.get("exp").setVisible(checkBoxExp.isSelected());
-            graphPanel.repaint();
-        });
-        checkBoxLog.addActionListener(e -> {
-            graphPanel.drawLog = checkBoxLog.isSelected();
-            graphPanel.functionPanels.get("log").setVisible(checkBoxLog.isSelected());
-            graphPanel.repaint();
+        for (CurveDescriptor curve : graphPanel.getRegistry().all()) {
+            String function = curve.getId();
+            JCheckBox checkBox = new JCheckBox(curve.getLabel(), curve.isEnabled());
+            checkBoxPanel.add(checkBox);
+            sliderPanel.add(SliderPanel.createSliderPanel(function, graphPanel));
+            checkBox.addActionListener(e -> {
+                graphPanel.setDrawn(function, checkBox.isSelected());
+                graphPanel.functionPanels.get(function).setVisible(checkBox.isSelected());
+            });
+        }
+
+        JCheckBox checkBoxParallel = new JCheckBox("Parallel", false);
+        JCheckBox checkBoxFastLines = new JCheckBox("Fast lines", false);
+        JCheckBox checkBoxLive = new JCheckBox("Live", false);
+        JCheckBox checkBoxHud = new JCheckBox("HUD", false);
+        JCheckBox checkBoxAnalysis = new JCheckBox("Analysis", false);
+        JButton loadDataButton = new JButton("Load data...");
+        JButton sweepButton = new JButton("Export sweep...");
+        JButton vectorButton = new JButton("Export vector...");
+        checkBoxPanel.add(checkBoxParallel);
+        checkBoxPanel.add(checkBoxFastLines);
+        checkBoxPanel.add(checkBoxLive);
+        checkBoxPanel.add(checkBoxHud);
+        checkBoxPanel.add(checkBoxAnalysis);
+        checkBoxPanel.add(loadDataButton);
+        checkBoxPanel.add(sweepButton);
+        checkBoxPanel.add(vectorButton);
+
+        checkBoxParallel.addActionListener(e -> graphPanel.setParallel(checkBoxParallel.isSelected()));
+        checkBoxFastLines.addActionListener(e -> graphPanel.setFastRaster(checkBoxFastLines.isSelected()));
+        StreamingSeries live = new StreamingSeries("live", 1 << 16, 1 << 20);
+        long origin = System.nanoTime();
+        Thread[] producer = new Thread[1];
+        checkBoxLive.addActionListener(e -> {
+            if (checkBoxLive.isSelected()) {
+                graphPanel.addStreamingSeries(live);
+                producer[0] = startProducer(live, origin, 100_000);
+            } else {
+                producer[0].interrupt();
+                graphPanel.removeStreamingSeries(live);
+            }
         });
+        checkBoxHud.addActionListener(e -> graphPanel.setHudVisible(checkBoxHud.isSelected()));
+        checkBoxAnalysis.addActionListener(e -> graphPanel.setAnalysisVisible(checkBoxAnalysis.isSelected()));
+        loadDataButton.addActionListener(e -> loadData(frame, graphPanel));
+        sweepButton.addActionListener(e -> exportSweep(frame, graphPanel, sweepButton));
+        vectorButton.addActionListener(e -> exportVector(frame, graphPanel));
 
         frame.add(checkBoxPanel, BorderLayout.WEST);
         frame.add(sliderPanel, BorderLayout.EAST);
         frame.setVisible(true);
     }
+
+    /**
+     * Starts a thread that feeds a live series with a noisy sine wave, moving 50 units along x per second.
+     */
+    private static Thread startProducer(StreamingSeries series, long origin, int samplesPerSecond) {
+        Thread producer = new Thread(() -> {
+            Random random = new Random();
+            long next = (long) ((System.nanoTime() - origin) / 1e9 * samplesPerSecond);
+            double noise = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                long due = (long) ((System.nanoTime() - origin) / 1e9 * samplesPerSecond);
+                for (; next < due; next++) {
+                    double seconds = (double) next / samplesPerSecond;
+                    noise = 0.99 * noise + random.nextGaussian();
+                    series.append(seconds * 50, 30 * Math.sin(seconds * 2) + noise);
+                }
+                LockSupport.parkNanos(1_000_000);
+            }
+        }, "live-producer");
+        producer.setDaemon(true);
+        producer.start();
+        return producer;
+    }
+
+    /**
+     * Asks for a data file and adds it to the panel. Opening a file for the first time
+     * builds its pyramid, which reads the whole file, so it is done off the event thread.
+     */
+    private static void loadData(JFrame frame, GraphPanel graphPanel) {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path path = chooser.getSelectedFile().toPath();
+        new SwingWorker<DataSeries, Void>() {
+            @Override
+            protected DataSeries doInBackground() throws IOException {
+                return DataSeries.open(path);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    graphPanel.addDataSeries(get());
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(frame, "Cannot load " + path + ": " + cause.getMessage(),
+                            "Load data", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Asks for an SVG or PDF file and writes the current plot to it. The export reads the panel,
+     * so it runs on the event thread; it takes well under a second even for poster sizes.
+     */
+    private static void exportVector(JFrame frame, GraphPanel graphPanel) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File("plot.svg"));
+        if (chooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        try {
+            VectorExporter.Result result = VectorExporter.export(graphPanel, file, VectorExporter.DEFAULT_TOLERANCE);
+            JOptionPane.showMessageDialog(frame, result.toString(), "Export vector", JOptionPane.INFORMATION_MESSAGE);
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(frame, "Cannot export " + file + ": " + ex.getMessage(),
+                    "Export vector", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Asks for a curve, a parameter, its range and a frame count, and renders the sweep
+     * over the current plot to a directory of PNG frames in the background.
+     */
+    private static void exportSweep(JFrame frame, GraphPanel graphPanel, JButton sweepButton) {
+        JComboBox<String> function = new JComboBox<>(PlotSpec.FUNCTIONS);
+        JComboBox<String> parameter = new JComboBox<>(new String[] {"A", "B", "C"});
+        JTextField from = new JTextField("1");
+        JTextField to = new JTextField("20");
+        JTextField frames = new JTextField("60");
+        JPanel form = new JPanel(new GridLayout(5, 2, 4, 4));
+        form.add(new JLabel("Curve"));
+        form.add(function);
+        form.add(new JLabel("Parameter"));
+        form.add(parameter);
+        form.add(new JLabel("From"));
+        form.add(from);
+        form.add(new JLabel("To"));
+        form.add(to);
+        form.add(new JLabel("Frames"));
+        form.add(frames);
+        if (JOptionPane.showConfirmDialog(frame, form, "Export sweep", JOptionPane.OK_CANCEL_OPTION)
+                != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        SweepRenderer sweep;
+        try {
+            sweep = new SweepRenderer(PlotSpec.of(graphPanel), (String) function.getSelectedItem(),
+                    (String) parameter.getSelectedItem(), Double.parseDouble(from.getText().trim()),
+                    Double.parseDouble(to.getText().trim()), Integer.parseInt(frames.getText().trim()));
+        } catch (IllegalArgumentException ex) {
+            JOptionPane.showMessageDialog(frame, ex.getMessage(), "Export sweep", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File directory = chooser.getSelectedFile();
+
+        sweepButton.setEnabled(false);
+        new SwingWorker<SweepRenderer.Result, Integer>() {
+            @Override
+            protected SweepRenderer.Result doInBackground() throws IOException, InterruptedException {
+                return sweep.render(directory, Runtime.getRuntime().availableProcessors(), this::publish);
+            }
+
+            @Override
+            protected void process(java.util.List<Integer> written) {
+                sweepButton.setText(written.get(written.size() - 1) + " / " + sweep.getFrames());
+            }
+
+            @Override
+            protected void done() {
+                sweepButton.setText("Export sweep...");
+                sweepButton.setEnabled(true);
+                try {
+                    JOptionPane.showMessageDialog(frame, get().toString(), "Export sweep", JOptionPane.INFORMATION_MESSAGE);
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(frame, "Cannot export sweep: " + cause.getMessage(),
+                            "Export sweep", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
 }
@@ -0,0 +1,320 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Traces implicit curves F(x, y) = 0 with marching squares on a grid of screen cells.
+ * <p>
+ * The grid is split into square tiles that are traced independently, optionally in parallel.
+ * Each tile is first probed on a coarse 5x5 lattice; when F has the same sign at every probe
+ * and stays further from zero than it changes between neighbouring probes, the tile is taken
+ * to be empty and its full grid is never evaluated. The segments of all tiles are then stitched
+ * through the grid edges they share into polylines, which are returned as a {@link SampledCurve}
+ * with a break between polylines. Closed curves end with their first point.
+ */
+public final class MarchingSquares {
+    /**
+     * Side of a grid cell in pixels.
+     */
+    public static final int CELL = 2;
+
+    private static final int TILE = 32;
+    private static final int PROBES = 4;
+
+    private MarchingSquares() {
+    }
+
+    /**
+     * Traces an implicit curve at the default resolution.
+     *
+     * @param function the implicit function of the curve
+     * @param viewport the viewport to trace in
+     * @param parallel whether to trace the tiles on the common ForkJoin pool
+     * @return the polylines of the curve
+     */
+    public static SampledCurve trace(ImplicitFunction function, Viewport viewport, boolean parallel) {
+        return trace(function, viewport, CELL, parallel);
+    }
+
+    /**
+     * Traces an implicit curve. Both modes return the same polylines.
+     *
+     * @param function the implicit function of the curve
+     * @param viewport the viewport to trace in
+     * @param cell the side of a grid cell in pixels
+     * @param parallel whether to trace the tiles on the common ForkJoin pool
+     * @return the polylines of the curve
+     */
+    public static SampledCurve trace(ImplicitFunction function, Viewport viewport, int cell, boolean parallel) {
+        Grid grid = new Grid(viewport, cell);
+        int tilesX = (grid.columns - 2) / TILE + 1;
+        int tilesY = (grid.rows - 2) / TILE + 1;
+        List<Segments> tiles;
+        if (parallel) {
+            tiles = IntStream.range(0, tilesX * tilesY).parallel()
+                    .mapToObj(tile -> traceTile(function, grid, tile % tilesX, tile / tilesX))
+                    .collect(Collectors.toList());
+        } else {
+            tiles = new ArrayList<>(tilesX * tilesY);
+            for (int tile = 0; tile < tilesX * tilesY; tile++) {
+                tiles.add(traceTile(function, grid, tile % tilesX, tile / tilesX));
+            }
+        }
+
+        Segments all = new Segments();
+        int evaluations = 0;
+        for (Segments tile : tiles) {
+            all.addAll(tile);
+            evaluations += tile.evaluations;
+        }
+        SampledCurve curve = stitch(all);
+        curve.countEvaluations(evaluations);
+        return curve;
+    }
+
+    /**
+     * Grid points are numbered from the top left corner of the viewport; point (i, j) lies
+     * at screen position (i * cell, j * cell).
+     */
+    private static final class Grid {
+        final Viewport viewport;
+        final int cell;
+        final int columns;
+        final int rows;
+
+        Grid(Viewport viewport, int cell) {
+            this.viewport = viewport;
+            this.cell = cell;
+            this.columns = (viewport.getWidth() + cell - 1) / cell + 1;
+            this.rows = (viewport.getHeight() + cell - 1) / cell + 1;
+        }
+
+        double x(int i) {
+            return viewport.toWorldX(i * cell);
+        }
+
+        double y(int j) {
+            return viewport.toWorldY(j * cell);
+        }
+
+        /**
+         * Returns the id of the edge from point (i, j) to its right neighbour, or to the one below if vertical.
+         */
+        long edge(int i, int j, boolean vertical) {
+            return ((long) j * columns + i) * 2 + (vertical ? 1 : 0);
+        }
+    }
+
+    private static Segments traceTile(ImplicitFunction function, Grid grid, int tileX, int tileY) {
+        Segments out = new Segments();
+        int i0 = tileX * TILE;
+        int j0 = tileY * TILE;
+        int i1 = Math.min(i0 + TILE, grid.columns - 1);
+        int j1 = Math.min(j0 + TILE, grid.rows - 1);
+        if (isEmpty(function, grid, i0, j0, i1, j1, out)) {
+            return out;
+        }
+
+        int width = i1 - i0 + 1;
+        double[] xs = new double[width];
+        double[] values = new double[width * (j1 - j0 + 1)];
+        for (int i = i0; i <= i1; i++) {
+            xs[i - i0] = grid.x(i);
+        }
+        for (int j = j0; j <= j1; j++) {
+            double y = grid.y(j);
+            for (int i = i0; i <= i1; i++) {
+                values[(j - j0) * width + i - i0] = function.apply(xs[i - i0], y);
+            }
+        }
+        out.evaluations += values.length;
+
+        for (int j = j0; j < j1; j++) {
+            for (int i = i0; i < i1; i++) {
+                int k = (j - j0) * width + i - i0;
+                march(function, grid, i, j, values[k], values[k + 1], values[k + width + 1], values[k + width], out);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Probes a tile on a coarse lattice and decides whether the curve can be skipped there.
+     */
+    private static boolean isEmpty(ImplicitFunction function, Grid grid, int i0, int j0, int i1, int j1, Segments out) {
+        double[] probes = new double[(PROBES + 1) * (PROBES + 1)];
+        for (int q = 0; q <= PROBES; q++) {
+            double y = grid.y(j0 + (j1 - j0) * q / PROBES);
+            for (int p = 0; p <= PROBES; p++) {
+                probes[q * (PROBES + 1) + p] = function.apply(grid.x(i0 + (i1 - i0) * p / PROBES), y);
+            }
+        }
+        out.evaluations += probes.length;
+
+        boolean positive = probes[0] > 0;
+        double nearest = Double.MAX_VALUE;
+        double change = 0;
+        for (int q = 0; q <= PROBES; q++) {
+            for (int p = 0; p <= PROBES; p++) {
+                double value = probes[q * (PROBES + 1) + p];
+                if (!Double.isFinite(value) || (value > 0) != positive) {
+                    return false;
+                }
+                nearest = Math.min(nearest, Math.abs(value));
+                if (p > 0) {
+                    change = Math.max(change, Math.abs(value - probes[q * (PROBES + 1) + p - 1]));
+                }
+                if (q > 0) {
+                    change = Math.max(change, Math.abs(value - probes[(q - 1) * (PROBES + 1) + p]));
+                }
+            }
+        }
+        return nearest > change;
+    }
+
+    /**
+     * Adds the segments of one cell. The corners are numbered clockwise from the top left,
+     * and edge e runs from corner e to corner e + 1, with edges 2 and 3 taken from their lower-index end
+     * so that neighbouring cells compute identical crossing points.
+     */
+    private static void march(ImplicitFunction function, Grid grid, int i, int j,
+                              double v0, double v1, double v2, double v3, Segments out) {
+        if (!(Double.isFinite(v0) && Double.isFinite(v1) && Double.isFinite(v2) && Double.isFinite(v3))) {
+            return;
+        }
+        int index = (v0 > 0 ? 1 : 0) | (v1 > 0 ? 2 : 0) | (v2 > 0 ? 4 : 0) | (v3 > 0 ? 8 : 0);
+        if (index == 0 || index == 15) {
+            return;
+        }
+        if (index == 5 || index == 10) {
+            double center = function.apply(grid.x(i) + 0.5 * (grid.x(i + 1) - grid.x(i)),
+                    grid.y(j) + 0.5 * (grid.y(j + 1) - grid.y(j)));
+            out.evaluations++;
+            boolean centerPositive = center > 0;
+            for (int corner = 0; corner < 4; corner++) {
+                boolean cornerPositive = (index & (1 << corner)) != 0;
+                if (cornerPositive != centerPositive) {
+                    segment(grid, i, j, (corner + 3) % 4, corner, v0, v1, v2, v3, out);
+                }
+            }
+            return;
+        }
+        int first = -1;
+        for (int edge = 0; edge < 4; edge++) {
+            boolean a = (index & (1 << edge)) != 0;
+            boolean b = (index & (1 << ((edge + 1) % 4))) != 0;
+            if (a != b) {
+                if (first < 0) {
+                    first = edge;
+                } else {
+                    segment(grid, i, j, first, edge, v0, v1, v2, v3, out);
+                }
+            }
+        }
+    }
+
+    private static void segment(Grid grid, int i, int j, int edgeA, int edgeB,
+                                double v0, double v1, double v2, double v3, Segments out) {
+        out.add(grid, i, j, edgeA, v0, v1, v2, v3);
+        out.add(grid, i, j, edgeB, v0, v1, v2, v3);
+    }
+
+    /**
+     * Segment endpoints of a tile or of the whole grid. Endpoints 2k and 2k + 1 belong to segment k.
+     */
+    private static final class Segments {
+        double[] points = new double[64];
+        long[] edges = new long[32];
+        int endpoints;
+        int evaluations;
+
+        void add(Grid grid, int i, int j, int edge, double v0, double v1, double v2, double v3) {
+            switch (edge) {
+                case 0:
+                    add(grid.edge(i, j, false), grid.x(i), grid.y(j), grid.x(i + 1), grid.y(j), v0, v1);
+                    break;
+                case 1:
+                    add(grid.edge(i + 1, j, true), grid.x(i + 1), grid.y(j), grid.x(i + 1), grid.y(j + 1), v1, v2);
+                    break;
+                case 2:
+                    add(grid.edge(i, j + 1, false), grid.x(i), grid.y(j + 1), grid.x(i + 1), grid.y(j + 1), v3, v2);
+                    break;
+                default:
+                    add(grid.edge(i, j, true), grid.x(i), grid.y(j), grid.x(i), grid.y(j + 1), v0, v3);
+                    break;
+            }
+        }
+
+        private void add(long edge, double xa, double ya, double xb, double yb, double va, double vb) {
+            double t = va / (va - vb);
+            append(edge, xa + t * (xb - xa), ya + t * (yb - ya));
+        }
+
+        void addAll(Segments other) {
+            for (int e = 0; e < other.endpoints; e++) {
+                append(other.edges[e], other.points[2 * e], other.points[2 * e + 1]);
+            }
+        }
+
+        private void append(long edge, double x, double y) {
+            if (endpoints == edges.length) {
+                edges = Arrays.copyOf(edges, endpoints * 2);
+                points = Arrays.copyOf(points, endpoints * 4);
+            }
+            edges[endpoints] = edge;
+            points[2 * endpoints] = x;
+            points[2 * endpoints + 1] = y;
+            endpoints++;
+        }
+    }
+
+    /**
+     * Joins segments that end on the same grid edge into polylines.
+     */
+    private static SampledCurve stitch(Segments segments) {
+        int count = segments.endpoints;
+        long[] sorted = new long[count];
+        for (int e = 0; e < count; e++) {
+            sorted[e] = segments.edges[e] * count + e;
+        }
+        Arrays.sort(sorted);
+        int[] partner = new int[count];
+        Arrays.fill(partner, -1);
+        for (int k = 0; k + 1 < count; k++) {
+            if (sorted[k] / count == sorted[k + 1] / count) {
+                int a = (int) (sorted[k] % count);
+                int b = (int) (sorted[k + 1] % count);
+                partner[a] = b;
+                partner[b] = a;
+                k++;
+            }
+        }
+
+        SampledCurve curve = new SampledCurve(count + count / 4);
+        boolean[] visited = new boolean[count / 2];
+        for (int segment = 0; segment < count / 2; segment++) {
+            if (visited[segment]) {
+                continue;
+            }
+            int entry = 2 * segment;
+            while (partner[entry] >= 0 && partner[entry] / 2 != segment) {
+                entry = partner[entry] ^ 1;
+            }
+            curve.add(segments.points[2 * entry], segments.points[2 * entry + 1]);
+            while (true) {
+                int exit = entry ^ 1;
+                visited[exit / 2] = true;
+                curve.add(segments.points[2 * exit], segments.points[2 * exit + 1]);
+                int next = partner[exit];
+                if (next < 0 || visited[next / 2]) {
+                    curve.addBreak(segments.points[2 * exit]);
+                    break;
+                }
+                entry = next;
+            }
+        }
+        return curve;
+    }
+}
@@ -0,0 +1,143 @@
+import java.util.Arrays;
+
+/**
+ * Simplifies polylines with the Ramer-Douglas-Peucker algorithm before passing them on.
+ * <p>
+ * Each run, from one {@code moveTo} to the next, is buffered and reduced to the vertices needed
+ * to stay within a tolerance of the original, measured as the distance of every dropped vertex from
+ * the segment that replaces it. Runs are emitted as soon as the next one starts, so only one run is
+ * held at a time. Runs of a single vertex draw nothing and are dropped.
+ */
+public final class PathSimplifier implements M4Decimator.Sink {
+    private final M4Decimator.Sink sink;
+    private final double tolerance;
+    private double[] xs = new double[256];
+    private double[] ys = new double[256];
+    private boolean[] keep = new boolean[256];
+    private int[] stack = new int[64];
+    private int size;
+    private long input;
+    private long output;
+
+    /**
+     * Creates a simplifier.
+     *
+     * @param sink the receiver of the simplified runs
+     * @param tolerance the largest distance of a dropped vertex from the simplified run, in the units of the vertices
+     */
+    public PathSimplifier(M4Decimator.Sink sink, double tolerance) {
+        this.sink = sink;
+        this.tolerance = tolerance;
+    }
+
+    @Override
+    public void moveTo(double x, double y) {
+        flush();
+        append(x, y);
+    }
+
+    @Override
+    public void lineTo(double x, double y) {
+        append(x, y);
+    }
+
+    /**
+     * Emits the run in progress. Call once after the last vertex.
+     */
+    public void flush() {
+        if (size > 1) {
+            simplify();
+            sink.moveTo(xs[0], ys[0]);
+            output++;
+            for (int i = 1; i < size; i++) {
+                if (keep[i]) {
+                    sink.lineTo(xs[i], ys[i]);
+                    output++;
+                }
+            }
+        }
+        size = 0;
+    }
+
+    /**
+     * Returns the number of vertices received.
+     */
+    public long getInput() {
+        return input;
+    }
+
+    /**
+     * Returns the number of vertices emitted.
+     */
+    public long getOutput() {
+        return output;
+    }
+
+    private void append(double x, double y) {
+        if (size == xs.length) {
+            xs = Arrays.copyOf(xs, size * 2);
+            ys = Arrays.copyOf(ys, size * 2);
+            keep = new boolean[size * 2];
+        }
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+        input++;
+    }
+
+    /**
+     * Marks the vertices to keep. Spans are split at their farthest vertex with an explicit stack
+     * rather than by recursion, as runs may hold thousands of vertices.
+     */
+    private void simplify() {
+        Arrays.fill(keep, 0, size, false);
+        keep[0] = true;
+        keep[size - 1] = true;
+        int top = push(0, 0, size - 1);
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            double farthest = tolerance * tolerance;
+            int split = -1;
+            for (int i = first + 1; i < last; i++) {
+                double distance = squaredDistance(i, first, last);
+                if (distance > farthest) {
+                    farthest = distance;
+                    split = i;
+                }
+            }
+            if (split >= 0) {
+                keep[split] = true;
+                top = push(top, first, split);
+                top = push(top, split, last);
+            }
+        }
+    }
+
+    private int push(int top, int first, int last) {
+        if (last - first < 2) {
+            return top;
+        }
+        if (top + 2 > stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top] = first;
+        stack[top + 1] = last;
+        return top + 2;
+    }
+
+    /**
+     * Returns the squared distance of vertex i from the segment between two other vertices.
+     */
+    private double squaredDistance(int i, int first, int last) {
+        double dx = xs[last] - xs[first];
+        double dy = ys[last] - ys[first];
+        double px = xs[i] - xs[first];
+        double py = ys[i] - ys[first];
+        double length = dx * dx + dy * dy;
+        double t = length > 0 ? Math.max(0, Math.min(1, (px * dx + py * dy) / length)) : 0;
+        double ex = px - t * dx;
+        double ey = py - t * dy;
+        return ex * ex + ey * ey;
+    }
+}
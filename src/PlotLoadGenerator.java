@@ -0,0 +1,184 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Closed-loop load generator for {@link PlotServer}: a number of clients send plot requests one
+ * after the other for a given time, and the latency percentiles and throughput they saw are printed,
+ * followed by the metrics the server reports.
+ * <p>
+ * Usage: {@code java -Djava.awt.headless=true PlotLoadGenerator [url|local] [clients] [seconds] [plots] [svg fraction]
+ * [virtual|platform] [renderers]}
+ * <p>
+ * With {@code local}, the default, a server is started in the same process on a free port, with one renderer
+ * per processor unless given. The clients, and the exchanges of a local server, run on virtual threads, the
+ * default, or on platform threads. Each request asks for one of {@code plots} distinct plots at random, so the
+ * number of plots sets the share of requests the response cache can answer; 0 makes every request a
+ * different plot. Requests sent in the first fifth of the time, at most two seconds, warm up the
+ * server and are not counted.
+ */
+public final class PlotLoadGenerator {
+    private static final String[] FAMILIES = {"sin", "cos", "tan", "parabola", "hyperbola", "circle", "exp", "log"};
+
+    private PlotLoadGenerator() {
+    }
+
+    /**
+     * Returns the query of a plot with one to three curves, which is the same for the same number.
+     *
+     * @param number the number of the plot
+     */
+    static String query(long number) {
+        SplittableRandom random = new SplittableRandom(number);
+        StringBuilder query = new StringBuilder("size=400x300");
+        int curves = 1 + random.nextInt(3);
+        for (int i = 0; i < curves; i++) {
+            String family = FAMILIES[random.nextInt(FAMILIES.length)];
+            String params = String.format(Locale.ROOT, "%.2f,%.1f,%.2f",
+                    0.5 + random.nextDouble() * 2, 5 + random.nextDouble() * 20, 0.05 + random.nextDouble() * 0.2);
+            query.append('&').append(family).append('=').append(URLEncoder.encode(params, StandardCharsets.UTF_8));
+        }
+        return query.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        String target = args.length > 0 ? args[0] : "local";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 20;
+        long plots = args.length > 3 ? Long.parseLong(args[3]) : 200;
+        double svgFraction = args.length > 4 ? Double.parseDouble(args[4]) : 0.25;
+        boolean virtual = args.length <= 5 || !args[5].equals("platform");
+        int renderers = args.length > 6 ? Integer.parseInt(args[6]) : Runtime.getRuntime().availableProcessors();
+
+        PlotServer server = null;
+        if (target.equals("local")) {
+            server = new PlotServer(0, renderers, virtual);
+            server.start();
+            target = "http://localhost:" + server.getPort();
+        }
+        String base = target.endsWith("/") ? target.substring(0, target.length() - 1) : target;
+
+        ExecutorService executor = virtual ? Executors.newVirtualThreadPerTaskExecutor() : Executors.newFixedThreadPool(clients);
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        long start = System.nanoTime();
+        long measureFrom = start + (long) (Math.min(2, seconds / 5) * 1e9);
+        long end = start + (long) (seconds * 1e9);
+        List<Future<Client>> futures = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            long seed = i;
+            futures.add(executor.submit(() -> {
+                Client result = new Client();
+                SplittableRandom random = new SplittableRandom(seed);
+                long unique = seed << 40;
+                while (System.nanoTime() < end) {
+                    long number = plots > 0 ? random.nextLong(plots) : unique++;
+                    String path = random.nextDouble() < svgFraction ? "/plot.svg?" : "/plot.png?";
+                    HttpRequest request = HttpRequest.newBuilder(URI.create(base + path + query(number))).build();
+                    long sent = System.nanoTime();
+                    int status;
+                    long bytes = 0;
+                    try {
+                        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                        status = response.statusCode();
+                        bytes = response.body().length;
+                    } catch (IOException e) {
+                        status = 0;
+                    }
+                    long received = System.nanoTime();
+                    if (sent >= measureFrom && received <= end) {
+                        result.record(status, bytes, (received - sent) / 1000);
+                    }
+                }
+                return result;
+            }));
+        }
+
+        Client total = new Client();
+        for (Future<Client> future : futures) {
+            total.add(future.get());
+        }
+        executor.shutdown();
+        double measured = (end - measureFrom) / 1e9;
+
+        System.out.printf(Locale.ROOT, "%d clients on %s threads against %s, %s plots, %.0f%% SVG, %.1f s measured%n",
+                clients, virtual ? "virtual" : "platform", base, plots > 0 ? Long.toString(plots) : "unique",
+                svgFraction * 100, measured);
+        System.out.println(total.summary(measured));
+        if (server != null) {
+            System.out.print(server.getMetrics());
+            server.stop();
+        }
+    }
+
+    /**
+     * Latencies in microseconds and response counts seen by one client, or by all of them once added up.
+     */
+    private static final class Client {
+        private long[] latencies = new long[1024];
+        private int count;
+        private int ok;
+        private int busy;
+        private int errors;
+        private long bytes;
+
+        void record(int status, long length, long micros) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = micros;
+            bytes += length;
+            if (status == 200) {
+                ok++;
+            } else if (status == 503) {
+                busy++;
+            } else {
+                errors++;
+            }
+        }
+
+        void add(Client other) {
+            if (count + other.count > latencies.length) {
+                latencies = Arrays.copyOf(latencies, count + other.count);
+            }
+            System.arraycopy(other.latencies, 0, latencies, count, other.count);
+            count += other.count;
+            ok += other.ok;
+            busy += other.busy;
+            errors += other.errors;
+            bytes += other.bytes;
+        }
+
+        String summary(double seconds) {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return String.format(Locale.ROOT,
+                    "requests %d (ok %d, busy %d, errors %d), %.1f requests/s, %.1f MB/s%n"
+                            + "latency ms: p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f",
+                    count, ok, busy, errors, count / seconds, bytes / seconds / (1 << 20),
+                    percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99),
+                    percentile(sorted, 0.999), percentile(sorted, 1));
+        }
+
+        private static double percentile(long[] sorted, double fraction) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(fraction * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, rank))] / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,445 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Embedded HTTP service that renders plots for other programs, listening on the loopback interface only.
+ * <p>
+ * {@code GET /plot.png} and {@code GET /plot.svg} render the {@link PlotSpec} given by the query:
+ * every query parameter is one token of the spec, for example
+ * {@code /plot.png?size=400x300&sin=1,10,0.1&circle&radius=5}. A {@code POST} to the same paths takes
+ * the spec text as its body, and query parameters are added to it. PNG images are drawn by
+ * {@link GraphPanel} as on screen, SVG documents are written by {@link VectorExporter}.
+ * {@code GET /metrics} returns the counters and latency percentiles of the service as text.
+ * <p>
+ * Each exchange is handled on its own virtual thread, or on a pooled platform thread if the server is
+ * created so. Rendering is limited to a fixed number of panels; a request waits for one for at
+ * most a second and is answered with 503 if none became free. Responses are kept in a least recently
+ * used cache keyed by the format and the normalized text of the spec, so requests that differ only in
+ * the order or spelling of their tokens share an entry, and concurrent requests for the same plot
+ * wait for a single render.
+ * <p>
+ * On a single processor with one renderer, {@link PlotLoadGenerator} measured no latency gain from
+ * virtual threads: with 16 clients the p99 latency was 354 to 361 ms on virtual threads and 276 to
+ * 371 ms on platform threads, and with 64 clients, where requests wait for the renderer for up to a
+ * second, 1071 to 1098 ms against 975 to 1011 ms. Rendering, not the waiting exchanges, bounds the
+ * latency there; virtual threads only spare the pool of one platform thread per waiting exchange.
+ * <p>
+ * Usage: {@code java -Djava.awt.headless=true PlotServer [port] [renderers] [virtual|platform]}
+ */
+public final class PlotServer {
+    /**
+     * The largest width and height of a plot, in pixels.
+     */
+    public static final int MAX_SIZE = 4096;
+
+    /**
+     * The longest formula of a custom or implicit curve. Every distinct formula is compiled to a class,
+     * so long formulas cost the server a lot of time to compile.
+     */
+    public static final int MAX_EXPRESSION = 256;
+
+    private static final int CACHE_BYTES = 64 << 20;
+    private static final int LATENCY_WINDOW = 10_000;
+    private static final long RENDER_WAIT_MILLIS = 1000;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean virtual;
+    private final BlockingQueue<Renderer> renderers;
+    private final int concurrency;
+    private final Map<String, byte[]> responses;
+    private final Map<String, CompletableFuture<byte[]>> rendering = new ConcurrentHashMap<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder renders = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final RollingHistogram latencies = new RollingHistogram(LATENCY_WINDOW);
+    private final RollingHistogram renderTimes = new RollingHistogram(LATENCY_WINDOW);
+    private final long started = System.nanoTime();
+    private long cachedBytes;
+
+    /**
+     * Creates a service bound to the loopback interface. It does not accept requests before {@link #start()}.
+     *
+     * @param port the port to listen on, or 0 for any free port
+     * @param concurrency the largest number of plots rendered at the same time
+     * @throws IOException if the port cannot be bound
+     */
+    public PlotServer(int port, int concurrency) throws IOException {
+        this(port, concurrency, true);
+    }
+
+    /**
+     * Creates a service bound to the loopback interface. It does not accept requests before {@link #start()}.
+     *
+     * @param port the port to listen on, or 0 for any free port
+     * @param concurrency the largest number of plots rendered at the same time
+     * @param virtual whether to handle exchanges on virtual threads rather than pooled platform threads
+     * @throws IOException if the port cannot be bound
+     */
+    public PlotServer(int port, int concurrency, boolean virtual) throws IOException {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("Concurrency must be positive");
+        }
+        this.concurrency = concurrency;
+        this.renderers = new ArrayBlockingQueue<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            renderers.add(new Renderer());
+        }
+        this.responses = new LinkedHashMap<>(16, 0.75f, true);
+        this.virtual = virtual;
+        this.executor = virtual ? Executors.newVirtualThreadPerTaskExecutor() : Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "plot-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(executor);
+        server.createContext("/plot.png", exchange -> handle(exchange, "png"));
+        server.createContext("/plot.svg", exchange -> handle(exchange, "svg"));
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    /**
+     * Returns true if requests are handled on virtual threads, and false if on platform threads.
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waits up to a second for the exchanges in progress and stops the threads.
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange, String format) throws IOException {
+        long start = System.nanoTime();
+        requests.increment();
+        active.incrementAndGet();
+        try {
+            String method = exchange.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "GET, POST");
+                send(exchange, 405, "Method not allowed\n");
+                return;
+            }
+            PlotSpec spec;
+            try {
+                spec = parse(exchange);
+            } catch (IllegalArgumentException e) {
+                failed.increment();
+                send(exchange, 400, message(e) + "\n");
+                return;
+            }
+
+            byte[] body;
+            try {
+                body = getResponse(format, spec);
+            } catch (RenderTimeoutException e) {
+                rejected.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 503, "All renderers are busy\n");
+                return;
+            } catch (IOException | RuntimeException e) {
+                failed.increment();
+                send(exchange, 500, message(e) + "\n");
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", format.equals("png") ? "image/png" : "image/svg+xml");
+            exchange.getResponseHeaders().set("Cache-Control", "max-age=3600");
+            send(exchange, 200, body);
+        } finally {
+            active.decrementAndGet();
+            exchange.close();
+            long micros = (System.nanoTime() - start) / 1000;
+            synchronized (latencies) {
+                latencies.record(micros);
+            }
+        }
+    }
+
+    /**
+     * Builds the spec of a request from its body and its query parameters.
+     */
+    private static PlotSpec parse(HttpExchange exchange) throws IOException {
+        StringBuilder text = new StringBuilder();
+        if (exchange.getRequestMethod().equals("POST")) {
+            try (InputStream in = exchange.getRequestBody()) {
+                text.append(new String(in.readNBytes(1 << 16), StandardCharsets.UTF_8));
+            }
+        }
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (!parameter.isEmpty()) {
+                    text.append(' ').append(URLDecoder.decode(parameter, StandardCharsets.UTF_8));
+                }
+            }
+        }
+        PlotSpec spec = PlotSpec.parse(text.toString());
+        if (spec.getWidth() > MAX_SIZE || spec.getHeight() > MAX_SIZE) {
+            throw new IllegalArgumentException("Size must be at most " + MAX_SIZE + "x" + MAX_SIZE);
+        }
+        if (length(spec.getExpression()) > MAX_EXPRESSION || length(spec.getImplicitExpression()) > MAX_EXPRESSION) {
+            throw new IllegalArgumentException("Formulas must be at most " + MAX_EXPRESSION + " characters long");
+        }
+        // The output file of the spec is not used, and must not make specs differ.
+        spec.setOutput(null);
+        return spec;
+    }
+
+    /**
+     * Returns the cached response for a plot, or renders it. A request for a plot that another request
+     * is rendering waits for that render instead of starting its own.
+     */
+    private byte[] getResponse(String format, PlotSpec spec) throws IOException {
+        String key = format + ' ' + spec;
+        synchronized (responses) {
+            byte[] cached = responses.get(key);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+        }
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        CompletableFuture<byte[]> running = rendering.putIfAbsent(key, future);
+        if (running != null) {
+            hits.increment();
+            try {
+                return running.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                } else if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw (RuntimeException) e.getCause();
+            }
+        }
+        try {
+            // The render of another request may have completed between the lookup and claiming the key.
+            byte[] body;
+            synchronized (responses) {
+                body = responses.get(key);
+            }
+            if (body != null) {
+                hits.increment();
+            } else {
+                body = render(format, spec);
+                cache(key, body);
+            }
+            future.complete(body);
+            return body;
+        } catch (IOException | RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            rendering.remove(key);
+        }
+    }
+
+    private byte[] render(String format, PlotSpec spec) throws IOException {
+        Renderer renderer;
+        try {
+            renderer = renderers.poll(RENDER_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+        if (renderer == null) {
+            throw new RenderTimeoutException();
+        }
+        long start = System.nanoTime();
+        try {
+            return renderer.render(format, spec);
+        } finally {
+            renderers.add(renderer);
+            renders.increment();
+            long micros = (System.nanoTime() - start) / 1000;
+            synchronized (renderTimes) {
+                renderTimes.record(micros);
+            }
+        }
+    }
+
+    private void cache(String key, byte[] body) {
+        synchronized (responses) {
+            byte[] previous = responses.put(key, body);
+            cachedBytes += body.length - (previous == null ? 0 : previous.length);
+            Iterator<byte[]> eldest = responses.values().iterator();
+            while (cachedBytes > CACHE_BYTES && eldest.hasNext()) {
+                cachedBytes -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops all cached responses.
+     */
+    public void clearCache() {
+        synchronized (responses) {
+            responses.clear();
+            cachedBytes = 0;
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            send(exchange, 200, getMetrics());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Returns the counters of the service and the percentiles of the latencies of the last requests and
+     * renders, in microseconds, as one {@code name value} pair per line.
+     */
+    public String getMetrics() {
+        double seconds = (System.nanoTime() - started) / 1e9;
+        StringBuilder text = new StringBuilder();
+        metric(text, "threads", isVirtual() ? "virtual" : "platform");
+        metric(text, "renderers", concurrency);
+        metric(text, "uptime_seconds", String.format(Locale.ROOT, "%.1f", seconds));
+        metric(text, "requests", requests.sum());
+        metric(text, "requests_per_second", String.format(Locale.ROOT, "%.1f", requests.sum() / seconds));
+        metric(text, "active", active.get());
+        metric(text, "cache_hits", hits.sum());
+        metric(text, "renders", renders.sum());
+        metric(text, "rejected", rejected.sum());
+        metric(text, "failed", failed.sum());
+        synchronized (responses) {
+            metric(text, "cache_entries", responses.size());
+            metric(text, "cache_bytes", cachedBytes);
+        }
+        synchronized (latencies) {
+            percentiles(text, "latency", latencies);
+        }
+        synchronized (renderTimes) {
+            percentiles(text, "render", renderTimes);
+        }
+        return text.toString();
+    }
+
+    private static void percentiles(StringBuilder text, String name, RollingHistogram histogram) {
+        metric(text, name + "_count", histogram.count());
+        metric(text, name + "_mean_us", histogram.mean());
+        metric(text, name + "_p50_us", histogram.percentile(0.5));
+        metric(text, name + "_p90_us", histogram.percentile(0.9));
+        metric(text, name + "_p99_us", histogram.percentile(0.99));
+        metric(text, name + "_max_us", histogram.max());
+    }
+
+    private static void metric(StringBuilder text, String name, Object value) {
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void send(HttpExchange exchange, int status, String text) throws IOException {
+        if (!exchange.getResponseHeaders().containsKey("Content-Type")) {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        }
+        send(exchange, status, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String message(Throwable e) {
+        return e.getCause() != null && e.getCause().getMessage() != null
+                ? e.getMessage() + ": " + e.getCause().getMessage() : String.valueOf(e.getMessage());
+    }
+
+    /**
+     * A panel with its image buffer, used by one request at a time.
+     */
+    private static final class Renderer {
+        private final GraphPanel panel = new GraphPanel();
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 16);
+        private BufferedImage image;
+
+        byte[] render(String format, PlotSpec spec) throws IOException {
+            out.reset();
+            if (format.equals("png")) {
+                image = HeadlessRenderer.render(spec, panel, image);
+                ImageIO.write(image, "png", out);
+            } else {
+                spec.applyTo(panel);
+                VectorExporter.export(panel, out, format, VectorExporter.DEFAULT_TOLERANCE);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static int length(String text) {
+        return text == null ? 0 : text.length();
+    }
+
+    /**
+     * Thrown when no renderer became free in time.
+     */
+    private static final class RenderTimeoutException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        RenderTimeoutException() {
+            super("All renderers are busy", null, false, false);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        boolean virtual = args.length <= 2 || !args[2].equals("platform");
+        PlotServer server = new PlotServer(port, concurrency, virtual);
+        server.start();
+        System.out.printf("Serving plots on http://localhost:%d/plot.png and /plot.svg with %d renderers on %s threads%n",
+                server.getPort(), concurrency, server.isVirtual() ? "virtual" : "platform");
+    }
+}
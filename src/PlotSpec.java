@@ -0,0 +1,289 @@
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Description of one plot: the enabled curves with their parameters, the scale and the image size.
+ * <p>
+ * A spec is written as whitespace-separated tokens, for example
+ * {@code out=plot.png size=800x600 scale=2 sin=1,10,0.1 parabola circle radius=5}.
+ * A curve given without parameters uses the defaults of {@link GraphPanel}.
+ * The formula of the custom curve is given with {@code expr=}, without spaces,
+ * for example {@code custom=1,2,3 expr=A*x^2+B*sin(C*x)}, and the left-hand side of the
+ * implicit curve with {@code iexpr=}, for example {@code implicit iexpr=x^2-y^3+A}.
+ * The circle takes its radius from {@code radius=} instead of C. The view is centered on the
+ * world origin unless it is moved by {@code pan=dx,dy} pixels.
+ */
+public final class PlotSpec {
+    /**
+     * The functions a spec can enable, in drawing order.
+     */
+    public static final String[] FUNCTIONS = {"sin", "cos", "tan", "ctan", "parabola", "hyperbola", "ellipse", "circle", "exp", "log", "custom", "conic", "implicit"};
+
+    private static final double[] DEFAULT_PARAMS = {1.0, 10.0, 0.1};
+    private static final double[] DEFAULT_CONIC_PARAMS = {10.0, 10.0, 1.0};
+
+    private String output;
+    private int width = 800;
+    private int height = 600;
+    private double scale = 2;
+    private double radius = 5;
+    private int panX;
+    private int panY;
+    private String expression;
+    private String implicitExpression;
+    private final Map<String, double[]> curves = new LinkedHashMap<>();
+
+    /**
+     * Parses a spec from its text form.
+     *
+     * @param text the tokens of the spec
+     * @return the parsed spec
+     * @throws IllegalArgumentException if a token is malformed or names an unknown function
+     */
+    public static PlotSpec parse(String text) {
+        PlotSpec spec = new PlotSpec();
+        for (String token : text.trim().split("\\s+")) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            int separator = token.indexOf('=');
+            String key = separator < 0 ? token : token.substring(0, separator);
+            String value = separator < 0 ? null : token.substring(separator + 1);
+            try {
+                switch (key) {
+                    case "out":
+                        spec.output = value;
+                        break;
+                    case "size":
+                        String[] size = value.toLowerCase(Locale.ROOT).split("x");
+                        spec.setSize(Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+                        break;
+                    case "scale":
+                        spec.setScale(Double.parseDouble(value));
+                        break;
+                    case "expr":
+                        Expression.parse(value);
+                        spec.expression = value;
+                        break;
+                    case "iexpr":
+                        Expression.parseImplicit(value);
+                        spec.implicitExpression = value;
+                        break;
+                    case "radius":
+                        spec.radius = Double.parseDouble(value);
+                        break;
+                    case "pan":
+                        String[] pan = value.split(",");
+                        if (pan.length != 2) {
+                            throw new IllegalArgumentException("Expected dx,dy");
+                        }
+                        spec.setPan(Integer.parseInt(pan[0]), Integer.parseInt(pan[1]));
+                        break;
+                    default:
+                        spec.setCurve(key, value == null ? null : parseParams(value));
+                        break;
+                }
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid token '" + token + "'", e);
+            }
+        }
+        return spec;
+    }
+
+    /**
+     * Captures what a panel currently draws, at its current size.
+     *
+     * @param panel the panel to describe
+     * @return a spec that renders the same curves as the panel
+     */
+    public static PlotSpec of(GraphPanel panel) {
+        PlotSpec spec = new PlotSpec();
+        for (String function : FUNCTIONS) {
+            if (panel.isDrawn(function)) {
+                spec.setCurve(function, panel.getParams(function));
+            }
+        }
+        // Tokens cannot hold spaces, and the formulas do not need them.
+        if (!panel.getExpression().equals(GraphPanel.DEFAULT_EXPRESSION)) {
+            spec.expression = panel.getExpression().replaceAll("\\s+", "");
+        }
+        if (!panel.getImplicitExpression().equals(GraphPanel.DEFAULT_IMPLICIT_EXPRESSION)) {
+            spec.implicitExpression = panel.getImplicitExpression().replaceAll("\\s+", "");
+        }
+        spec.radius = panel.getRadius();
+        spec.scale = panel.getScale();
+        spec.setPan(panel.getPanX(), panel.getPanY());
+        if (panel.getWidth() > 0 && panel.getHeight() > 0) {
+            spec.setSize(panel.getWidth(), panel.getHeight());
+        }
+        return spec;
+    }
+
+    /**
+     * Returns an independent copy of this spec.
+     */
+    public PlotSpec copy() {
+        PlotSpec copy = parse(toString());
+        copy.output = output;
+        return copy;
+    }
+
+    private static double[] parseParams(String value) {
+        String[] parts = value.split(",");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Expected A,B,C");
+        }
+        return new double[] {Double.parseDouble(parts[0]), Double.parseDouble(parts[1]), Double.parseDouble(parts[2])};
+    }
+
+    /**
+     * Enables a function.
+     *
+     * @param function the function name
+     * @param params the parameters A, B and C, or null for the defaults
+     */
+    public void setCurve(String function, double[] params) {
+        boolean known = false;
+        for (String name : FUNCTIONS) {
+            known |= name.equals(function);
+        }
+        if (!known) {
+            throw new IllegalArgumentException("Unknown function " + function);
+        }
+        curves.put(function, params == null ? defaultParams(function).clone() : params.clone());
+    }
+
+    private static double[] defaultParams(String function) {
+        return function.equals("conic") ? DEFAULT_CONIC_PARAMS : DEFAULT_PARAMS;
+    }
+
+    public void setSize(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Size must be positive");
+        }
+        this.width = width;
+        this.height = height;
+    }
+
+    public void setScale(double scale) {
+        if (!(scale > 0)) {
+            throw new IllegalArgumentException("Scale must be positive");
+        }
+        this.scale = scale;
+    }
+
+    /**
+     * Returns the parameters A, B and C of a function.
+     *
+     * @param function the function name
+     * @return a copy of the parameters, or null if the function is not enabled
+     */
+    public double[] getParams(String function) {
+        double[] params = curves.get(function);
+        return params == null ? null : params.clone();
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    /**
+     * Moves the world origin away from the center of the image.
+     *
+     * @param panX the horizontal offset in pixels, positive to the right
+     * @param panY the vertical offset in pixels, positive downwards
+     */
+    public void setPan(int panX, int panY) {
+        this.panX = panX;
+        this.panY = panY;
+    }
+
+    public void setRadius(double radius) {
+        this.radius = radius;
+    }
+
+    public void setOutput(String output) {
+        this.output = output;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * Returns the formula of the custom curve, or null for the default formula.
+     */
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * Returns the left-hand side of the implicit curve, or null for the default formula.
+     */
+    public String getImplicitExpression() {
+        return implicitExpression;
+    }
+
+    /**
+     * Configures a panel to draw this plot, resetting everything the spec does not mention.
+     *
+     * @param panel the panel to configure
+     */
+    public void applyTo(GraphPanel panel) {
+        for (String function : FUNCTIONS) {
+            double[] params = curves.getOrDefault(function, defaultParams(function));
+            panel.setDrawn(function, curves.containsKey(function));
+            panel.setA(function, params[0]);
+            panel.setB(function, params[1]);
+            panel.setC(function, params[2]);
+        }
+        panel.setExpression(expression != null ? expression : GraphPanel.DEFAULT_EXPRESSION);
+        panel.setImplicitExpression(implicitExpression != null ? implicitExpression : GraphPanel.DEFAULT_IMPLICIT_EXPRESSION);
+        panel.setRadius(radius);
+        panel.setScale(scale);
+        panel.setPan(panX, panY);
+        panel.setSize(width, height);
+    }
+
+    /**
+     * Returns the normalized text form of the spec, without the output file.
+     * Specs that draw the same image have the same text form.
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        text.append("size=").append(width).append('x').append(height);
+        text.append(" scale=").append(scale);
+        text.append(" radius=").append(radius);
+        if (panX != 0 || panY != 0) {
+            text.append(" pan=").append(panX).append(',').append(panY);
+        }
+        if (expression != null) {
+            text.append(" expr=").append(expression);
+        }
+        if (implicitExpression != null) {
+            text.append(" iexpr=").append(implicitExpression);
+        }
+        for (String function : FUNCTIONS) {
+            double[] params = curves.get(function);
+            if (params != null) {
+                text.append(' ').append(function).append('=')
+                        .append(params[0]).append(',').append(params[1]).append(',').append(params[2]);
+            }
+        }
+        return text.toString();
+    }
+}
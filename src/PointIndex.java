@@ -0,0 +1,130 @@
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Uniform grid over the screen positions of intersection points or analysis markers for hover hit-testing.
+ * Points are bucketed into square cells whose side equals the hit radius, so a lookup
+ * only inspects the 3x3 cells around the pointer.
+ */
+public final class PointIndex {
+    private final int cellSize;
+    private int columns;
+    private int rows;
+    private int[] cellStarts = new int[1];
+    private int[] cellPoints = new int[0];
+    private float[] screenXs = new float[0];
+    private float[] screenYs = new float[0];
+
+    /**
+     * Creates an empty index.
+     *
+     * @param cellSize the side of a grid cell in pixels, which is also the largest hit radius
+     */
+    public PointIndex(int cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Rebuilds the index from the points of an intersection set.
+     * Points outside the drawing area are left out.
+     *
+     * @param intersections the points to index
+     * @param viewport the viewport that maps the points to the screen
+     */
+    public void rebuild(IntersectionSet intersections, Viewport viewport) {
+        rebuild(intersections.size(), intersections::getX, intersections::getY, viewport);
+    }
+
+    /**
+     * Rebuilds the index from the markers of a curve analysis.
+     * Markers outside the drawing area are left out.
+     *
+     * @param analysis the markers to index
+     * @param viewport the viewport that maps the markers to the screen
+     */
+    public void rebuild(CurveAnalysis analysis, Viewport viewport) {
+        rebuild(analysis.size(), analysis::getX, analysis::getY, viewport);
+    }
+
+    private void rebuild(int count, IntToDoubleFunction xs, IntToDoubleFunction ys, Viewport viewport) {
+        columns = viewport.getWidth() / cellSize + 1;
+        rows = viewport.getHeight() / cellSize + 1;
+        if (screenXs.length < count) {
+            screenXs = new float[count];
+            screenYs = new float[count];
+            cellPoints = new int[count];
+        }
+        if (cellStarts.length < columns * rows + 1) {
+            cellStarts = new int[columns * rows + 1];
+        } else {
+            Arrays.fill(cellStarts, 0);
+        }
+
+        int[] cells = new int[count];
+        for (int i = 0; i < count; i++) {
+            screenXs[i] = (float) viewport.toScreenX(xs.applyAsDouble(i));
+            screenYs[i] = (float) viewport.toScreenY(ys.applyAsDouble(i));
+            cells[i] = cellOf(screenXs[i], screenYs[i]);
+            if (cells[i] >= 0) {
+                cellStarts[cells[i] + 1]++;
+            }
+        }
+        for (int cell = 0; cell < columns * rows; cell++) {
+            cellStarts[cell + 1] += cellStarts[cell];
+        }
+        int[] next = Arrays.copyOf(cellStarts, columns * rows);
+        for (int i = 0; i < count; i++) {
+            if (cells[i] >= 0) {
+                cellPoints[next[cells[i]]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Finds the point nearest to a screen position among the points within a square around it.
+     *
+     * @param x the screen x of the position
+     * @param y the screen y of the position
+     * @param radius half the side of the square, at most the cell size
+     * @return the index of the nearest point in the set it was built from, or -1 if there is none
+     */
+    public int nearest(int x, int y, int radius) {
+        if (columns == 0) {
+            return -1;
+        }
+        int column = Math.floorDiv(x, cellSize);
+        int row = Math.floorDiv(y, cellSize);
+        int nearest = -1;
+        double nearestDistance = Double.MAX_VALUE;
+        for (int r = Math.max(row - 1, 0); r <= Math.min(row + 1, rows - 1); r++) {
+            for (int c = Math.max(column - 1, 0); c <= Math.min(column + 1, columns - 1); c++) {
+                int cell = r * columns + c;
+                for (int k = cellStarts[cell]; k < cellStarts[cell + 1]; k++) {
+                    int i = cellPoints[k];
+                    double dx = screenXs[i] - x;
+                    double dy = screenYs[i] - y;
+                    if (Math.abs(dx) < radius && Math.abs(dy) < radius) {
+                        double distance = dx * dx + dy * dy;
+                        if (distance < nearestDistance) {
+                            nearestDistance = distance;
+                            nearest = i;
+                        }
+                    }
+                }
+            }
+        }
+        return nearest;
+    }
+
+    private int cellOf(float screenX, float screenY) {
+        if (!(screenX >= 0 && screenY >= 0)) {
+            return -1;
+        }
+        int column = (int) (screenX / cellSize);
+        int row = (int) (screenY / cellSize);
+        if (column >= columns || row >= rows) {
+            return -1;
+        }
+        return row * columns + column;
+    }
+}
@@ -0,0 +1,256 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Per-stage timings and counters of the frames painted by {@link GraphPanel}.
+ * <p>
+ * Each frame is emitted as a {@code graph.Frame} JFR event and each stage as a
+ * {@code graph.Stage} event, and the last frames are kept in rolling histograms for the HUD.
+ * When neither the HUD is shown nor a recording has the events enabled, a frame is not
+ * measured at all: every call after {@link #beginFrame()} returns after checking one flag.
+ */
+public final class RenderStats {
+    private static final int WINDOW = 120;
+
+    /**
+     * The stages of a frame, in paint order.
+     */
+    public enum Stage {
+        AXES("axes"),
+        SAMPLING("sample"),
+        DRAWING("draw"),
+        INTERSECTIONS("isect");
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    @Name("graph.Frame")
+    @Label("Graph Frame")
+    @Category("Graph")
+    @Description("A frame painted by GraphPanel")
+    static final class FrameEvent extends Event {
+        @Label("Width")
+        int width;
+
+        @Label("Height")
+        int height;
+
+        @Label("Samples Evaluated")
+        long samples;
+
+        @Label("Segments Drawn")
+        long segments;
+
+        @Label("Intersections Found")
+        int intersections;
+    }
+
+    @Name("graph.Stage")
+    @Label("Graph Stage")
+    @Category("Graph")
+    @Description("A stage of a frame painted by GraphPanel")
+    static final class StageEvent extends Event {
+        @Label("Stage")
+        String stage;
+
+        @Label("Stage Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long time;
+    }
+
+    private static final FrameEvent FRAME_PROBE = new FrameEvent();
+    private static final StageEvent STAGE_PROBE = new StageEvent();
+
+    private boolean hudEnabled;
+    private boolean measuring;
+    private FrameEvent frameEvent;
+    private long frameStart;
+    private final long[] stageNanos = new long[Stage.values().length];
+    private long samples;
+    private long segments;
+    private int intersections;
+
+    private final RollingHistogram frameTimes = new RollingHistogram(WINDOW);
+    private final RollingHistogram[] stageTimes = new RollingHistogram[Stage.values().length];
+    private final RollingHistogram sampleCounts = new RollingHistogram(WINDOW);
+    private final RollingHistogram segmentCounts = new RollingHistogram(WINDOW);
+    private final RollingHistogram intersectionCounts = new RollingHistogram(WINDOW);
+
+    public RenderStats() {
+        for (int i = 0; i < stageTimes.length; i++) {
+            stageTimes[i] = new RollingHistogram(WINDOW);
+        }
+    }
+
+    public void setHudEnabled(boolean hudEnabled) {
+        this.hudEnabled = hudEnabled;
+        if (!hudEnabled) {
+            frameTimes.clear();
+            for (RollingHistogram histogram : stageTimes) {
+                histogram.clear();
+            }
+            sampleCounts.clear();
+            segmentCounts.clear();
+            intersectionCounts.clear();
+        }
+    }
+
+    public boolean isHudEnabled() {
+        return hudEnabled;
+    }
+
+    /**
+     * Starts measuring a frame if the HUD is shown or a JFR recording wants the frame events.
+     */
+    public void beginFrame() {
+        measuring = hudEnabled || FRAME_PROBE.isEnabled() || STAGE_PROBE.isEnabled();
+        if (!measuring) {
+            return;
+        }
+        frameEvent = new FrameEvent();
+        frameEvent.begin();
+        frameStart = System.nanoTime();
+        Arrays.fill(stageNanos, 0);
+        samples = 0;
+        segments = 0;
+        intersections = 0;
+    }
+
+    /**
+     * Returns the start time of a stage, to be passed to {@link #endStage}.
+     */
+    public long startStage() {
+        return measuring ? System.nanoTime() : 0;
+    }
+
+    public void endStage(Stage stage, long start) {
+        if (measuring) {
+            addStage(stage, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Adds time spent on a stage of this frame elsewhere, such as on the render worker.
+     *
+     * @param stage the stage
+     * @param duration the time spent, in nanoseconds
+     */
+    public void addStage(Stage stage, long duration) {
+        if (!measuring) {
+            return;
+        }
+        stageNanos[stage.ordinal()] += duration;
+        StageEvent event = new StageEvent();
+        if (event.shouldCommit()) {
+            event.stage = stage.label;
+            event.time = duration;
+            event.commit();
+        }
+    }
+
+    /**
+     * Counts function evaluations made to sample curves in this frame.
+     */
+    public void addSamples(long count) {
+        if (measuring) {
+            samples += count;
+        }
+    }
+
+    /**
+     * Counts segments handed to the rasterizer in this frame.
+     */
+    public void addSegments(long count) {
+        if (measuring) {
+            segments += count;
+        }
+    }
+
+    public void setIntersections(int count) {
+        if (measuring) {
+            intersections = count;
+        }
+    }
+
+    public void endFrame(int width, int height) {
+        if (!measuring) {
+            return;
+        }
+        measuring = false;
+        frameTimes.record(System.nanoTime() - frameStart);
+        for (Stage stage : Stage.values()) {
+            stageTimes[stage.ordinal()].record(stageNanos[stage.ordinal()]);
+        }
+        sampleCounts.record(samples);
+        segmentCounts.record(segments);
+        intersectionCounts.record(intersections);
+
+        frameEvent.end();
+        if (frameEvent.shouldCommit()) {
+            frameEvent.width = width;
+            frameEvent.height = height;
+            frameEvent.samples = samples;
+            frameEvent.segments = segments;
+            frameEvent.intersections = intersections;
+            frameEvent.commit();
+        }
+        frameEvent = null;
+    }
+
+    /**
+     * Draws the statistics of the recent frames in the top left corner.
+     *
+     * @param g2 the Graphics2D object to draw on
+     */
+    public void drawHud(Graphics2D g2) {
+        String[] lines = {
+                String.format(Locale.ROOT, "frame ms  p50 %.2f  p95 %.2f  max %.2f  (%d frames)",
+                        millis(frameTimes.percentile(0.5)), millis(frameTimes.percentile(0.95)),
+                        millis(frameTimes.max()), frameTimes.count()),
+                stageLine(),
+                counterLine("samples", sampleCounts),
+                counterLine("segments", segmentCounts),
+                counterLine("intersections", intersectionCounts)
+        };
+        FontMetrics metrics = g2.getFontMetrics();
+        int width = 0;
+        for (String line : lines) {
+            width = Math.max(width, metrics.stringWidth(line));
+        }
+        g2.setColor(new Color(255, 255, 255, 210));
+        g2.fillRect(4, 4, width + 12, lines.length * metrics.getHeight() + 8);
+        g2.setColor(Color.BLACK);
+        for (int i = 0; i < lines.length; i++) {
+            g2.drawString(lines[i], 10, 8 + metrics.getAscent() + i * metrics.getHeight());
+        }
+    }
+
+    private String stageLine() {
+        StringBuilder line = new StringBuilder("stage ms p95");
+        for (Stage stage : Stage.values()) {
+            line.append(String.format(Locale.ROOT, "  %s %.2f", stage.label, millis(stageTimes[stage.ordinal()].percentile(0.95))));
+        }
+        return line.toString();
+    }
+
+    private static String counterLine(String name, RollingHistogram histogram) {
+        return String.format(Locale.ROOT, "%s  last %d  p50 %d  p95 %d  max %d", name, histogram.last(),
+                histogram.percentile(0.5), histogram.percentile(0.95), histogram.max());
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,156 @@
+import javax.swing.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Runs computations one at a time on a background thread and hands their results to the
+ * event dispatch thread. Submitting a computation cancels the one in flight, so only the
+ * result of the newest computation is ever delivered.
+ * <p>
+ * Cancellation is cooperative: a computation evaluates its curves through the guards of its
+ * {@link Cancellation}, and the first evaluation after a newer submission throws
+ * {@link CancellationException}. That unwinds sampling, tracing and intersection search alike,
+ * including their parallel tasks, without any of them checking a flag.
+ *
+ * @param <T> the type of the results
+ */
+public final class RenderWorker<T> {
+    /**
+     * A computation that checks its cancellation while it runs.
+     */
+    public interface Computation<T> {
+        T compute(Cancellation cancellation);
+    }
+
+    /**
+     * The cancellation state of one submitted computation.
+     */
+    public static final class Cancellation {
+        private volatile boolean cancelled;
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Throws if the computation has been superseded.
+         *
+         * @throws CancellationException if a newer computation was submitted
+         */
+        public void check() {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+        }
+
+        /**
+         * Returns a function that checks for cancellation before every evaluation.
+         */
+        public CurveFunction guard(CurveFunction function) {
+            return new CurveFunction() {
+                @Override
+                public double apply(double x) {
+                    check();
+                    return function.apply(x);
+                }
+
+                @Override
+                public void applyAll(double startX, double stepX, double[] out, int count) {
+                    check();
+                    function.applyAll(startX, stepX, out, count);
+                }
+            };
+        }
+
+        /**
+         * Returns an implicit function that checks for cancellation before every evaluation.
+         */
+        public ImplicitFunction guard(ImplicitFunction function) {
+            return (x, y) -> {
+                check();
+                return function.apply(x, y);
+            };
+        }
+    }
+
+    private final ExecutorService executor;
+    private Cancellation current;
+    private long completed;
+    private long cancelled;
+
+    /**
+     * Creates a worker with its own daemon thread.
+     *
+     * @param name the name of the thread
+     */
+    public RenderWorker(String name) {
+        executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Cancels the computation in flight, if any, and queues a new one.
+     * Must be called from the event dispatch thread.
+     *
+     * @param computation the computation to run
+     * @param done receives the result on the event dispatch thread, unless the computation is cancelled first
+     */
+    public void submit(Computation<T> computation, Consumer<T> done) {
+        cancel();
+        Cancellation cancellation = new Cancellation();
+        current = cancellation;
+        executor.execute(() -> {
+            T result;
+            try {
+                cancellation.check();
+                result = computation.compute(cancellation);
+            } catch (CancellationException e) {
+                return;
+            }
+            SwingUtilities.invokeLater(() -> {
+                if (cancellation == current) {
+                    current = null;
+                    completed++;
+                    done.accept(result);
+                }
+            });
+        });
+    }
+
+    /**
+     * Cancels the computation in flight, if any. Must be called from the event dispatch thread.
+     */
+    public void cancel() {
+        if (current != null) {
+            current.cancelled = true;
+            current = null;
+            cancelled++;
+        }
+    }
+
+    /**
+     * Returns whether a computation is queued or running.
+     */
+    public boolean isBusy() {
+        return current != null;
+    }
+
+    /**
+     * Returns the number of computations whose results were delivered.
+     */
+    public long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * Returns the number of computations cancelled before their results were delivered.
+     */
+    public long getCancelled() {
+        return cancelled;
+    }
+}
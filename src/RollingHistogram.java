@@ -0,0 +1,77 @@
+import java.util.Arrays;
+
+/**
+ * Distribution of the most recent values of a per-frame metric.
+ * Values are kept in a fixed-size ring, so recording never allocates;
+ * percentiles are computed on demand from a sorted copy.
+ */
+public final class RollingHistogram {
+    private final long[] values;
+    private final long[] sorted;
+    private int count;
+    private int next;
+
+    /**
+     * Creates an empty histogram.
+     *
+     * @param window the number of most recent values to keep
+     */
+    public RollingHistogram(int window) {
+        values = new long[window];
+        sorted = new long[window];
+    }
+
+    public void record(long value) {
+        values[next] = value;
+        next = (next + 1) % values.length;
+        count = Math.min(count + 1, values.length);
+    }
+
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Returns the most recently recorded value, or 0 if there is none.
+     */
+    public long last() {
+        return count == 0 ? 0 : values[(next + values.length - 1) % values.length];
+    }
+
+    public long mean() {
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += values[i];
+        }
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * Returns the value below which the given fraction of the kept values lie.
+     *
+     * @param fraction the fraction between 0 and 1, for example 0.95
+     * @return the percentile, or 0 if there are no values
+     */
+    public long percentile(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        System.arraycopy(values, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        int rank = (int) Math.ceil(fraction * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, rank))];
+    }
+
+    public long max() {
+        long max = 0;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+
+    public void clear() {
+        count = 0;
+        next = 0;
+    }
+}
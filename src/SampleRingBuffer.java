@@ -0,0 +1,104 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded single-producer, single-consumer queue of (x, y) samples in preallocated primitive arrays.
+ * Appending neither allocates nor locks: the producer writes the slot and publishes it with an
+ * ordered store of the head, and the consumer frees slots the same way through the tail.
+ * When the consumer falls behind and the buffer is full, new samples are dropped and counted.
+ */
+public final class SampleRingBuffer {
+    /**
+     * Receives drained samples.
+     */
+    public interface Sink {
+        void accept(double x, double y);
+    }
+
+    private final double[] xs;
+    private final double[] ys;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong pendingSince = new AtomicLong();
+    private long producerHead;
+    private long consumerTail;
+
+    /**
+     * Creates an empty buffer.
+     *
+     * @param capacity the number of slots, rounded up to a power of two
+     */
+    public SampleRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        xs = new double[size];
+        ys = new double[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Appends a sample. Must only be called from the producer thread.
+     *
+     * @param x the x value
+     * @param y the y value
+     * @return false if the buffer was full and the sample was dropped
+     */
+    public boolean offer(double x, double y) {
+        long h = producerHead;
+        long t = tail.get();
+        if (h - t == xs.length) {
+            dropped.lazySet(dropped.get() + 1);
+            return false;
+        }
+        if (h == t) {
+            pendingSince.lazySet(System.nanoTime());
+        }
+        int slot = (int) h & mask;
+        xs[slot] = x;
+        ys[slot] = y;
+        producerHead = h + 1;
+        head.lazySet(h + 1);
+        return true;
+    }
+
+    /**
+     * Hands all published samples to a sink in order and frees their slots.
+     * Must only be called from the consumer thread.
+     *
+     * @param sink the receiver of the samples
+     * @return the number of samples drained
+     */
+    public int drain(Sink sink) {
+        long h = head.get();
+        long t = consumerTail;
+        for (long i = t; i < h; i++) {
+            int slot = (int) i & mask;
+            sink.accept(xs[slot], ys[slot]);
+        }
+        consumerTail = h;
+        tail.lazySet(h);
+        return (int) (h - t);
+    }
+
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    public int capacity() {
+        return xs.length;
+    }
+
+    /**
+     * Returns the number of samples dropped because the buffer was full.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which a sample was last appended to an empty buffer.
+     */
+    public long getPendingSince() {
+        return pendingSince.get();
+    }
+}
@@ -0,0 +1,119 @@
+import java.util.Arrays;
+
+/**
+ * Samples of a curve in world coordinates, stored in primitive arrays.
+ * A sample with a NaN y value marks a break: a pole or a gap in the domain
+ * across which no line must be drawn.
+ */
+public final class SampledCurve {
+    private double[] xs;
+    private double[] ys;
+    private int size;
+    private int evaluations;
+
+    public SampledCurve() {
+        this(256);
+    }
+
+    /**
+     * Creates an empty curve.
+     *
+     * @param capacity the initial number of samples to reserve space for
+     */
+    public SampledCurve(int capacity) {
+        xs = new double[Math.max(capacity, 16)];
+        ys = new double[xs.length];
+    }
+
+    /**
+     * Appends a sample. Non-finite y values are stored as a break.
+     *
+     * @param x the x value
+     * @param y the y value
+     */
+    public void add(double x, double y) {
+        if (Double.isFinite(y)) {
+            append(x, y);
+        } else {
+            addBreak(x);
+        }
+    }
+
+    /**
+     * Appends a break unless the curve already ends with one.
+     *
+     * @param x the x value where the curve is interrupted
+     */
+    public void addBreak(double x) {
+        if (size == 0 || !isBreak(size - 1)) {
+            append(x, Double.NaN);
+        }
+    }
+
+    /**
+     * Appends all samples of another curve, merging adjacent breaks.
+     *
+     * @param other the curve to append
+     */
+    public void addAll(SampledCurve other) {
+        for (int i = 0; i < other.size; i++) {
+            if (other.isBreak(i)) {
+                addBreak(other.xs[i]);
+            } else {
+                append(other.xs[i], other.ys[i]);
+            }
+        }
+        evaluations += other.evaluations;
+    }
+
+    /**
+     * Removes the samples from the given index on.
+     *
+     * @param size the number of samples to keep
+     */
+    public void truncate(int size) {
+        if (size < 0 || size > this.size) {
+            throw new IndexOutOfBoundsException("Cannot truncate " + this.size + " samples to " + size);
+        }
+        this.size = size;
+    }
+
+    private void append(double x, double y) {
+        if (size == xs.length) {
+            xs = Arrays.copyOf(xs, size * 2);
+            ys = Arrays.copyOf(ys, size * 2);
+        }
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getX(int index) {
+        return xs[index];
+    }
+
+    public double getY(int index) {
+        return ys[index];
+    }
+
+    public boolean isBreak(int index) {
+        return Double.isNaN(ys[index]);
+    }
+
+    /**
+     * Returns the number of function evaluations spent producing the samples.
+     *
+     * @return the number of evaluations
+     */
+    public int getEvaluations() {
+        return evaluations;
+    }
+
+    void countEvaluations(int count) {
+        evaluations += count;
+    }
+}
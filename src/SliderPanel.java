@@ -5,6 +5,10 @@ import java.awt.*;
  * Utility class for creating slider panels.
  */
 public class SliderPanel {
+    /**
+     * Slider steps per unit of a parameter, so that defaults such as C = 0.1 are shown as they are.
+     */
+    private static final int STEPS_PER_UNIT = 10;
 
     /**
      * Creates a slider panel for the given function.
@@ -18,29 +22,38 @@ public class SliderPanel {
         panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
         panel.setBorder(BorderFactory.createTitledBorder(function));
 
-        JSlider sliderA = new JSlider(-10, 10, 1);
-        sliderA.addChangeListener(e -> graphPanel.setA(function, sliderA.getValue()));
-        panel.add(new JLabel("A"));
-        panel.add(sliderA);
-
-        JSlider sliderB = new JSlider(-10, 10, 10);
-        sliderB.addChangeListener(e -> graphPanel.setB(function, sliderB.getValue()));
-        panel.add(new JLabel("B"));
-        panel.add(sliderB);
-
-        JSlider sliderC = new JSlider(-10, 10, 1);
-        sliderC.addChangeListener(e -> graphPanel.setC(function, sliderC.getValue()));
-        panel.add(new JLabel("C"));
-        panel.add(sliderC);
+        CurveDescriptor curve = graphPanel.getRegistry().get(function);
+        if (curve.getSource() != null) {
+            boolean implicit = curve.isImplicit();
+            JTextField expressionField = new JTextField(curve.getSource());
+            expressionField.addActionListener(e -> {
+                try {
+                    graphPanel.setExpression(function, expressionField.getText());
+                    expressionField.setForeground(Color.BLACK);
+                    String failure = curve.getCompileFailure();
+                    expressionField.setToolTipText(failure == null ? null : "Interpreted: " + failure);
+                } catch (IllegalArgumentException ex) {
+                    expressionField.setForeground(Color.RED);
+                    expressionField.setToolTipText(ex.getMessage());
+                }
+            });
+            panel.add(new JLabel(implicit ? "F(x, y) = 0" : "f(x)"));
+            panel.add(expressionField);
+        }
 
-        if (function.equals("circle")) {
-            sliderA.setVisible(false);
-            sliderB.setVisible(false);
-            sliderC.setVisible(false);
-            JSlider sliderRadius = new JSlider(0, 10, 5);
-            sliderRadius.addChangeListener(e -> graphPanel.setRadius(sliderRadius.getValue()));
-            panel.add(new JLabel("Radius"));
-            panel.add(sliderRadius);
+        String[] names = curve.getParameterNames();
+        for (int i = 0; i < names.length; i++) {
+            int index = i;
+            // The radius cannot be negative; the other parameters may change sign.
+            int min = names[i].equals("Radius") ? 0 : -10;
+            JSlider slider = new JSlider(min * STEPS_PER_UNIT, 10 * STEPS_PER_UNIT,
+                    (int) Math.round(curve.getParameter(i) * STEPS_PER_UNIT));
+            slider.addChangeListener(e -> {
+                graphPanel.setAdjusting(function, slider.getValueIsAdjusting());
+                graphPanel.setParameter(function, index, (double) slider.getValue() / STEPS_PER_UNIT);
+            });
+            panel.add(new JLabel(names[i]));
+            panel.add(slider);
         }
 
         graphPanel.functionPanels.put(function, panel);
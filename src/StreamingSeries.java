@@ -0,0 +1,215 @@
+/**
+ * Live series fed by a producer thread and drawn scrolling, with its newest sample at the
+ * right edge of the panel. Samples travel through a {@link SampleRingBuffer}; the render
+ * thread drains them once per frame into a window of the most recent samples, from which
+ * at most four samples per pixel column are taken for drawing.
+ * <p>
+ * The producer must append samples with non-decreasing x, typically a time stamp.
+ */
+public final class StreamingSeries {
+    private final String name;
+    private final SampleRingBuffer buffer;
+    private final double[] windowXs;
+    private final double[] windowYs;
+    private final int windowMask;
+    private final SampleRingBuffer.Sink appender = this::remember;
+    private long written;
+    private int count;
+
+    private long lastDrain;
+    private long oldestPending;
+    private volatile long frames;
+    private volatile long lastLatency;
+    private volatile long maxLatency;
+    private volatile long totalLatency;
+
+    /**
+     * Creates an empty series.
+     *
+     * @param name the name of the series, unique within a panel
+     * @param bufferCapacity the number of samples that can wait between two frames
+     * @param windowCapacity the number of most recent samples kept for drawing, rounded up to a power of two
+     */
+    public StreamingSeries(String name, int bufferCapacity, int windowCapacity) {
+        this.name = name;
+        this.buffer = new SampleRingBuffer(bufferCapacity);
+        int size = Integer.highestOneBit(Math.max(windowCapacity, 2) - 1) << 1;
+        this.windowXs = new double[size];
+        this.windowYs = new double[size];
+        this.windowMask = size - 1;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Appends a sample. Must only be called from the single producer thread.
+     *
+     * @param x the x value, not less than the previous one
+     * @param y the y value
+     * @return false if the sample was dropped because the renderer fell behind
+     */
+    public boolean append(double x, double y) {
+        return buffer.offer(x, y);
+    }
+
+    /**
+     * Returns whether samples are waiting to be drawn.
+     */
+    public boolean hasPending() {
+        return !buffer.isEmpty();
+    }
+
+    /**
+     * Moves the waiting samples into the window. Called by the render thread at the start of a frame.
+     *
+     * @return the number of samples moved
+     */
+    int drain() {
+        long now = System.nanoTime();
+        long since = Math.max(buffer.getPendingSince(), lastDrain);
+        int drained = buffer.drain(appender);
+        oldestPending = drained > 0 ? since : 0;
+        lastDrain = now;
+        return drained;
+    }
+
+    /**
+     * Records the latency of a frame: the time from the publication of the oldest sample
+     * it drew for the first time to the end of painting. Frames without new samples are not counted.
+     */
+    void framePainted() {
+        if (oldestPending == 0) {
+            return;
+        }
+        long latency = System.nanoTime() - oldestPending;
+        oldestPending = 0;
+        frames++;
+        lastLatency = latency;
+        maxLatency = Math.max(maxLatency, latency);
+        totalLatency += latency;
+    }
+
+    private void remember(double x, double y) {
+        int slot = (int) written & windowMask;
+        windowXs[slot] = x;
+        windowYs[slot] = y;
+        written++;
+        count = Math.min(count + 1, windowXs.length);
+    }
+
+    /**
+     * Samples the window for a viewport, shifted so that the newest sample lies on the right edge.
+     * Every pixel column contributes its first, lowest, highest and last sample.
+     *
+     * @param viewport the viewport to sample for
+     * @return at most four samples per pixel column
+     */
+    SampledCurve sample(Viewport viewport) {
+        int width = viewport.getWidth();
+        SampledCurve curve = new SampledCurve(4 * width + 2);
+        if (count == 0) {
+            return curve;
+        }
+        double shift = viewport.toWorldX(width) - getX(count - 1);
+        int start = lowerBound(viewport.toWorldX(0) - shift);
+        if (start > 0) {
+            add(curve, start - 1, shift);
+        }
+        for (int column = 0; column < width && start < count; column++) {
+            int end = lowerBound(viewport.toWorldX(column + 1) - shift);
+            if (end > start) {
+                int min = start;
+                int max = start;
+                for (int i = start + 1; i < end; i++) {
+                    double y = getY(i);
+                    if (y < getY(min)) {
+                        min = i;
+                    }
+                    if (y > getY(max)) {
+                        max = i;
+                    }
+                }
+                int low = Math.min(min, max);
+                int high = Math.max(min, max);
+                add(curve, start, shift);
+                if (low != start && low != end - 1) {
+                    add(curve, low, shift);
+                }
+                if (high != start && high != end - 1 && high != low) {
+                    add(curve, high, shift);
+                }
+                if (end - 1 > start) {
+                    add(curve, end - 1, shift);
+                }
+            }
+            start = end;
+        }
+        if (start < count) {
+            add(curve, start, shift);
+        }
+        return curve;
+    }
+
+    private void add(SampledCurve curve, int index, double shift) {
+        curve.add(getX(index) + shift, getY(index));
+    }
+
+    private int lowerBound(double x) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getX(middle) < x) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the x of a sample of the window, counting from the oldest.
+     */
+    private double getX(int index) {
+        return windowXs[(int) (written - count + index) & windowMask];
+    }
+
+    private double getY(int index) {
+        return windowYs[(int) (written - count + index) & windowMask];
+    }
+
+    /**
+     * Returns the number of samples dropped because the buffer was full when they were appended.
+     */
+    public long getDroppedSamples() {
+        return buffer.getDropped();
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Returns the latency of the last frame that drew new samples, in nanoseconds.
+     */
+    public long getLastFrameLatency() {
+        return lastLatency;
+    }
+
+    public long getMaxFrameLatency() {
+        return maxLatency;
+    }
+
+    public long getAverageFrameLatency() {
+        return frames == 0 ? 0 : totalLatency / frames;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d frames, latency %.1f ms (avg %.1f, max %.1f), %d dropped", name, frames,
+                lastLatency / 1e6, getAverageFrameLatency() / 1e6, maxLatency / 1e6, getDroppedSamples());
+    }
+}
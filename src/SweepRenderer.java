@@ -0,0 +1,228 @@
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+
+/**
+ * Renders an animation in which one parameter of a curve moves linearly through a range,
+ * as a numbered PNG sequence {@code frame_00000.png}, {@code frame_00001.png}, ...
+ * <p>
+ * Every frame is a task on a fixed pool, and at most two frames per thread are queued at a time,
+ * so long sweeps do not pile up pending work. Frames are drawn by {@link HeadlessRenderer},
+ * which reuses one panel and image buffer per thread.
+ * <p>
+ * Usage: {@code java -Djava.awt.headless=true SweepRenderer "<spec>" <function> <A|B|C> <from> <to> <frames> <directory> [threads]}
+ * <p>
+ * For example {@code SweepRenderer "size=640x480 cos" sin B 1 40 120 frames} renders 120 frames of the
+ * sine with B going from 1 to 40 over the cosine. The swept C of the circle is its radius.
+ */
+public final class SweepRenderer {
+    private final PlotSpec base;
+    private final String function;
+    private final int parameter;
+    private final double from;
+    private final double to;
+    private final int frames;
+
+    /**
+     * Result of a sweep.
+     */
+    public static final class Result {
+        private final int frames;
+        private final double seconds;
+        private final long peakHeap;
+        private final int threads;
+
+        Result(int frames, double seconds, long peakHeap, int threads) {
+            this.frames = frames;
+            this.seconds = seconds;
+            this.peakHeap = peakHeap;
+            this.threads = threads;
+        }
+
+        public int getFrames() {
+            return frames;
+        }
+
+        public double getSeconds() {
+            return seconds;
+        }
+
+        public double getFramesPerSecond() {
+            return frames / seconds;
+        }
+
+        /**
+         * Returns the sum of the peak usages of the heap memory pools during the sweep, in bytes.
+         * The pools may peak at different times, so this is an upper bound of the peak heap usage.
+         */
+        public long getPeakHeap() {
+            return peakHeap;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "Rendered %d frames in %.2f s (%.1f frames/s) on %d threads, peak heap %.1f MB",
+                    frames, seconds, getFramesPerSecond(), threads, peakHeap / (1024.0 * 1024.0));
+        }
+    }
+
+    /**
+     * Creates a sweep.
+     *
+     * @param base the plot to animate; the swept function is enabled if it is not
+     * @param function the function whose parameter moves
+     * @param parameter the parameter that moves, "A", "B" or "C"
+     * @param from the value in the first frame
+     * @param to the value in the last frame
+     * @param frames the number of frames
+     * @throws IllegalArgumentException if the function or parameter is unknown, or there are no frames
+     */
+    public SweepRenderer(PlotSpec base, String function, String parameter, double from, double to, int frames) {
+        this.parameter = "ABC".indexOf(parameter.toUpperCase(Locale.ROOT));
+        if (parameter.length() != 1 || this.parameter < 0) {
+            throw new IllegalArgumentException("Parameter must be A, B or C: " + parameter);
+        }
+        if (function.equals("ellipse") && this.parameter == 2) {
+            throw new IllegalArgumentException("The ellipse has no parameter C");
+        }
+        if (frames < 1) {
+            throw new IllegalArgumentException("Frame count must be positive");
+        }
+        this.base = base.copy();
+        if (this.base.getParams(function) == null) {
+            this.base.setCurve(function, null);
+        }
+        this.function = function;
+        this.from = from;
+        this.to = to;
+        this.frames = frames;
+    }
+
+    public int getFrames() {
+        return frames;
+    }
+
+    /**
+     * Returns the value of the swept parameter in a frame.
+     *
+     * @param frame the frame number, from 0
+     */
+    public double value(int frame) {
+        return frames == 1 ? from : from + (to - from) * frame / (frames - 1);
+    }
+
+    /**
+     * Returns the plot of a frame.
+     *
+     * @param frame the frame number, from 0
+     */
+    public PlotSpec frame(int frame) {
+        PlotSpec spec = base.copy();
+        if (function.equals("circle") && parameter == 2) {
+            spec.setRadius(value(frame));
+        } else {
+            double[] params = spec.getParams(function);
+            params[parameter] = value(frame);
+            spec.setCurve(function, params);
+        }
+        return spec;
+    }
+
+    /**
+     * Renders all frames into a directory, which is created if needed.
+     * Stops at the first frame that cannot be written.
+     *
+     * @param directory the directory of the PNG files
+     * @param threads the number of rendering threads
+     * @param progress receives the number of frames written so far after each frame, on a rendering thread; may be null
+     * @return the frame rate and memory use of the sweep
+     * @throws IOException if a frame cannot be written
+     * @throws InterruptedException if the calling thread is interrupted; queued frames are then abandoned
+     */
+    public Result render(File directory, int threads, IntConsumer progress) throws IOException, InterruptedException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        HeadlessRenderer renderer = new HeadlessRenderer();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Semaphore slots = new Semaphore(2 * threads);
+        AtomicInteger written = new AtomicInteger();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        for (MemoryPoolMXBean pool : heapPools()) {
+            pool.resetPeakUsage();
+        }
+
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < frames && failure.get() == null; i++) {
+                int frame = i;
+                slots.acquire();
+                executor.execute(() -> {
+                    try {
+                        File file = new File(directory, String.format("frame_%05d.png", frame));
+                        ImageIO.write(renderer.render(frame(frame)), "png", file);
+                        int done = written.incrementAndGet();
+                        if (progress != null) {
+                            progress.accept(done);
+                        }
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Exception e = failure.get();
+        if (e != null) {
+            throw e instanceof IOException ? (IOException) e : new IOException("Cannot render sweep: " + e, e);
+        }
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools()) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+        return new Result(written.get(), seconds, peakHeap, threads);
+    }
+
+    private static Iterable<MemoryPoolMXBean> heapPools() {
+        return () -> ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .iterator();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 7) {
+            System.err.println("Usage: java SweepRenderer <spec> <function> <A|B|C> <from> <to> <frames> <directory> [threads]");
+            System.exit(2);
+        }
+        int threads = args.length > 7 ? Integer.parseInt(args[7]) : Runtime.getRuntime().availableProcessors();
+        SweepRenderer sweep;
+        try {
+            sweep = new SweepRenderer(PlotSpec.parse(args[0]), args[1], args[2],
+                    Double.parseDouble(args[3]), Double.parseDouble(args[4]), Integer.parseInt(args[5]));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        System.out.println(sweep.render(new File(args[6]), threads, null));
+    }
+}
@@ -0,0 +1,315 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Memory-bounded cache of raster tiles of named layers, such as one layer per curve.
+ * <p>
+ * The plane is split into square tiles of {@link #SIZE} pixels on a grid anchored at the world
+ * origin, separately for every scale, so a tile stays valid while the view is panned. Missing
+ * tiles are rendered on a pool of background threads and drawn once they are ready; panning
+ * therefore only renders the tiles it newly exposes. Each layer carries a version, typically
+ * the parameters of its curve, and changing the version drops all tiles of that layer only.
+ * <p>
+ * Tiles on which nothing was drawn are kept as markers without an image, which count toward the
+ * memory budget with the size of their entry, so that panning over blank areas cannot grow the
+ * cache without bound. When the cache is over its memory budget, the least recently drawn tiles are evicted, but never tiles drawn in the
+ * current frame, so the visible tiles may exceed the budget rather than be rendered over and over.
+ */
+public final class TileCache {
+    /**
+     * Side of a tile in pixels.
+     */
+    public static final int SIZE = 256;
+
+    /**
+     * Pixels rendered beyond each edge of a tile, so that lines crossing its edge are antialiased
+     * the same way on both sides. A multiple of the marching squares cell.
+     */
+    private static final int MARGIN = 4;
+
+    private static final long TILE_BYTES = 4L * SIZE * SIZE;
+
+    /**
+     * Estimated memory of a tile apart from its image: the key with its layer reference, the tile
+     * and the entry of the linked map.
+     */
+    private static final long ENTRY_BYTES = 128;
+    private static final BufferedImage EMPTY = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB_PRE);
+
+    /**
+     * Renders the content of a layer into a tile.
+     */
+    public interface Painter {
+        /**
+         * Draws a layer for a viewport that covers the tile and its margin.
+         * Called on a background thread.
+         *
+         * @param g2 the Graphics2D object to draw on
+         * @param image the tile image that g2 draws into, translated by the margin
+         * @param viewport the viewport of the tile
+         * @return the number of vertices drawn, 0 if the tile is empty
+         */
+        int paint(Graphics2D g2, BufferedImage image, Viewport viewport);
+    }
+
+    private final Map<Key, Tile> tiles = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, Object> versions = new HashMap<>();
+    private final Set<Key> pending = new HashSet<>();
+    private final ExecutorService executor;
+    private final Runnable onRendered;
+    private long maxBytes;
+    private long bytes;
+    private long frame;
+    private double currentScale;
+    private long hits;
+    private long misses;
+    private long renders;
+    private long evictions;
+
+    /**
+     * Creates an empty cache with its own rendering threads, one per processor.
+     *
+     * @param maxBytes the memory budget for tiles
+     * @param onRendered called on a rendering thread after a tile was added, typically to request a repaint
+     */
+    public TileCache(long maxBytes, Runnable onRendered) {
+        this.maxBytes = maxBytes;
+        this.onRendered = onRendered;
+        this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), task -> {
+            Thread thread = new Thread(task, "graph-tiles");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts a new frame. Tiles drawn from now on are protected from eviction until the next frame.
+     *
+     * @param scale the scale of the frame; queued tiles of other scales are skipped
+     */
+    public synchronized void beginFrame(double scale) {
+        frame++;
+        currentScale = scale;
+    }
+
+    /**
+     * Draws the tiles of a layer that cover a viewport, queueing the missing ones for rendering.
+     *
+     * @param g2 the Graphics2D object to draw on
+     * @param layer the name of the layer
+     * @param version the inputs of the layer, compared with equals; a new version drops the old tiles
+     * @param viewport the viewport to cover
+     * @param painter renders missing tiles
+     * @return the number of tiles that are not ready yet
+     */
+    public int draw(Graphics2D g2, String layer, Object version, Viewport viewport, Painter painter) {
+        double scale = viewport.getScale();
+        int firstX = Math.floorDiv(-viewport.getOriginX(), SIZE);
+        int lastX = Math.floorDiv(viewport.getWidth() - 1 - viewport.getOriginX(), SIZE);
+        int firstY = Math.floorDiv(-viewport.getOriginY(), SIZE);
+        int lastY = Math.floorDiv(viewport.getHeight() - 1 - viewport.getOriginY(), SIZE);
+        int missing = 0;
+        synchronized (this) {
+            if (!Objects.equals(versions.put(layer, version), version)) {
+                invalidate(layer);
+            }
+        }
+        for (int ty = firstY; ty <= lastY; ty++) {
+            for (int tx = firstX; tx <= lastX; tx++) {
+                Key key = new Key(layer, scale, tx, ty);
+                BufferedImage image = lookup(key, version, painter);
+                if (image == null) {
+                    missing++;
+                } else if (image != EMPTY) {
+                    g2.drawImage(image, viewport.getOriginX() + tx * SIZE, viewport.getOriginY() + ty * SIZE, null);
+                }
+            }
+        }
+        return missing;
+    }
+
+    private synchronized BufferedImage lookup(Key key, Object version, Painter painter) {
+        Tile tile = tiles.get(key);
+        if (tile != null) {
+            hits++;
+            tile.frame = frame;
+            return tile.image;
+        }
+        misses++;
+        if (pending.add(key)) {
+            executor.execute(() -> render(key, version, painter));
+        }
+        return null;
+    }
+
+    private void render(Key key, Object version, Painter painter) {
+        synchronized (this) {
+            if (!Objects.equals(versions.get(key.layer), version) || key.scale != currentScale) {
+                pending.remove(key);
+                return;
+            }
+        }
+        BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2 = image.createGraphics();
+        int drawn;
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.translate(-MARGIN, -MARGIN);
+            int size = SIZE + 2 * MARGIN;
+            drawn = painter.paint(g2, image, new Viewport(size, size, key.scale,
+                    MARGIN - key.tileX * SIZE, MARGIN - key.tileY * SIZE));
+        } finally {
+            g2.dispose();
+        }
+
+        synchronized (this) {
+            pending.remove(key);
+            if (!Objects.equals(versions.get(key.layer), version)) {
+                return;
+            }
+            Tile tile = new Tile(drawn > 0 ? image : EMPTY, frame);
+            tiles.put(key, tile);
+            bytes += tile.bytes();
+            renders++;
+            evict();
+        }
+        onRendered.run();
+    }
+
+    /**
+     * Evicts the least recently drawn tiles until the cache fits its budget or only tiles of the current frame are left.
+     */
+    private void evict() {
+        Iterator<Tile> iterator = tiles.values().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Tile tile = iterator.next();
+            if (tile.frame == frame) {
+                break;
+            }
+            iterator.remove();
+            bytes -= tile.bytes();
+            evictions++;
+        }
+    }
+
+    /**
+     * Drops all tiles of a layer.
+     *
+     * @param layer the name of the layer
+     */
+    public synchronized void invalidate(String layer) {
+        Iterator<Map.Entry<Key, Tile>> iterator = tiles.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Tile> entry = iterator.next();
+            if (entry.getKey().layer.equals(layer)) {
+                bytes -= entry.getValue().bytes();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops all tiles.
+     */
+    public synchronized void clear() {
+        tiles.clear();
+        versions.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Sets the memory budget for tiles and evicts tiles that no longer fit.
+     *
+     * @param maxBytes the budget in bytes
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * Returns the memory held by tiles, in bytes, with the estimated size of their entries.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return tiles.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of tiles rendered and added to the cache.
+     */
+    public synchronized long getRenders() {
+        return renders;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private static final class Key {
+        final String layer;
+        final double scale;
+        final int tileX;
+        final int tileY;
+
+        Key(String layer, double scale, int tileX, int tileY) {
+            this.layer = layer;
+            this.scale = scale;
+            this.tileX = tileX;
+            this.tileY = tileY;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return tileX == other.tileX && tileY == other.tileY
+                    && Double.compare(scale, other.scale) == 0 && layer.equals(other.layer);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = layer.hashCode();
+            result = 31 * result + Double.hashCode(scale);
+            result = 31 * result + tileX;
+            result = 31 * result + tileY;
+            return result;
+        }
+    }
+
+    private static final class Tile {
+        final BufferedImage image;
+        long frame;
+
+        Tile(BufferedImage image, long frame) {
+            this.image = image;
+            this.frame = frame;
+        }
+
+        long bytes() {
+            return image == EMPTY ? ENTRY_BYTES : ENTRY_BYTES + TILE_BYTES;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+import javax.swing.*;
+
+/**
+ * Coalesces render requests to at most one repaint per frame.
+ * The first request after an idle frame repaints at once; requests that arrive
+ * while a frame is in progress are merged into one repaint at the end of the frame.
+ * Must be used from the event dispatch thread.
+ */
+public final class UpdateScheduler {
+    private final JComponent component;
+    private final Timer timer;
+    private boolean pending;
+    private long requests;
+    private long renders;
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param component the component to repaint
+     * @param frameMillis the minimum time between two repaints
+     */
+    public UpdateScheduler(JComponent component, int frameMillis) {
+        this.component = component;
+        this.timer = new Timer(frameMillis, e -> endFrame());
+        this.timer.setRepeats(false);
+    }
+
+    /**
+     * Requests a repaint of the component.
+     */
+    public void requestRender() {
+        requests++;
+        if (!component.isShowing()) {
+            component.repaint();
+            return;
+        }
+        if (timer.isRunning()) {
+            pending = true;
+            return;
+        }
+        render();
+    }
+
+    private void endFrame() {
+        if (pending) {
+            pending = false;
+            render();
+        }
+    }
+
+    private void render() {
+        renders++;
+        component.repaint();
+        timer.restart();
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public long getRenders() {
+        return renders;
+    }
+}
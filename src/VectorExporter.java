@@ -0,0 +1,522 @@
+import java.awt.*;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports what a {@link GraphPanel} draws as an SVG or PDF document: the axes with their ticks,
+ * every enabled curve and data series, and the intersection markers. Live streaming series are not exported.
+ * <p>
+ * Each curve becomes one path. Its samples are reduced per pixel column and clipped as for drawing,
+ * see {@link M4Decimator}, then simplified to the output tolerance by {@link PathSimplifier}, and
+ * written to the file as they are produced. Apart from the samples of the curves, memory use therefore
+ * does not grow with the size of the document. One unit of the document is one pixel of the panel.
+ * <p>
+ * Usage: {@code java -Djava.awt.headless=true VectorExporter "<spec>" <file.svg|file.svgz|file.pdf> [tolerance]}
+ */
+public final class VectorExporter {
+    /**
+     * Default largest deviation of an exported path from the drawn curve, in pixels.
+     */
+    public static final double DEFAULT_TOLERANCE = 0.25;
+
+    private static final double CURVE_WIDTH = 2;
+    private static final int FONT_SIZE = 12;
+
+    private VectorExporter() {
+    }
+
+    /**
+     * Result of an export.
+     */
+    public static final class Result {
+        private final int paths;
+        private final long vertices;
+        private final long written;
+        private final long bytes;
+        private final double seconds;
+
+        Result(int paths, long vertices, long written, long bytes, double seconds) {
+            this.paths = paths;
+            this.vertices = vertices;
+            this.written = written;
+            this.bytes = bytes;
+            this.seconds = seconds;
+        }
+
+        /**
+         * Returns the number of curve paths written.
+         */
+        public int getPaths() {
+            return paths;
+        }
+
+        /**
+         * Returns the number of curve vertices before simplification.
+         */
+        public long getVertices() {
+            return vertices;
+        }
+
+        /**
+         * Returns the number of curve vertices written.
+         */
+        public long getWritten() {
+            return written;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public double getSeconds() {
+            return seconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "Exported %d paths with %d of %d vertices, %.1f KB in %.3f s",
+                    paths, written, vertices, bytes / 1024.0, seconds);
+        }
+    }
+
+    /**
+     * Exports a plot spec. The format follows the file extension: {@code .pdf}, {@code .svgz} for
+     * gzip-compressed SVG, and SVG otherwise.
+     *
+     * @param spec the plot to export
+     * @param file the file to write
+     * @param tolerance the largest deviation of a path from its curve, in pixels
+     * @return the size of the document and the time it took
+     * @throws IOException if the file cannot be written
+     */
+    public static Result export(PlotSpec spec, File file, double tolerance) throws IOException {
+        GraphPanel panel = new GraphPanel();
+        spec.applyTo(panel);
+        return export(panel, file, tolerance);
+    }
+
+    /**
+     * Exports what a panel draws at its current size. Must be called on the thread that owns the panel.
+     *
+     * @param panel the panel to export
+     * @param file the file to write; the format follows the extension as for {@link #export(PlotSpec, File, double)}
+     * @param tolerance the largest deviation of a path from its curve, in pixels
+     * @return the size of the document and the time it took
+     * @throws IOException if the file cannot be written
+     */
+    public static Result export(GraphPanel panel, File file, double tolerance) throws IOException {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        String format = name.endsWith(".pdf") ? "pdf" : name.endsWith(".svgz") ? "svgz" : "svg";
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            return export(panel, out, format, tolerance);
+        }
+    }
+
+    /**
+     * Writes what a panel draws at its current size to a stream, which is flushed but not closed.
+     * Must be called on the thread that owns the panel.
+     *
+     * @param panel the panel to export
+     * @param out the stream to write the document to
+     * @param format {@code pdf}, {@code svgz} for gzip-compressed SVG, or {@code svg}
+     * @param tolerance the largest deviation of a path from its curve, in pixels
+     * @return the size of the document and the time it took
+     * @throws IOException if the stream cannot be written
+     */
+    public static Result export(GraphPanel panel, OutputStream out, String format, double tolerance) throws IOException {
+        long start = System.nanoTime();
+        FrameSnapshot frame = panel.computeSnapshot();
+        Viewport viewport = frame.getViewport();
+
+        int paths = 0;
+        long vertices = 0;
+        long written = 0;
+        CountingOutputStream counted = new CountingOutputStream(out);
+        Document document;
+        switch (format) {
+            case "pdf":
+                document = PdfDocument.create(counted, viewport.getWidth(), viewport.getHeight());
+                break;
+            case "svgz":
+                document = new SvgDocument(new GZIPOutputStream(counted, 1 << 16), viewport.getWidth(), viewport.getHeight());
+                break;
+            case "svg":
+                document = new SvgDocument(counted, viewport.getWidth(), viewport.getHeight());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown format " + format);
+        }
+        writeAxes(document, viewport);
+        for (FrameSnapshot.Curve curve : frame.getCurves()) {
+            document.beginPath(curve.getColor(), CURVE_WIDTH);
+            PathSimplifier simplifier = new PathSimplifier(document, tolerance);
+            M4Decimator.decimate(curve.getSamples(), viewport, simplifier);
+            simplifier.flush();
+            document.endPath();
+            paths++;
+            vertices += simplifier.getInput();
+            written += simplifier.getOutput();
+        }
+        if (frame.getIntersectionCount() > 0) {
+            document.beginPath(Color.DARK_GRAY, 1);
+            for (int i = 0; i < frame.getIntersectionCount(); i++) {
+                document.circle(Math.round(viewport.toScreenX(frame.getIntersectionX(i))),
+                        Math.round(viewport.toScreenY(frame.getIntersectionY(i))), 3);
+            }
+            document.endPath();
+        }
+        document.finish();
+        return new Result(paths, vertices, written, counted.count, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Writes the axes and their ticks at the positions {@link GraphUtils#drawTicks(Graphics2D, Viewport)} draws them.
+     */
+    private static void writeAxes(Document document, Viewport viewport) throws IOException {
+        int width = viewport.getWidth();
+        int height = viewport.getHeight();
+        int centerX = viewport.getOriginX();
+        int centerY = viewport.getOriginY();
+        int pixelsPerTick = Math.max(1, (int) (50 * viewport.getScale()));
+
+        document.beginPath(Color.BLACK, 1);
+        document.moveTo(0, centerY);
+        document.lineTo(width, centerY);
+        document.moveTo(centerX, 0);
+        document.lineTo(centerX, height);
+        for (int x = Math.floorMod(centerX, pixelsPerTick); x < width; x += pixelsPerTick) {
+            document.moveTo(x, centerY - 5);
+            document.lineTo(x, centerY + 5);
+        }
+        for (int y = Math.floorMod(centerY, pixelsPerTick); y < height; y += pixelsPerTick) {
+            document.moveTo(centerX - 5, y);
+            document.lineTo(centerX + 5, y);
+        }
+        document.endPath();
+
+        for (int x = Math.floorMod(centerX, pixelsPerTick); x < width; x += pixelsPerTick) {
+            document.text(x - 10, centerY + 20, Integer.toString((x - centerX) / pixelsPerTick * 50));
+        }
+        for (int y = Math.floorMod(centerY, pixelsPerTick); y < height; y += pixelsPerTick) {
+            document.text(centerX + 10, y + 5, Integer.toString((centerY - y) / pixelsPerTick * 50));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 2) {
+            System.err.println("Usage: java VectorExporter <spec> <file.svg|file.svgz|file.pdf> [tolerance]");
+            System.exit(2);
+        }
+        PlotSpec spec;
+        try {
+            spec = PlotSpec.parse(args[0]);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_TOLERANCE;
+        System.out.println(export(spec, new File(args[1]), tolerance));
+    }
+
+    /**
+     * A vector document written front to back. Coordinates are in pixels with y growing downwards.
+     * Paths are built with {@link #moveTo} and {@link #lineTo} between {@link #beginPath} and {@link #endPath}.
+     * IOExceptions of the sink methods are deferred to {@link #endPath}, as the sink interface cannot throw them.
+     */
+    private abstract static class Document implements M4Decimator.Sink {
+        private final byte[] buffer = new byte[1 << 14];
+        private final OutputStream out;
+        private int length;
+        private IOException failure;
+
+        Document(OutputStream out) {
+            this.out = out;
+        }
+
+        abstract void beginPath(Color color, double width) throws IOException;
+
+        abstract void endPath() throws IOException;
+
+        /**
+         * Adds a circle to the current path.
+         */
+        abstract void circle(double x, double y, double radius) throws IOException;
+
+        /**
+         * Writes a black text with its baseline starting at a point.
+         */
+        abstract void text(double x, double y, String text) throws IOException;
+
+        /**
+         * Completes the document and flushes it, without closing the underlying stream.
+         */
+        abstract void finish() throws IOException;
+
+        void checkFailure() throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        Document write(String text) {
+            for (int i = 0; i < text.length(); i++) {
+                write(text.charAt(i));
+            }
+            return this;
+        }
+
+        /**
+         * Writes an ASCII character.
+         */
+        Document write(char c) {
+            if (length == buffer.length) {
+                flushBuffer();
+            }
+            buffer[length++] = (byte) c;
+            return this;
+        }
+
+        /**
+         * Writes a number with at most two decimals, without trailing zeros.
+         */
+        Document write(double value) {
+            long hundredths = Math.round(value * 100);
+            if (hundredths < 0) {
+                write('-');
+                hundredths = -hundredths;
+            }
+            write(Long.toString(hundredths / 100));
+            int fraction = (int) (hundredths % 100);
+            if (fraction != 0) {
+                write('.').write((char) ('0' + fraction / 10));
+                if (fraction % 10 != 0) {
+                    write((char) ('0' + fraction % 10));
+                }
+            }
+            return this;
+        }
+
+        void flushBuffer() {
+            try {
+                out.write(buffer, 0, length);
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+            length = 0;
+        }
+
+        void flush() throws IOException {
+            flushBuffer();
+            out.flush();
+            checkFailure();
+        }
+    }
+
+    private static final class SvgDocument extends Document {
+        private final OutputStream target;
+
+        SvgDocument(OutputStream out, int width, int height) {
+            super(out);
+            this.target = out;
+            write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").write(width).write("\" height=\"").write(height)
+                    .write("\" viewBox=\"0 0 ").write(width).write(' ').write(height).write("\">\n");
+            write("<rect width=\"100%\" height=\"100%\" fill=\"white\"/>\n");
+        }
+
+        @Override
+        void beginPath(Color color, double width) {
+            write("<path fill=\"none\" stroke-linecap=\"round\" stroke-linejoin=\"round\" stroke=\"")
+                    .write(String.format("#%06x", color.getRGB() & 0xffffff))
+                    .write("\" stroke-width=\"").write(width).write("\" d=\"");
+        }
+
+        @Override
+        public void moveTo(double x, double y) {
+            write('M').write(x).write(' ').write(y);
+        }
+
+        @Override
+        public void lineTo(double x, double y) {
+            write('L').write(x).write(' ').write(y);
+        }
+
+        @Override
+        void circle(double x, double y, double radius) {
+            moveTo(x - radius, y);
+            write('a').write(radius).write(' ').write(radius).write(" 0 1 0 ").write(2 * radius).write(" 0");
+            write('a').write(radius).write(' ').write(radius).write(" 0 1 0 ").write(-2 * radius).write(" 0");
+        }
+
+        @Override
+        void endPath() throws IOException {
+            write("\"/>\n");
+            checkFailure();
+        }
+
+        @Override
+        void text(double x, double y, String text) {
+            write("<text font-family=\"sans-serif\" font-size=\"").write(FONT_SIZE).write("\" x=\"").write(x)
+                    .write("\" y=\"").write(y).write("\">").write(text).write("</text>\n");
+        }
+
+        @Override
+        void finish() throws IOException {
+            write("</svg>\n");
+            flush();
+            if (target instanceof GZIPOutputStream) {
+                ((GZIPOutputStream) target).finish();
+            }
+        }
+    }
+
+    /**
+     * A single-page PDF. The page content is a deflated stream whose length is written as a separate
+     * object after it, so the content never has to be held in memory to know its size.
+     */
+    private static final class PdfDocument extends Document {
+        private static final double KAPPA = 0.5522847498;
+
+        private final CountingOutputStream file;
+        private final DeflaterOutputStream content;
+        private final long[] offsets;
+        private final long contentStart;
+        private final int height;
+
+        private PdfDocument(CountingOutputStream file, DeflaterOutputStream content, long[] offsets, long contentStart,
+                            int width, int height) {
+            super(content);
+            this.file = file;
+            this.content = content;
+            this.offsets = offsets;
+            this.contentStart = contentStart;
+            this.height = height;
+            write("0 0 ").write(width).write(' ').write(height).write(" re W n\n");
+        }
+
+        /**
+         * Writes the objects before the page content and starts the content stream.
+         */
+        static PdfDocument create(OutputStream out, int width, int height) throws IOException {
+            CountingOutputStream file = new CountingOutputStream(out);
+            long[] offsets = new long[7];
+            ascii(file, "%PDF-1.4\n");
+            offsets[1] = file.count;
+            ascii(file, "1 0 obj\n<< /Type /Catalog /Pages 2 0 R >>\nendobj\n");
+            offsets[2] = file.count;
+            ascii(file, "2 0 obj\n<< /Type /Pages /Kids [3 0 R] /Count 1 >>\nendobj\n");
+            offsets[3] = file.count;
+            ascii(file, "3 0 obj\n<< /Type /Page /Parent 2 0 R /MediaBox [0 0 " + width + " " + height + "]"
+                    + " /Contents 4 0 R /Resources << /Font << /F1 6 0 R >> >> >>\nendobj\n");
+            offsets[4] = file.count;
+            ascii(file, "4 0 obj\n<< /Length 5 0 R /Filter /FlateDecode >>\nstream\n");
+            DeflaterOutputStream content = new DeflaterOutputStream(file, new Deflater(Deflater.BEST_SPEED), 1 << 16);
+            return new PdfDocument(file, content, offsets, file.count, width, height);
+        }
+
+        private static void ascii(OutputStream out, String text) throws IOException {
+            out.write(text.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        @Override
+        void beginPath(Color color, double width) {
+            write("q ").write(color.getRed() / 255.0).write(' ').write(color.getGreen() / 255.0).write(' ')
+                    .write(color.getBlue() / 255.0).write(" RG ").write(width).write(" w 1 J 1 j\n");
+        }
+
+        @Override
+        public void moveTo(double x, double y) {
+            write(x).write(' ').write(height - y).write(" m\n");
+        }
+
+        @Override
+        public void lineTo(double x, double y) {
+            write(x).write(' ').write(height - y).write(" l\n");
+        }
+
+        @Override
+        void circle(double x, double y, double radius) {
+            double k = KAPPA * radius;
+            double cy = height - y;
+            write(x + radius).write(' ').write(cy).write(" m\n");
+            curve(x + radius, cy + k, x + k, cy + radius, x, cy + radius);
+            curve(x - k, cy + radius, x - radius, cy + k, x - radius, cy);
+            curve(x - radius, cy - k, x - k, cy - radius, x, cy - radius);
+            curve(x + k, cy - radius, x + radius, cy - k, x + radius, cy);
+        }
+
+        private void curve(double x1, double y1, double x2, double y2, double x3, double y3) {
+            write(x1).write(' ').write(y1).write(' ').write(x2).write(' ').write(y2).write(' ')
+                    .write(x3).write(' ').write(y3).write(" c\n");
+        }
+
+        @Override
+        void endPath() throws IOException {
+            write("S Q\n");
+            checkFailure();
+        }
+
+        @Override
+        void text(double x, double y, String text) {
+            write("BT /F1 ").write(FONT_SIZE).write(" Tf ").write(x).write(' ').write(height - y)
+                    .write(" Td (").write(text).write(") Tj ET\n");
+        }
+
+        @Override
+        void finish() throws IOException {
+            flushBuffer();
+            checkFailure();
+            content.finish();
+            long length = file.count - contentStart;
+            ascii(file, "\nendstream\nendobj\n");
+            offsets[5] = file.count;
+            ascii(file, "5 0 obj\n" + length + "\nendobj\n");
+            offsets[6] = file.count;
+            ascii(file, "6 0 obj\n<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica >>\nendobj\n");
+            long xref = file.count;
+            StringBuilder table = new StringBuilder("xref\n0 7\n0000000000 65535 f \n");
+            for (int i = 1; i < offsets.length; i++) {
+                table.append(String.format("%010d 00000 n \n", offsets[i]));
+            }
+            table.append("trailer\n<< /Size 7 /Root 1 0 R >>\nstartxref\n").append(xref).append("\n%%EOF\n");
+            ascii(file, table.toString());
+            file.flush();
+        }
+    }
+
+    /**
+     * Counts the bytes written through it, for the cross-reference table of a PDF and the size of a document.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Maps between world coordinates and screen pixels for a drawing area.
+ * The world origin lies at a whole pixel, by default the center of the drawing area, and y grows upwards.
+ */
+public final class Viewport {
+    private final int width;
+    private final int height;
+    private final double scale;
+    private final int originX;
+    private final int originY;
+
+    /**
+     * Creates a viewport centered on the world origin.
+     *
+     * @param width the width of the drawing area
+     * @param height the height of the drawing area
+     * @param scale the number of pixels per world unit
+     */
+    public Viewport(int width, int height, double scale) {
+        this(width, height, scale, width / 2, height / 2);
+    }
+
+    /**
+     * Creates a viewport with the world origin at a given pixel.
+     *
+     * @param width the width of the drawing area
+     * @param height the height of the drawing area
+     * @param scale the number of pixels per world unit
+     * @param originX the screen x of the world origin, which may lie outside the drawing area
+     * @param originY the screen y of the world origin, which may lie outside the drawing area
+     */
+    public Viewport(int width, int height, double scale, int originX, int originY) {
+        this.width = width;
+        this.height = height;
+        this.scale = scale;
+        this.originX = originX;
+        this.originY = originY;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    public int getOriginX() {
+        return originX;
+    }
+
+    public int getOriginY() {
+        return originY;
+    }
+
+    public double toWorldX(double screenX) {
+        return (screenX - originX) / scale;
+    }
+
+    public double toWorldY(double screenY) {
+        return (originY - screenY) / scale;
+    }
+
+    public double toScreenX(double x) {
+        return originX + scale * x;
+    }
+
+    public double toScreenY(double y) {
+        return originY - scale * y;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Viewport)) {
+            return false;
+        }
+        Viewport other = (Viewport) o;
+        return width == other.width && height == other.height
+                && Double.compare(scale, other.scale) == 0
+                && originX == other.originX && originY == other.originY;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Integer.hashCode(width);
+        result = 31 * result + Integer.hashCode(height);
+        result = 31 * result + Double.hashCode(scale);
+        result = 31 * result + Integer.hashCode(originX);
+        result = 31 * result + Integer.hashCode(originY);
+        return result;
+    }
+}
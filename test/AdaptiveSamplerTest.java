@@ -0,0 +1,90 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares adaptively sampled curves with dense sampling, which is how the panel drew curves
+ * before it sampled adaptively.
+ */
+class AdaptiveSamplerTest {
+    /**
+     * Samples per pixel of the reference sampling.
+     */
+    private static final int DENSE = 64;
+
+    /**
+     * Largest distance in pixels between a dense sample and the drawn line in its pixel column.
+     */
+    private static final double MAX_ERROR = 1;
+
+    @Test
+    void followsHighFrequencySine() {
+        assertFollows(CurveFamily.SIN.create(1, 10, 3), new Viewport(800, 600, 2));
+        assertFollows(CurveFamily.SIN.create(1, 10, 3), new Viewport(800, 600, 1));
+        assertFollows(CurveFamily.SIN.create(1, 10, 10), new Viewport(800, 600, 3));
+    }
+
+    @Test
+    void followsHighFrequencyCosine() {
+        assertFollows(CurveFamily.COS.create(1, 10, 5), new Viewport(800, 600, 2));
+        assertFollows(CurveFamily.COS.create(-3, 8, 7), new Viewport(1920, 1080, 2, 700, 500));
+    }
+
+    @Test
+    void followsSmoothCurves() {
+        assertFollows(CurveFamily.SIN.create(1, 10, 0.1), new Viewport(800, 600, 2));
+        assertFollows(CurveFamily.PARABOLA.create(1, 10, 0.1), new Viewport(800, 600, 2));
+        assertFollows(CurveFamily.TAN.create(1, 10, 0.1), new Viewport(800, 600, 2));
+    }
+
+    private static void assertFollows(CurveFunction function, Viewport viewport) {
+        SampledCurve curve = AdaptiveSampler.sample(function, viewport);
+        double error = error(function, viewport, curve);
+        assertTrue(error <= MAX_ERROR, () -> String.format("dense samples are %.2f px off the sampled curve at %dx%d, scale %s",
+                error, viewport.getWidth(), viewport.getHeight(), viewport.getScale()));
+    }
+
+    /**
+     * Returns the largest distance in pixels between a dense sample on the drawing area and the
+     * range of screen y that the lines between the samples of the curve cover in its pixel column.
+     */
+    private static double error(CurveFunction function, Viewport viewport, SampledCurve curve) {
+        int width = viewport.getWidth();
+        int height = viewport.getHeight();
+        double[] low = new double[width];
+        double[] high = new double[width];
+        Arrays.fill(low, Double.POSITIVE_INFINITY);
+        Arrays.fill(high, Double.NEGATIVE_INFINITY);
+        for (int i = 0; i + 1 < curve.size(); i++) {
+            if (curve.isBreak(i) || curve.isBreak(i + 1)) {
+                continue;
+            }
+            double xa = viewport.toScreenX(curve.getX(i));
+            double xb = viewport.toScreenX(curve.getX(i + 1));
+            double ya = viewport.toScreenY(curve.getY(i));
+            double yb = viewport.toScreenY(curve.getY(i + 1));
+            for (int column = Math.max((int) Math.floor(xa), 0); column <= Math.min((int) Math.floor(xb), width - 1); column++) {
+                double from = (Math.max(xa, column) - xa) / (xb - xa);
+                double to = (Math.min(xb, column + 1) - xa) / (xb - xa);
+                double y0 = ya + (yb - ya) * from;
+                double y1 = ya + (yb - ya) * to;
+                low[column] = Math.min(low[column], Math.min(y0, y1));
+                high[column] = Math.max(high[column], Math.max(y0, y1));
+            }
+        }
+
+        double worst = 0;
+        for (int column = 0; column < width; column++) {
+            for (int k = 0; k < DENSE; k++) {
+                double y = viewport.toScreenY(function.apply(viewport.toWorldX(column + (double) k / DENSE)));
+                if (!(y >= 0 && y <= height)) {
+                    continue;
+                }
+                worst = Math.max(worst, Math.max(y - high[column], low[column] - y));
+            }
+        }
+        return worst;
+    }
+}
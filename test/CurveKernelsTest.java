@@ -0,0 +1,56 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+/**
+ * Checks the selected kernels against the scalar ones on random arguments over the ranges the
+ * families are drawn in and well beyond. The vector kernels are selected only when the tests run
+ * with {@code --add-modules jdk.incubator.vector}, as {@code mvn -Pvector test} does.
+ */
+class CurveKernelsTest {
+    private static final int RUNS = 2000;
+    private static final int COUNT = 256;
+    private static final double[] SCALES = {1e-300, 1e-8, 1, 10, 1000, 1e5};
+
+    @Test
+    void staysWithinUlpBounds() {
+        CurveKernels kernels = CurveKernels.get();
+        assumeFalse(kernels == CurveKernels.scalar(), "the vector kernels are not selected");
+        SplittableRandom random = new SplittableRandom(42);
+        double[] actual = new double[COUNT];
+        double[] expected = new double[COUNT];
+        for (CurveFamily family : CurveFamily.values()) {
+            double a = family == CurveFamily.SIN || family == CurveFamily.COS
+                    || family == CurveFamily.TAN || family == CurveFamily.CTAN ? 0 : 1;
+            for (int run = 0; run < RUNS; run++) {
+                double scale = SCALES[run % SCALES.length];
+                double startX = (random.nextDouble() * 2 - 1) * scale;
+                double stepX = random.nextDouble() * scale / COUNT;
+                kernels.evaluate(family, a, 1, 1, startX, stepX, actual, COUNT);
+                CurveKernels.scalar().evaluate(family, a, 1, 1, startX, stepX, expected, COUNT);
+                for (int i = 0; i < COUNT; i++) {
+                    double error = ulpError(actual[i], expected[i]);
+                    if (error > CurveKernels.ulpBound(family)) {
+                        fail(family.getId() + " is " + error + " ulp off at x = " + (startX + i * stepX));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the distance between two values in units in the last place of the expected one.
+     * Values that agree in being NaN or the same infinity have no error.
+     */
+    private static double ulpError(double actual, double expected) {
+        if (Double.compare(actual, expected) == 0 || actual == expected) {
+            return 0;
+        } else if (!Double.isFinite(actual) || !Double.isFinite(expected)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.abs(actual - expected) / Math.ulp(expected);
+    }
+}
@@ -0,0 +1,111 @@
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Draws every built-in family with Java2D and with the rasterizer, at the default size and zoom levels
+ * from 1 to 10 pixels per unit, and checks that the images differ by no more than fixed bounds.
+ */
+class LineRasterizerTest {
+    /**
+     * Largest mean difference of a premultiplied channel from Java2D over the pixels either drawing covers.
+     * Java2D samples coverage on eight subpixel rows, so steep curves differ by about 2 on exact geometry.
+     */
+    private static final double MAX_MEAN_DIFFERENCE = 2.5;
+
+    /**
+     * Largest share of the covered pixels that may differ from Java2D by more than {@link #DIFFERING_CHANNEL}
+     * in some channel.
+     */
+    private static final double MAX_DIFFERING = 0.002;
+    private static final int DIFFERING_CHANNEL = 32;
+
+    @Test
+    void matchesJava2D() {
+        Viewport[] viewports = {
+                new Viewport(800, 600, 1), new Viewport(800, 600, 2), new Viewport(800, 600, 4),
+                new Viewport(800, 600, 10), new Viewport(1920, 1080, 2)};
+        List<String> failures = new ArrayList<>();
+        for (Viewport viewport : viewports) {
+            for (CurveFamily family : CurveFamily.values()) {
+                SampledCurve curve = AdaptiveSampler.sample(family.create(1, 10, 0.1), viewport);
+                String name = family.getId() + " " + viewport.getWidth() + "x" + viewport.getHeight()
+                        + " scale " + viewport.getScale();
+                String failure = compare(name, family.getColor(), curve, viewport);
+                if (failure != null) {
+                    failures.add(failure);
+                }
+            }
+        }
+        assertTrue(failures.isEmpty(), () -> "The rasterizer drifted from Java2D:\n" + String.join("\n", failures));
+    }
+
+    /**
+     * Draws a curve through Java2D and through the rasterizer and works out how the two images differ:
+     * the mean and largest difference of a premultiplied channel over the pixels either one covers, the
+     * share of those pixels that differ by more than {@link #DIFFERING_CHANNEL} in some channel, and the
+     * ink of the rasterizer relative to Java2D, summed over the alpha of all pixels.
+     *
+     * @return a description of the differences if they exceed the bounds, or null
+     */
+    private static String compare(String name, Color color, SampledCurve curve, Viewport viewport) {
+        BufferedImage expected = new BufferedImage(viewport.getWidth(), viewport.getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
+        BufferedImage actual = new BufferedImage(viewport.getWidth(), viewport.getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2 = expected.createGraphics();
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            GraphUtils.drawSamples(g2, color, curve, viewport);
+        } finally {
+            g2.dispose();
+        }
+        g2 = actual.createGraphics();
+        try {
+            LineRasterizer.drawSamples(actual, g2, color, curve, viewport);
+        } finally {
+            g2.dispose();
+        }
+
+        int[] expectedPixels = ((DataBufferInt) expected.getRaster().getDataBuffer()).getData();
+        int[] actualPixels = ((DataBufferInt) actual.getRaster().getDataBuffer()).getData();
+        long covered = 0;
+        long differing = 0;
+        long difference = 0;
+        int largest = 0;
+        long expectedInk = 0;
+        long actualInk = 0;
+        for (int i = 0; i < expectedPixels.length; i++) {
+            int e = expectedPixels[i];
+            int a = actualPixels[i];
+            expectedInk += e >>> 24;
+            actualInk += a >>> 24;
+            if ((e | a) == 0) {
+                continue;
+            }
+            covered++;
+            int pixelLargest = 0;
+            for (int shift = 0; shift < 32; shift += 8) {
+                int channel = Math.abs(((e >>> shift) & 0xff) - ((a >>> shift) & 0xff));
+                difference += channel;
+                pixelLargest = Math.max(pixelLargest, channel);
+            }
+            largest = Math.max(largest, pixelLargest);
+            if (pixelLargest > DIFFERING_CHANNEL) {
+                differing++;
+            }
+        }
+        double mean = difference / (4.0 * Math.max(covered, 1));
+        double share = (double) differing / Math.max(covered, 1);
+        if (mean <= MAX_MEAN_DIFFERENCE && share <= MAX_DIFFERING) {
+            return null;
+        }
+        return String.format(Locale.ROOT, "%s: mean %.2f, max %d, %.2f%% above %d, ink %.3f",
+                name, mean, largest, 100 * share, DIFFERING_CHANNEL, (double) actualInk / Math.max(expectedInk, 1));
+    }
+}
@@ -0,0 +1,37 @@
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TileCacheTest {
+    private static final int TILES = 3000;
+    private static final long BUDGET = 64 << 10;
+
+    /**
+     * Pans over a blank plane one tile at a time. The markers of the empty tiles must be evicted
+     * like any other tile once they no longer fit the budget.
+     */
+    @Test
+    void evictsEmptyTiles() throws InterruptedException {
+        Semaphore rendered = new Semaphore(0);
+        TileCache cache = new TileCache(BUDGET, rendered::release);
+        BufferedImage target = new BufferedImage(TileCache.SIZE, TileCache.SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2 = target.createGraphics();
+        try {
+            for (int i = 0; i < TILES; i++) {
+                cache.beginFrame(1);
+                Viewport viewport = new Viewport(TileCache.SIZE, TileCache.SIZE, 1, -i * TileCache.SIZE, 0);
+                cache.draw(g2, "blank", 0, viewport, (graphics, image, tile) -> 0);
+                assertTrue(rendered.tryAcquire(10, TimeUnit.SECONDS), "tile " + i + " was not rendered");
+            }
+        } finally {
+            g2.dispose();
+        }
+        assertTrue(cache.getBytes() <= BUDGET, () -> cache.getBytes() + " bytes held for a budget of " + BUDGET);
+        assertTrue(cache.size() < TILES, () -> "all " + cache.size() + " empty tiles were kept");
+    }
+}